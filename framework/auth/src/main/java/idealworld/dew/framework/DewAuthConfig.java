@@ -44,6 +44,9 @@ public class DewAuthConfig extends DewConfig {
         private String moduleName = "iam";
         private Long appId;
         private Long tenantId;
+        // 按变更日志增量同步资源及资源主体的间隔，为0时只在收到的变更序号不连续时同步
+        @Builder.Default
+        private Integer syncIntervalSec = 60;
 
     }
 
@@ -27,12 +27,38 @@ public class DewAuthConstant extends DewConstant {
      * 鉴权策略缓存.
      */
     public static final String CACHE_AUTH_POLICY = "dew:iam:policy:";
+    // 鉴权策略的存储格式版本，与当前版本不一致时IAM启动时重建所有鉴权策略
+    public static final String CACHE_AUTH_POLICY_FORMAT = "dew:iam:policy-format";
     public static final String CACHE_APP_AK = "dew:iam:app:ak:";
     public static final String CACHE_APP_INFO = "dew:iam:app:info:";
     // token存储key : <token>:<opt info>
     public static final String CACHE_TOKEN_INFO_FLAG = "dew:iam:token:info:";
     // AccountCode 关联 Tokens : <account code>:<token kind##current time>:<token>
     public static final String CACHE_TOKEN_ID_REL_FLAG = "dew:iam:token:id:rel:";
+    // Token移除通知的频道 : <token>
+    public static final String CACHE_TOKEN_REMOVED_TOPIC = "dew:iam:token:removed";
+    // 网关IP黑名单 : <IP或CIDR网段>:<说明>
+    public static final String CACHE_GATEWAY_BLOCK_IPS = "dew:gateway:ip:block";
+    // 网关IP白名单，不为空时只允许名单内的IP访问 : <IP或CIDR网段>:<说明>
+    public static final String CACHE_GATEWAY_ALLOW_IPS = "dew:gateway:ip:allow";
+    // 网关IP名单变更通知的频道
+    public static final String CACHE_GATEWAY_IPS_CHANGED_TOPIC = "dew:gateway:ip:changed";
+    // 网关限流规则 : <rule code>:<rule json>
+    public static final String CACHE_GATEWAY_RATE_LIMIT_RULES = "dew:gateway:ratelimit:rules";
+    // 网关限流规则变更通知的频道
+    public static final String CACHE_GATEWAY_RATE_LIMIT_CHANGED_TOPIC = "dew:gateway:ratelimit:changed";
+    // 网关集群限流计数 : <rule code>:<subject>:<second>:<count>
+    public static final String CACHE_GATEWAY_RATE_LIMIT_COUNTER = "dew:gateway:ratelimit:counter:";
+    // 网关响应缓存失效通知的频道 : <resource subject>
+    public static final String CACHE_GATEWAY_RESPONSE_INVALIDATED_TOPIC = "dew:gateway:response:invalidated";
+    // 资源及资源主体的变更日志 : <subject category>:<seq>:<change>
+    public static final String CACHE_EXCHANGE_CHANGE_LOG = "dew:iam:exchange:changelog:";
+    // 变更日志的当前序号 : <subject category>:<seq>
+    public static final String CACHE_EXCHANGE_CHANGE_SEQ = "dew:iam:exchange:changeseq:";
+    // 变更事件中携带的变更序号
+    public static final String REQUEST_EXCHANGE_SEQ_FLAG = "Dew-Exchange-Seq";
+    // 变更主题的事件总线地址前缀 : <module name>.<subject category>
+    public static final String EXCHANGE_TOPIC_PREFIX = "dew.exchange.";
     public static final String MODULE_IAM_NAME = "iam";
     public static final String GROUP_CODE_NODE_CODE_SPLIT = "#";
     public static final Long AK_SK_IDENT_ACCOUNT_FLAG = -1L;
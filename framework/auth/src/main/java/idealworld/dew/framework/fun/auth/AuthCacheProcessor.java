@@ -22,10 +22,13 @@ import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.fun.eventbus.ProcessContext;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
-import io.vertx.core.json.JsonObject;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 
@@ -38,11 +41,39 @@ import java.util.stream.Collectors;
 @Slf4j
 public class AuthCacheProcessor {
 
+    // 在服务端一次完成：找出当前 account code 关联的指定 token kind 的所有 token，按创建时间倒序，移除多余版本的关联并返回这些token（逗号分隔）
+    // 脚本只操作 KEYS 中声明的Key，token信息的删除及通知由调用方逐个完成，以兼容 Redis Cluster
+    // KEYS[1]: token关联Hash，ARGV[1]: token kind，ARGV[2]: 保留的历史版本数
+    private static final String REMOVE_OLD_TOKEN_SCRIPT = ""
+            + "local entries = redis.call('HGETALL', KEYS[1])\n"
+            + "local kind = string.lower(ARGV[1])\n"
+            + "local tokens = {}\n"
+            + "for i = 1, #entries, 2 do\n"
+            + "  local value = entries[i + 1]\n"
+            + "  local sep = string.find(value, '##', 1, true)\n"
+            + "  if sep and string.lower(string.sub(value, 1, sep - 1)) == kind then\n"
+            + "    tokens[#tokens + 1] = {entries[i], tonumber(string.sub(value, sep + 2))}\n"
+            + "  end\n"
+            + "end\n"
+            + "local keep = tonumber(ARGV[2]) + 1\n"
+            + "if #tokens <= keep then\n"
+            + "  return ''\n"
+            + "end\n"
+            + "table.sort(tokens, function(a, b) return a[2] > b[2] end)\n"
+            + "local removed = {}\n"
+            + "for i = keep + 1, #tokens do\n"
+            + "  redis.call('HDEL', KEYS[1], tokens[i][1])\n"
+            + "  removed[#removed + 1] = tokens[i][1]\n"
+            + "end\n"
+            + "return table.concat(removed, ',')";
+    private static final Map<String, Integer> REVISION_HISTORY_LIMITS = new ConcurrentHashMap<>();
+    private static volatile int defaultRevisionHistoryLimit = 0;
+
     public static Future<Optional<IdentOptExchangeInfo>> getOptInfo(String token, ProcessContext context) {
         return context.cache.get(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + token)
                 .compose(optInfoStr -> {
                     if (optInfoStr != null && !optInfoStr.isEmpty()) {
-                        var identOpt = new JsonObject(optInfoStr).mapTo(IdentOptExchangeInfo.class);
+                        var identOpt = TokenSessionSerializer.decode(optInfoStr);
                         identOpt.setUnauthorizedAppId(identOpt.getAppId());
                         identOpt.setUnauthorizedTenantId(identOpt.getUnauthorizedTenantId());
                         return context.helper.success(Optional.of(identOpt));
@@ -57,6 +88,7 @@ public class AuthCacheProcessor {
                 .compose(tokenInfoOpt -> {
                     if (tokenInfoOpt.isPresent()) {
                         return context.cache.del(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + token)
+                                .compose(resp -> context.cache.publish(DewAuthConstant.CACHE_TOKEN_REMOVED_TOPIC, token))
                                 .compose(resp ->
                                         removeOldToken(tokenInfoOpt.get().getAccountCode(),
                                                 tokenInfoOpt.get().getTokenKind(), context));
@@ -68,7 +100,7 @@ public class AuthCacheProcessor {
 
     public static Future<Void> setOptInfo(IdentOptCacheInfo optInfo, Long expireSec, ProcessContext context) {
         return context.cache.setnx(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + optInfo.getToken(),
-                JsonObject.mapFrom(optInfo).toString())
+                TokenSessionSerializer.encode(optInfo))
                 .compose(success -> {
                     if (!success) {
                         return context.helper.success();
@@ -88,31 +120,38 @@ public class AuthCacheProcessor {
                 });
     }
 
+    /**
+     * 设置各Token类型要求保留的历史版本数.
+     *
+     * @param defaultLimit 默认保留的历史版本数
+     * @param kindLimits   Token类型 -> 保留的历史版本数
+     */
+    public static void setRevisionHistoryLimit(Integer defaultLimit, Map<String, Integer> kindLimits) {
+        defaultRevisionHistoryLimit = defaultLimit;
+        REVISION_HISTORY_LIMITS.clear();
+        kindLimits.forEach((kind, limit) -> REVISION_HISTORY_LIMITS.put(kind.toLowerCase(), limit));
+    }
+
     private static Future<Void> removeOldToken(Object accountCode, String tokenKind, ProcessContext context) {
+        if (tokenKind == null) {
+            return context.helper.success();
+        }
         // 当前 token kind 要求保留的历史版本数
-        // TODO
-        int revisionHistoryLimit = 0;
-        // 当前 account code 关联的所有 token
-        return context.cache.hgetall(DewAuthConstant.CACHE_TOKEN_ID_REL_FLAG + accountCode)
-                .compose(tokenKinds ->
-                        CompositeFuture.all(
-                                tokenKinds.entrySet().stream()
-                                        .filter(entry -> entry.getValue().split("##")[0].equalsIgnoreCase(tokenKind))
-                                        // 按创建时间倒序
-                                        .sorted((entry1, entry2) ->
-                                                Long.compare(Long.parseLong(entry2.getValue().split("##")[1]),
-                                                        Long.parseLong(entry1.getValue().split("##")[1])))
-                                        .skip(revisionHistoryLimit + 1)
-                                        .map(entry ->
-                                                // 删除多余版本
-                                                context.cache.del(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + entry.getKey())
-                                                        .compose(r ->
-                                                                context.cache.hdel(DewAuthConstant.CACHE_TOKEN_ID_REL_FLAG + accountCode,
-                                                                        entry.getKey())))
-                                        .collect(Collectors.toList())
-                        )
-                )
-                .compose(rsp -> context.helper.success());
+        int revisionHistoryLimit = REVISION_HISTORY_LIMITS.getOrDefault(tokenKind.toLowerCase(), defaultRevisionHistoryLimit);
+        return context.cache.eval(REMOVE_OLD_TOKEN_SCRIPT,
+                List.of(DewAuthConstant.CACHE_TOKEN_ID_REL_FLAG + accountCode),
+                List.of(tokenKind, String.valueOf(revisionHistoryLimit)))
+                .compose(removedTokens -> {
+                    if (removedTokens == null || removedTokens.isEmpty()) {
+                        return context.helper.success();
+                    }
+                    // token信息Key可能分布在不同的节点上，逐个删除
+                    return CompositeFuture.all(Arrays.stream(removedTokens.split(","))
+                            .map(removedToken -> context.cache.del(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + removedToken)
+                                    .compose(resp -> context.cache.publish(DewAuthConstant.CACHE_TOKEN_REMOVED_TOPIC, removedToken)))
+                            .collect(Collectors.toList()))
+                            .compose(resp -> context.helper.success());
+                });
     }
 
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.auth;
+
+import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 鉴权结果缓存.
+ * <p>
+ * 按 权限主体指纹 + 资源操作类型 + 资源URI 缓存鉴权结果，容量有限（最近最少使用淘汰）且带过期时间。
+ * 每个结果记录计算时的策略版本 {@link LocalPolicyCache#getVersion()}，策略或资源变更后版本递增，旧的结果随即失效。
+ *
+ * @author gudaoxuri
+ */
+public class AuthDecisionCache {
+
+    private final long expireMs;
+    private final Map<String, Decision> decisions;
+
+    public AuthDecisionCache(int maxSize, int expireSec) {
+        this.expireMs = expireSec * 1000L;
+        this.decisions = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static String key(String subjectFingerprint, String actionKind, String resourceUri) {
+        return subjectFingerprint + "|" + actionKind + "|" + resourceUri;
+    }
+
+    /**
+     * 获取鉴权结果.
+     *
+     * @param key 缓存Key，见 {@link #key(String, String, String)}
+     * @return 鉴权结果，不存在、已过期或策略已变更时返回null
+     */
+    public synchronized AuthResultKind get(String key) {
+        var decision = decisions.get(key);
+        if (decision == null) {
+            return null;
+        }
+        if (decision.version != LocalPolicyCache.getVersion()
+                || decision.expireTime < System.currentTimeMillis()) {
+            decisions.remove(key);
+            return null;
+        }
+        return decision.result;
+    }
+
+    /**
+     * 添加鉴权结果.
+     *
+     * @param key     缓存Key
+     * @param result  鉴权结果
+     * @param version 开始鉴权前获取的策略版本
+     */
+    public synchronized void put(String key, AuthResultKind result, long version) {
+        if (version != LocalPolicyCache.getVersion()) {
+            // 鉴权期间策略发生了变更
+            return;
+        }
+        decisions.put(key, new Decision(result, version, System.currentTimeMillis() + expireMs));
+    }
+
+    private static class Decision {
+
+        private final AuthResultKind result;
+        private final long version;
+        private final long expireTime;
+
+        Decision(AuthResultKind result, long version, long expireTime) {
+            this.result = result;
+            this.version = version;
+            this.expireTime = expireTime;
+        }
+
+    }
+
+}
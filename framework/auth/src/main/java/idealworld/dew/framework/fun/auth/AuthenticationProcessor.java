@@ -22,19 +22,20 @@ import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectOperatorKind;
-import idealworld.dew.framework.fun.cache.FunCacheClient;
-import idealworld.dew.framework.util.AntPathMatcher;
 import idealworld.dew.framework.util.URIHelper;
 import io.vertx.core.Future;
-import io.vertx.core.Promise;
-import io.vertx.core.json.JsonObject;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -44,14 +45,17 @@ import java.util.stream.Stream;
  * Redis格式：
  * <p>
  * // TODO 加上过期时间
- * 资源类型:资源URI:资源操作类型 = {权限主体运算类型:{权限主体类型:[权限主体Id]}}
+ * 资源类型:资源URI:资源操作类型 = Hash{权限主体运算类型:权限主体类型:权限主体Id}
  *
  * @author gudaoxuri
  */
 @Slf4j
 public class AuthenticationProcessor {
 
-    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+    // EQ/NEQ 按此顺序匹配权限主体
+    private static final AuthSubjectKind[] BASIC_SUBJECT_KINDS = new AuthSubjectKind[]{
+            AuthSubjectKind.ACCOUNT, AuthSubjectKind.GROUP_NODE, AuthSubjectKind.ROLE, AuthSubjectKind.APP, AuthSubjectKind.TENANT
+    };
     private static Integer resourceCacheExpireSec;
     private static Integer groupNodeLength;
 
@@ -98,6 +102,38 @@ public class AuthenticationProcessor {
         return subjectInfo;
     }
 
+    /**
+     * 生成权限主体指纹.
+     * <p>
+     * 由 {@link #packageSubjectInfo(IdentOptExchangeInfo)} 所用的字段组成，相同指纹的权限主体鉴权结果相同.
+     *
+     * @param identOptInfo 身份信息
+     * @return 权限主体指纹
+     */
+    public static String subjectFingerprint(IdentOptExchangeInfo identOptInfo) {
+        if (identOptInfo == null) {
+            return "";
+        }
+        var fingerprint = new StringBuilder()
+                .append(identOptInfo.getAccountId()).append('|')
+                .append(identOptInfo.getUnauthorizedAppId()).append('|')
+                .append(identOptInfo.getUnauthorizedTenantId()).append('|');
+        if (identOptInfo.getRoleInfo() != null) {
+            identOptInfo.getRoleInfo().stream()
+                    .map(role -> role.getId() + "")
+                    .sorted()
+                    .forEach(roleId -> fingerprint.append(roleId).append(','));
+        }
+        fingerprint.append('|');
+        if (identOptInfo.getGroupInfo() != null) {
+            identOptInfo.getGroupInfo().stream()
+                    .map(group -> group.getGroupCode() + DewAuthConstant.GROUP_CODE_NODE_CODE_SPLIT + group.getGroupNodeCode())
+                    .sorted()
+                    .forEach(groupNode -> fingerprint.append(groupNode).append(','));
+        }
+        return fingerprint.toString();
+    }
+
     public static Future<AuthResultKind> authentication(String moduleName, String actionKind, URI resourceUri,
                                                         Map<AuthSubjectKind, List<String>> subjectInfo) {
         return authentication(moduleName, actionKind,
@@ -111,10 +147,38 @@ public class AuthenticationProcessor {
 
     public static Future<AuthResultKind> authentication(String moduleName, String actionKind, List<URI> resourceUris, Map<AuthSubjectKind,
             List<String>> subjectInfo) {
-        var matchedResourceUris = resourceUris.stream()
-                .flatMap(resourceUri -> matchResourceUris(resourceUri, actionKind))
-                .collect(Collectors.toList());
-        if (matchedResourceUris.isEmpty()) {
+        return authentication(moduleName, new HashMap<>() {
+            {
+                put(actionKind, resourceUris);
+            }
+        }, subjectInfo);
+    }
+
+    /**
+     * 批量鉴权.
+     * <p>
+     * 先匹配出所有需要鉴权的资源，再一次性获取对应的策略，在内存中逐个判断，任一操作类型被拒绝即返回拒绝.
+     *
+     * @param moduleName   模块名
+     * @param resourceInfo 资源操作类型 -> 资源URI列表
+     * @param subjectInfo  权限主体
+     * @return 鉴权结果
+     */
+    public static Future<AuthResultKind> authentication(String moduleName, Map<String, List<URI>> resourceInfo,
+                                                        Map<AuthSubjectKind, List<String>> subjectInfo) {
+        // 资源操作类型 -> 匹配到的资源URI，按具体程度排序
+        var matchedResourceInfo = new LinkedHashMap<String, List<String>>();
+        var policyKeys = new LinkedHashSet<String>();
+        resourceInfo.forEach((actionKind, resourceUris) -> {
+            var matchedResourceUris = resourceUris.stream()
+                    .flatMap(resourceUri -> matchResourceUris(resourceUri, actionKind))
+                    .collect(Collectors.toList());
+            if (!matchedResourceUris.isEmpty()) {
+                matchedResourceInfo.put(actionKind, matchedResourceUris);
+                matchedResourceUris.forEach(uri -> policyKeys.add(LocalPolicyCache.policyKey(uri, actionKind)));
+            }
+        });
+        if (matchedResourceInfo.isEmpty()) {
             // 资源不需要鉴权
             return Future.succeededFuture(AuthResultKind.ACCEPT);
         }
@@ -122,133 +186,93 @@ public class AuthenticationProcessor {
             // 资源需要鉴权但没有对应的权限主体
             return Future.succeededFuture(AuthResultKind.REJECT);
         }
-        Promise<AuthResultKind> promise = Promise.promise();
-        doAuthentication(moduleName, matchedResourceUris, actionKind, subjectInfo, promise);
-        return promise.future();
-    }
-
-    private static void doAuthentication(String moduleName, List<String> matchedResourceUris, String actionKind,
-                                         Map<AuthSubjectKind, List<String>> subjectInfo, Promise<AuthResultKind> promise) {
-        var currentProcessUri = matchedResourceUris.get(0);
-        FunCacheClient.choose(moduleName).get(DewAuthConstant.CACHE_AUTH_POLICY
-                + currentProcessUri.replace("//", "") + ":"
-                + actionKind, resourceCacheExpireSec)
-                .onSuccess(value -> {
-                    var authInfo = new JsonObject(value);
-                    var matchResult = matchBasic(AuthSubjectOperatorKind.EQ, authInfo, subjectInfo);
-                    if (matchResult) {
-                        promise.complete(AuthResultKind.ACCEPT);
-                        return;
-                    }
-                    matchResult = matchBasic(AuthSubjectOperatorKind.NEQ, authInfo, subjectInfo);
-                    if (matchResult) {
-                        promise.complete(AuthResultKind.REJECT);
-                        return;
-                    }
-                    matchResult = matchInclude(authInfo, subjectInfo);
-                    if (matchResult) {
-                        promise.complete(AuthResultKind.ACCEPT);
-                        return;
+        var subjectIds = new EnumMap<AuthSubjectKind, Set<String>>(AuthSubjectKind.class);
+        subjectInfo.forEach((subjectKind, ids) -> subjectIds.put(subjectKind, new HashSet<>(ids)));
+        // 当前身份的群组节点层级索引，每次鉴权只构建一次
+        var groupNodeIndex = subjectInfo.containsKey(AuthSubjectKind.GROUP_NODE)
+                ? GroupNodeIndex.build(subjectInfo.get(AuthSubjectKind.GROUP_NODE), groupNodeLength)
+                : null;
+        return LocalPolicyCache.getPolicies(moduleName, new ArrayList<>(policyKeys), resourceCacheExpireSec)
+                .map(policies -> {
+                    for (var matchedResource : matchedResourceInfo.entrySet()) {
+                        if (doAuthentication(matchedResource.getValue(), matchedResource.getKey(), policies, subjectIds, groupNodeIndex)
+                                == AuthResultKind.REJECT) {
+                            return AuthResultKind.REJECT;
+                        }
                     }
-                    matchResult = matchLike(authInfo, subjectInfo);
-                    if (matchResult) {
-                        promise.complete(AuthResultKind.ACCEPT);
-                        return;
-                    }
-                    matchedResourceUris.remove(0);
-                    if (!matchedResourceUris.isEmpty()) {
-                        doAuthentication(moduleName, matchedResourceUris, actionKind, subjectInfo, promise);
-                        return;
-                    }
-                    promise.complete(AuthResultKind.REJECT);
+                    return AuthResultKind.ACCEPT;
                 })
-                .onFailure(e -> {
+                .otherwise(e -> {
                     log.error("[Auth]Resource fetch error: {}", e.getMessage(), e.getCause());
-                    promise.complete(AuthResultKind.REJECT);
+                    return AuthResultKind.REJECT;
                 });
     }
 
-    private static Boolean matchBasic(AuthSubjectOperatorKind eqOrNeqKind, JsonObject authInfo, Map<AuthSubjectKind, List<String>> subjectInfo) {
-        if (!authInfo.containsKey(eqOrNeqKind.toString().toLowerCase())) {
-            return false;
-        }
-        var json = authInfo.getJsonObject(eqOrNeqKind.toString().toLowerCase());
-        if (subjectInfo.containsKey(AuthSubjectKind.ACCOUNT)
-                && json.containsKey(AuthSubjectKind.ACCOUNT.toString().toLowerCase())) {
-            var subjectJson = json.getJsonArray(AuthSubjectKind.ACCOUNT.toString().toLowerCase());
-            if (subjectInfo.get(AuthSubjectKind.ACCOUNT).stream().anyMatch(subjectJson::contains)) {
-                return true;
+    private static AuthResultKind doAuthentication(List<String> matchedResourceUris, String actionKind,
+                                                   Map<String, LocalPolicyCache.Policy> policies, Map<AuthSubjectKind, Set<String>> subjectInfo,
+                                                   GroupNodeIndex groupNodeIndex) {
+        for (var matchedResourceUri : matchedResourceUris) {
+            var policy = policies.get(LocalPolicyCache.policyKey(matchedResourceUri, actionKind));
+            if (matchBasic(AuthSubjectOperatorKind.EQ, policy, subjectInfo)) {
+                return AuthResultKind.ACCEPT;
             }
-        }
-        if (subjectInfo.containsKey(AuthSubjectKind.GROUP_NODE)
-                && json.containsKey(AuthSubjectKind.GROUP_NODE.toString().toLowerCase())) {
-            var subjectJson = json.getJsonArray(AuthSubjectKind.GROUP_NODE.toString().toLowerCase());
-            if (subjectInfo.get(AuthSubjectKind.GROUP_NODE).stream().anyMatch(subjectJson::contains)) {
-                return true;
+            if (matchBasic(AuthSubjectOperatorKind.NEQ, policy, subjectInfo)) {
+                return AuthResultKind.REJECT;
             }
-        }
-        if (subjectInfo.containsKey(AuthSubjectKind.ROLE)
-                && json.containsKey(AuthSubjectKind.ROLE.toString().toLowerCase())) {
-            var subjectJson = json.getJsonArray(AuthSubjectKind.ROLE.toString().toLowerCase());
-            if (subjectInfo.get(AuthSubjectKind.ROLE).stream().anyMatch(subjectJson::contains)) {
-                return true;
+            if (matchInclude(policy, groupNodeIndex)) {
+                return AuthResultKind.ACCEPT;
             }
-        }
-        if (subjectInfo.containsKey(AuthSubjectKind.APP)
-                && json.containsKey(AuthSubjectKind.APP.toString().toLowerCase())) {
-            var subjectJson = json.getJsonArray(AuthSubjectKind.APP.toString().toLowerCase());
-            if (subjectInfo.get(AuthSubjectKind.APP).stream().anyMatch(subjectJson::contains)) {
-                return true;
+            if (matchLike(policy, groupNodeIndex)) {
+                return AuthResultKind.ACCEPT;
             }
         }
-        if (subjectInfo.containsKey(AuthSubjectKind.TENANT)
-                && json.containsKey(AuthSubjectKind.TENANT.toString().toLowerCase())) {
-            var subjectJson = json.getJsonArray(AuthSubjectKind.TENANT.toString().toLowerCase());
-            return subjectInfo.get(AuthSubjectKind.TENANT).stream().anyMatch(subjectJson::contains);
-        }
-        return false;
+        return AuthResultKind.REJECT;
     }
 
-    private static Boolean matchInclude(JsonObject authInfo, Map<AuthSubjectKind, List<String>> subjectInfo) {
-        if (!authInfo.containsKey(AuthSubjectOperatorKind.INCLUDE.toString().toLowerCase())) {
+    private static Boolean matchBasic(AuthSubjectOperatorKind eqOrNeqKind, LocalPolicyCache.Policy policy,
+                                      Map<AuthSubjectKind, Set<String>> subjectInfo) {
+        if (!policy.contains(eqOrNeqKind)) {
             return false;
         }
-        var json = authInfo.getJsonObject(AuthSubjectOperatorKind.INCLUDE.toString().toLowerCase());
-        if (!subjectInfo.containsKey(AuthSubjectKind.GROUP_NODE)
-                || !json.containsKey(AuthSubjectKind.GROUP_NODE.toString().toLowerCase())) {
-            return false;
-        }
-        var subjectJson = json.getJsonArray(AuthSubjectKind.GROUP_NODE.toString().toLowerCase());
-        var subjectIds = subjectInfo.get(AuthSubjectKind.GROUP_NODE);
-        for (var item : subjectJson) {
-            var currentNodeCode = (String) item;
-            while (currentNodeCode.length() > 0) {
-                if (subjectIds.contains(currentNodeCode)) {
+        for (var subjectKind : BASIC_SUBJECT_KINDS) {
+            var subjectIds = subjectInfo.get(subjectKind);
+            if (subjectIds == null) {
+                continue;
+            }
+            var policySubjectIds = policy.getSubjectIds(eqOrNeqKind, subjectKind);
+            if (policySubjectIds.isEmpty()) {
+                continue;
+            }
+            for (var subjectId : subjectIds) {
+                if (policySubjectIds.contains(subjectId)) {
                     return true;
                 }
-                currentNodeCode = currentNodeCode.substring(0, currentNodeCode.length() - groupNodeLength);
             }
         }
         return false;
     }
 
-    private static Boolean matchLike(JsonObject authInfo, Map<AuthSubjectKind, List<String>> subjectInfo) {
-        if (!authInfo.containsKey(AuthSubjectOperatorKind.LIKE.toString().toLowerCase())) {
+    private static Boolean matchInclude(LocalPolicyCache.Policy policy, GroupNodeIndex groupNodeIndex) {
+        if (groupNodeIndex == null) {
             return false;
         }
-        var json = authInfo.getJsonObject(AuthSubjectOperatorKind.LIKE.toString().toLowerCase());
-        if (!subjectInfo.containsKey(AuthSubjectKind.GROUP_NODE)
-                || !json.containsKey(AuthSubjectKind.GROUP_NODE.toString().toLowerCase())) {
+        // 权限主体为策略节点或其上级节点
+        for (var nodeCode : policy.getSubjectIds(AuthSubjectOperatorKind.INCLUDE, AuthSubjectKind.GROUP_NODE)) {
+            if (groupNodeIndex.containsSelfOrAncestor(nodeCode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Boolean matchLike(LocalPolicyCache.Policy policy, GroupNodeIndex groupNodeIndex) {
+        if (groupNodeIndex == null) {
             return false;
         }
-        var subjectIds = subjectInfo.get(AuthSubjectKind.GROUP_NODE);
-        var subjectJson = json.getJsonArray(AuthSubjectKind.GROUP_NODE.toString().toLowerCase());
-        for (var item : subjectJson) {
-            var nodeCode = (String) item;
-            for (var subjectId : subjectIds) {
-                if (subjectId.startsWith(nodeCode)) {
-                    return true;
-                }
+        // 权限主体为策略节点或其下级节点
+        for (var nodeCode : policy.getSubjectIds(AuthSubjectOperatorKind.LIKE, AuthSubjectKind.GROUP_NODE)) {
+            if (groupNodeIndex.containsSelfOrDescendant(nodeCode)) {
+                return true;
             }
         }
         return false;
@@ -256,27 +280,7 @@ public class AuthenticationProcessor {
 
     private static Stream<String> matchResourceUris(URI resUri, String actionKind) {
         var resourceUri = URIHelper.newURI(URIHelper.formatUri(resUri));
-        var resourceKind = resourceUri.getScheme();
-        if (LocalResourceCache.getResourceInfo(resourceKind)
-                .getOrDefault(actionKind, new ArrayList<>())
-                .contains(resourceUri)) {
-            // 添加精确匹配
-            return Stream.of(resourceUri.toString());
-        }
-        var comparator = PATH_MATCHER.getPatternComparator(resourceUri.getPath());
-        return LocalResourceCache.getResourceInfo(resourceKind)
-                .getOrDefault(actionKind, new ArrayList<>())
-                .stream()
-                .filter(uri ->
-                        uri.getHost().equalsIgnoreCase(resourceUri.getHost())
-                                && uri.getPort() == resourceUri.getPort()
-                                && !uri.getPath().equalsIgnoreCase(resourceUri.getPath())
-                                && (uri.getRawQuery() == null
-                                || resourceUri.getRawQuery() != null
-                                && uri.getRawQuery().equalsIgnoreCase(resourceUri.getRawQuery()))
-                                && PATH_MATCHER.match(uri.getPath().toLowerCase(), resourceUri.getPath().toLowerCase())
-                )
-                .sorted((uri1, uri2) -> comparator.compare(uri1.getPath(), uri2.getPath()))
+        return LocalResourceCache.matchResources(resourceUri, actionKind).stream()
                 .map(URI::toString);
     }
 
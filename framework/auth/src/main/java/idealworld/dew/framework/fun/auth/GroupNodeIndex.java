@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.auth;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 群组节点层级索引.
+ * <p>
+ * 群组节点编码的每一级长度固定，上级节点的编码即下级节点编码的前缀。
+ * 构建时展开每个节点的所有上级编码，上级/下级关系的判断变为按层级深度的Set查找。
+ *
+ * @author gudaoxuri
+ */
+public class GroupNodeIndex {
+
+    private final int groupNodeLength;
+    // 节点编码
+    private final Set<String> nodeCodes;
+    // 节点编码及其所有上级节点编码
+    private final Set<String> selfAndAncestorCodes = new HashSet<>();
+
+    private GroupNodeIndex(Collection<String> nodeCodes, int groupNodeLength) {
+        this.groupNodeLength = groupNodeLength;
+        this.nodeCodes = new HashSet<>(nodeCodes);
+        for (var nodeCode : nodeCodes) {
+            var currentNodeCode = nodeCode;
+            while (currentNodeCode.length() > 0 && selfAndAncestorCodes.add(currentNodeCode)) {
+                currentNodeCode = parent(currentNodeCode);
+            }
+        }
+    }
+
+    public static GroupNodeIndex build(Collection<String> nodeCodes, int groupNodeLength) {
+        return new GroupNodeIndex(nodeCodes, groupNodeLength);
+    }
+
+    /**
+     * 是否包含指定节点或其任一上级节点.
+     *
+     * @param nodeCode 节点编码
+     * @return 是否包含
+     */
+    public boolean containsSelfOrAncestor(String nodeCode) {
+        var currentNodeCode = nodeCode;
+        while (currentNodeCode.length() > 0) {
+            if (nodeCodes.contains(currentNodeCode)) {
+                return true;
+            }
+            currentNodeCode = parent(currentNodeCode);
+        }
+        return false;
+    }
+
+    /**
+     * 是否包含指定节点或其任一下级节点.
+     *
+     * @param nodeCode 节点编码
+     * @return 是否包含
+     */
+    public boolean containsSelfOrDescendant(String nodeCode) {
+        return selfAndAncestorCodes.contains(nodeCode);
+    }
+
+    private String parent(String nodeCode) {
+        return nodeCode.substring(0, Math.max(nodeCode.length() - groupNodeLength, 0));
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.auth;
+
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.exception.BadRequestException;
+import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
+import idealworld.dew.framework.fun.auth.dto.AuthSubjectOperatorKind;
+import idealworld.dew.framework.fun.cache.FunCacheClient;
+import io.vertx.core.Future;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 本地鉴权策略索引.
+ * <p>
+ * Redis中每个 资源URI:资源操作类型 的策略为一个Hash，字段为 权限主体运算类型:权限主体类型:权限主体Id ，
+ * 值为授予该权限主体的权限策略数，增删权限主体只需增减单个字段的引用数.
+ * <p>
+ * 本地缓存预先解码的鉴权策略，格式为 权限主体运算类型 -> 权限主体类型 -> 权限主体Id集合，
+ * 鉴权时只需做集合查找，不再访问Redis.
+ * 策略或资源变更时由事件总线通知删除对应的缓存，下次鉴权时重新加载.
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class LocalPolicyCache {
+
+    // 资源URI:资源操作类型 -> 策略
+    private static final Map<String, Policy> LOCAL_POLICIES = new ConcurrentHashMap<>();
+    // 每次删除缓存时递增，加载期间发生过删除的策略不放入缓存，避免覆盖为旧值
+    private static final AtomicLong VERSION = new AtomicLong();
+    private static final String FIELD_SPLIT = ":";
+
+    /**
+     * 批量获取鉴权策略.
+     * <p>
+     * 本地不存在或已过期的策略通过一次批量HGETALL从Redis中获取.
+     *
+     * @param moduleName 模块名
+     * @param policyKeys 策略Key列表，见 {@link #policyKey(String, String)}
+     * @param expireSec  本地缓存的最长时间
+     * @return 策略Key -> 鉴权策略，没有配置策略时为空策略
+     */
+    public static Future<Map<String, Policy>> getPolicies(String moduleName, List<String> policyKeys, Integer expireSec) {
+        var policies = new HashMap<String, Policy>();
+        var missKeys = new ArrayList<String>();
+        var now = System.currentTimeMillis();
+        for (var key : policyKeys) {
+            var policy = LOCAL_POLICIES.get(key);
+            if (policy != null && (expireSec == null || expireSec <= 0 || policy.loadTime + expireSec * 1000L > now)) {
+                policies.put(key, policy);
+            } else {
+                missKeys.add(key);
+            }
+        }
+        if (missKeys.isEmpty()) {
+            return Future.succeededFuture(policies);
+        }
+        var version = VERSION.get();
+        return FunCacheClient.choose(moduleName).hgetall(missKeys.stream()
+                .map(key -> DewAuthConstant.CACHE_AUTH_POLICY + key)
+                .collect(Collectors.toList()))
+                .map(values -> {
+                    var putable = VERSION.get() == version;
+                    for (var i = 0; i < missKeys.size(); i++) {
+                        var loadedPolicy = Policy.compile(values.get(i));
+                        if (putable) {
+                            LOCAL_POLICIES.put(missKeys.get(i), loadedPolicy);
+                        }
+                        policies.put(missKeys.get(i), loadedPolicy);
+                    }
+                    return policies;
+                });
+    }
+
+    /**
+     * 生成策略Key.
+     *
+     * @param resourceUri 资源URI
+     * @param actionKind  资源操作类型
+     * @return 策略Key，与Redis中的Key（不含前缀）一致
+     */
+    public static String policyKey(String resourceUri, String actionKind) {
+        return resourceUri.replace("//", "") + ":" + actionKind.toLowerCase();
+    }
+
+    /**
+     * 生成策略在Redis Hash中的字段名.
+     *
+     * @param operatorKind 权限主体运算类型
+     * @param subjectKind  权限主体类型
+     * @param subjectId    权限主体Id
+     * @return 字段名
+     */
+    public static String policyField(AuthSubjectOperatorKind operatorKind, AuthSubjectKind subjectKind, String subjectId) {
+        return operatorKind.toString().toLowerCase() + FIELD_SPLIT + subjectKind.toString().toLowerCase() + FIELD_SPLIT + subjectId;
+    }
+
+    /**
+     * 删除鉴权策略缓存.
+     *
+     * @param resourceUri 资源URI
+     * @param actionKind  资源操作类型，为空时删除所有操作类型
+     */
+    public static void removePolicy(String resourceUri, String actionKind) {
+        VERSION.incrementAndGet();
+        if (actionKind == null || actionKind.isBlank()) {
+            for (var kind : OptActionKind.values()) {
+                LOCAL_POLICIES.remove(policyKey(resourceUri, kind.toString()));
+            }
+        } else {
+            LOCAL_POLICIES.remove(policyKey(resourceUri, actionKind));
+        }
+    }
+
+    /**
+     * 获取策略版本，每次策略或资源变更时递增.
+     *
+     * @return 策略版本
+     */
+    public static long getVersion() {
+        return VERSION.get();
+    }
+
+    public static void clear() {
+        VERSION.incrementAndGet();
+        LOCAL_POLICIES.clear();
+    }
+
+    /**
+     * 预先解码的鉴权策略.
+     */
+    public static class Policy {
+
+        private final Map<AuthSubjectOperatorKind, Map<AuthSubjectKind, Set<String>>> subjects = new EnumMap<>(AuthSubjectOperatorKind.class);
+        private final long loadTime = System.currentTimeMillis();
+
+        static Policy compile(Map<String, String> policyFields) {
+            var policy = new Policy();
+            for (var field : policyFields.keySet()) {
+                var fieldItems = field.split(FIELD_SPLIT, 3);
+                if (fieldItems.length != 3) {
+                    log.warn("[Auth]Ignore policy with illegal field [{}]", field);
+                    continue;
+                }
+                AuthSubjectOperatorKind operatorKind;
+                AuthSubjectKind subjectKind;
+                try {
+                    operatorKind = AuthSubjectOperatorKind.parse(fieldItems[0]);
+                    subjectKind = AuthSubjectKind.parse(fieldItems[1]);
+                } catch (BadRequestException e) {
+                    log.warn("[Auth]Ignore policy with unknown operator or subject kind [{}]", field);
+                    continue;
+                }
+                policy.subjects.computeIfAbsent(operatorKind, k -> new EnumMap<>(AuthSubjectKind.class))
+                        .computeIfAbsent(subjectKind, k -> new HashSet<>())
+                        .add(fieldItems[2]);
+            }
+            return policy;
+        }
+
+        /**
+         * 获取权限主体Id集合.
+         *
+         * @param operatorKind 权限主体运算类型
+         * @param subjectKind  权限主体类型
+         * @return 权限主体Id集合，不存在时返回空集合
+         */
+        public Set<String> getSubjectIds(AuthSubjectOperatorKind operatorKind, AuthSubjectKind subjectKind) {
+            var kindSubjects = subjects.get(operatorKind);
+            if (kindSubjects == null) {
+                return Collections.emptySet();
+            }
+            return kindSubjects.getOrDefault(subjectKind, Collections.emptySet());
+        }
+
+        public boolean contains(AuthSubjectOperatorKind operatorKind) {
+            return subjects.containsKey(operatorKind);
+        }
+
+    }
+
+}
@@ -17,13 +17,14 @@
 package idealworld.dew.framework.fun.auth;
 
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.util.PathTrie;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -32,66 +33,177 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * <p>
  * Redis格式：
  * <p>
- * 资源类型:资源URI:资源操作类型 = {权限主体运算类型:{权限主体类型:[权限主体Id]}}
+ * 资源类型:资源URI:资源操作类型 = Hash{权限主体运算类型:权限主体类型:权限主体Id}
+ * <p>
+ * 本地资源按 资源类型 -> 资源操作类型 索引，每个索引包含精确匹配的URI集合及按 Host:Port 分区的小写路径前缀树。
+ * 资源可带有响应缓存时间，见 {@link #getCacheExpireSec(URI, String)}。
  *
  * @author gudaoxuri
  */
 @Slf4j
 public class LocalResourceCache {
 
-    // resourceKind -> actionKind -> uris
-    private static final Map<String, Map<String, List<URI>>> LOCAL_RESOURCES = new ConcurrentHashMap<>();
+    // resourceKind -> actionKind -> resources
+    private static final Map<String, Map<String, ResourceIndex>> LOCAL_RESOURCES = new ConcurrentHashMap<>();
+
+    /**
+     * 查找与请求URI匹配的资源.
+     * <p>
+     * 存在精确匹配的资源时只返回该资源，否则返回路径模式匹配的资源（不含路径相同的资源），按具体程度排序，最具体的在前。
+     *
+     * @param resourceUri 请求URI
+     * @param actionKind  资源操作类型
+     * @return 匹配的资源
+     */
+    public static List<URI> matchResources(URI resourceUri, String actionKind) {
+        var resourceIndex = LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), Map.of()).get(actionKind);
+        if (resourceIndex == null) {
+            return new ArrayList<>();
+        }
+        return resourceIndex.match(resourceUri);
+    }
 
-    public static Map<String, List<URI>> getResourceInfo(String resourceKind) {
-        return LOCAL_RESOURCES.getOrDefault(resourceKind, new HashMap<>());
+    /**
+     * 获取与请求URI匹配的资源的响应缓存时间.
+     * <p>
+     * 以最具体的匹配资源为准。
+     *
+     * @param resourceUri 请求URI
+     * @param actionKind  资源操作类型
+     * @return 响应缓存时间（秒），没有匹配的资源或资源未设置时返回0
+     */
+    public static int getCacheExpireSec(URI resourceUri, String actionKind) {
+        var resourceIndex = LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), Map.of()).get(actionKind);
+        if (resourceIndex == null) {
+            return 0;
+        }
+        var matchedResources = resourceIndex.match(resourceUri);
+        if (matchedResources.isEmpty()) {
+            return 0;
+        }
+        return resourceIndex.cacheExpireSecs.getOrDefault(matchedResources.get(0), 0);
     }
 
-    public static void addLocalResource(URI resourceUri, String actionKind) {
+    public static void addLocalResource(URI resourceUri, String actionKind, Integer cacheExpireSec) {
         var resourceKind = resourceUri.getScheme();
         if (!LOCAL_RESOURCES.containsKey(resourceKind)) {
-            LOCAL_RESOURCES.put(resourceKind, new ConcurrentHashMap<>());
+            LOCAL_RESOURCES.putIfAbsent(resourceKind, new ConcurrentHashMap<>());
         }
         if (actionKind == null || actionKind.equalsIgnoreCase("")) {
-            addLocalResource(resourceKind, resourceUri, OptActionKind.CREATE.toString().toLowerCase());
-            addLocalResource(resourceKind, resourceUri, OptActionKind.MODIFY.toString().toLowerCase());
-            addLocalResource(resourceKind, resourceUri, OptActionKind.PATCH.toString().toLowerCase());
-            addLocalResource(resourceKind, resourceUri, OptActionKind.EXISTS.toString().toLowerCase());
-            addLocalResource(resourceKind, resourceUri, OptActionKind.FETCH.toString().toLowerCase());
-            addLocalResource(resourceKind, resourceUri, OptActionKind.DELETE.toString().toLowerCase());
+            for (var kind : OptActionKind.values()) {
+                addLocalResource(resourceKind, resourceUri, kind.toString().toLowerCase(), cacheExpireSec);
+            }
         } else {
-            addLocalResource(resourceKind, resourceUri, actionKind);
+            addLocalResource(resourceKind, resourceUri, actionKind.toLowerCase(), cacheExpireSec);
         }
     }
 
-    private static void addLocalResource(String resourceKind, URI resourceUri, String actionKind) {
-        if (!LOCAL_RESOURCES.get(resourceKind).containsKey(actionKind)) {
-            LOCAL_RESOURCES.get(resourceKind).put(actionKind, new CopyOnWriteArrayList<>());
-        }
-        if (!LOCAL_RESOURCES.get(resourceKind).get(actionKind).contains(resourceUri)) {
-            // 聚合服务中不同模块可能存在重复订阅添加，E.g. 网关、RelDB都会订阅reldb的资源主题
-            LOCAL_RESOURCES.get(resourceKind).get(actionKind).add(resourceUri);
-        }
+    private static void addLocalResource(String resourceKind, URI resourceUri, String actionKind, Integer cacheExpireSec) {
+        // 聚合服务中不同模块可能存在重复订阅添加，E.g. 网关、RelDB都会订阅reldb的资源主题，由索引忽略重复的资源
+        LOCAL_RESOURCES.get(resourceKind).computeIfAbsent(actionKind, k -> new ResourceIndex()).add(resourceUri, cacheExpireSec);
     }
 
     public static void removeLocalResource(URI resourceUri, String actionKind) {
+        var actionResources = LOCAL_RESOURCES.get(resourceUri.getScheme());
+        if (actionResources == null) {
+            return;
+        }
         if (actionKind == null || actionKind.equalsIgnoreCase("")) {
-            LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), new HashMap<>()).getOrDefault(OptActionKind.CREATE.toString().toLowerCase(),
-                    new ArrayList<>()).remove(resourceUri);
-            LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), new HashMap<>()).getOrDefault(OptActionKind.MODIFY.toString().toLowerCase(),
-                    new ArrayList<>()).remove(resourceUri);
-            LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), new HashMap<>()).getOrDefault(OptActionKind.PATCH.toString().toLowerCase(),
-                    new ArrayList<>()).remove(resourceUri);
-            LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), new HashMap<>()).getOrDefault(OptActionKind.EXISTS.toString().toLowerCase(),
-                    new ArrayList<>()).remove(resourceUri);
-            LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), new HashMap<>()).getOrDefault(OptActionKind.FETCH.toString().toLowerCase(),
-                    new ArrayList<>()).remove(resourceUri);
-            LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), new HashMap<>()).getOrDefault(OptActionKind.DELETE.toString().toLowerCase(),
-                    new ArrayList<>()).remove(resourceUri);
+            for (var kind : OptActionKind.values()) {
+                var resourceIndex = actionResources.get(kind.toString().toLowerCase());
+                if (resourceIndex != null) {
+                    resourceIndex.remove(resourceUri);
+                }
+            }
         } else {
-            LOCAL_RESOURCES.getOrDefault(resourceUri.getScheme(), new HashMap<>()).getOrDefault(actionKind.toLowerCase(),
-                    new ArrayList<>()).remove(resourceUri);
+            var resourceIndex = actionResources.get(actionKind.toLowerCase());
+            if (resourceIndex != null) {
+                resourceIndex.remove(resourceUri);
+            }
         }
     }
 
-}
+    /**
+     * 某一资源类型及操作类型下的资源索引.
+     */
+    private static class ResourceIndex {
+
+        private final Set<URI> uris = ConcurrentHashMap.newKeySet();
+        // host:port -> 小写路径前缀树，值为该路径下的资源（Query不同）
+        private final Map<String, PathTrie<List<URI>>> pathTries = new ConcurrentHashMap<>();
+        // host:port + 小写路径 -> 资源
+        private final Map<String, List<URI>> pathResources = new ConcurrentHashMap<>();
+        // 资源 -> 响应缓存时间（秒），只记录大于0的
+        private final Map<URI, Integer> cacheExpireSecs = new ConcurrentHashMap<>();
+
+        synchronized void add(URI resourceUri, Integer cacheExpireSec) {
+            if (cacheExpireSec != null && cacheExpireSec > 0) {
+                cacheExpireSecs.put(resourceUri, cacheExpireSec);
+            } else {
+                cacheExpireSecs.remove(resourceUri);
+            }
+            if (!uris.add(resourceUri)) {
+                return;
+            }
+            var hostKey = hostKey(resourceUri);
+            var path = lowerPath(resourceUri);
+            pathResources.computeIfAbsent(hostKey + path, k -> {
+                var resources = new CopyOnWriteArrayList<URI>();
+                pathTries.computeIfAbsent(hostKey, h -> new PathTrie<>()).put(path, resources);
+                return resources;
+            }).add(resourceUri);
+        }
+
+        synchronized void remove(URI resourceUri) {
+            if (!uris.remove(resourceUri)) {
+                return;
+            }
+            cacheExpireSecs.remove(resourceUri);
+            var hostKey = hostKey(resourceUri);
+            var path = lowerPath(resourceUri);
+            var resources = pathResources.get(hostKey + path);
+            if (resources == null) {
+                return;
+            }
+            resources.remove(resourceUri);
+            if (resources.isEmpty()) {
+                pathResources.remove(hostKey + path);
+                pathTries.get(hostKey).remove(path);
+            }
+        }
+
+        List<URI> match(URI resourceUri) {
+            var matchedResources = new ArrayList<URI>();
+            if (uris.contains(resourceUri)) {
+                // 添加精确匹配
+                matchedResources.add(resourceUri);
+                return matchedResources;
+            }
+            var pathTrie = pathTries.get(hostKey(resourceUri));
+            if (pathTrie == null) {
+                return matchedResources;
+            }
+            for (var resources : pathTrie.matchAll(lowerPath(resourceUri))) {
+                for (var uri : resources) {
+                    if (!uri.getPath().equalsIgnoreCase(resourceUri.getPath())
+                            && (uri.getRawQuery() == null
+                            || resourceUri.getRawQuery() != null
+                            && uri.getRawQuery().equalsIgnoreCase(resourceUri.getRawQuery()))) {
+                        matchedResources.add(uri);
+                    }
+                }
+            }
+            return matchedResources;
+        }
+
+        private static String hostKey(URI uri) {
+            return String.valueOf(uri.getHost()).toLowerCase() + ":" + uri.getPort();
+        }
+
+        private static String lowerPath(URI uri) {
+            return uri.getPath() == null ? "" : uri.getPath().toLowerCase();
+        }
 
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.auth;
+
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.fun.cache.FunCacheClient;
+import idealworld.dew.framework.fun.eventbus.FunEventBus;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Token会话本地缓存.
+ * <p>
+ * 缓存解码后的登录信息，容量有限（最近最少使用淘汰）且带过期时间。
+ * Token被移除（注销或超出保留的历史版本数）时，{@link AuthCacheProcessor} 会发布 {@link DewAuthConstant#CACHE_TOKEN_REMOVED_TOPIC} 通知，
+ * 订阅后（见 {@link #watch(String)}）收到通知即移除对应的缓存。
+ * <p>
+ * 缓存的登录信息为共享实例，获取后不应再修改。
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class TokenSessionCache {
+
+    private static final long WATCH_RETRY_INTERVAL_MS = 1000L;
+
+    private final long expireMs;
+    private final Map<String, Session> sessions;
+    private long version = 0;
+
+    public TokenSessionCache(int maxSize, int expireSec) {
+        this.expireMs = expireSec * 1000L;
+        this.sessions = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 订阅Token移除通知.
+     *
+     * @param moduleName 模块名
+     * @return 订阅结果
+     */
+    public Future<Void> watch(String moduleName) {
+        Promise<Void> promise = Promise.promise();
+        doWatch(moduleName, promise);
+        return promise.future();
+    }
+
+    private void doWatch(String moduleName, Promise<Void> promise) {
+        FunCacheClient.choose(moduleName).subscribe(DewAuthConstant.CACHE_TOKEN_REMOVED_TOPIC, this::remove)
+                .onSuccess(resp -> promise.complete())
+                .onFailure(e -> {
+                    // 订阅连接可能尚未建立
+                    log.warn("[Auth]Subscribe token removed topic error, retrying: {}", e.getMessage());
+                    FunEventBus.choose(moduleName).getVertx().setTimer(WATCH_RETRY_INTERVAL_MS, id -> doWatch(moduleName, promise));
+                });
+    }
+
+    /**
+     * 获取登录信息.
+     *
+     * @param token Token
+     * @return 登录信息，不存在或已过期时返回null
+     */
+    public synchronized IdentOptExchangeInfo get(String token) {
+        var session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.expireTime < System.currentTimeMillis()) {
+            sessions.remove(token);
+            return null;
+        }
+        return session.optInfo;
+    }
+
+    /**
+     * 获取当前版本，每次移除Token后递增.
+     *
+     * @return 版本
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * 添加登录信息.
+     *
+     * @param token   Token
+     * @param optInfo 登录信息
+     * @param version 从缓存服务获取登录信息前的版本
+     */
+    public synchronized void put(String token, IdentOptExchangeInfo optInfo, long version) {
+        if (version != this.version) {
+            // 获取期间有Token被移除，可能就是当前Token
+            return;
+        }
+        sessions.put(token, new Session(optInfo, System.currentTimeMillis() + expireMs));
+    }
+
+    public synchronized void remove(String token) {
+        log.trace("[Auth]Token [{}] removed", token);
+        version++;
+        sessions.remove(token);
+    }
+
+    private static class Session {
+
+        private final IdentOptExchangeInfo optInfo;
+        private final long expireTime;
+
+        Session(IdentOptExchangeInfo optInfo, long expireTime) {
+            this.optInfo = optInfo;
+            this.expireTime = expireTime;
+        }
+
+    }
+
+}
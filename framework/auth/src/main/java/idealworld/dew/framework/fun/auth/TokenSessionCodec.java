@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.auth;
+
+import idealworld.dew.framework.dto.IdentOptCacheInfo;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+
+/**
+ * Token会话编解码器.
+ * <p>
+ * 编码结果的首字符为编解码器的标识，解码时据此选择对应的编解码器，见 {@link TokenSessionSerializer}。
+ *
+ * @author gudaoxuri
+ */
+public interface TokenSessionCodec {
+
+    /**
+     * 编解码器标识，即编码结果的首字符.
+     *
+     * @return 标识
+     */
+    char flag();
+
+    String encode(IdentOptCacheInfo optInfo);
+
+    IdentOptExchangeInfo decode(String session);
+
+}
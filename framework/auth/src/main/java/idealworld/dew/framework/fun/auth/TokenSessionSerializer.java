@@ -0,0 +1,282 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.auth;
+
+import com.ecfront.dew.common.exception.RTException;
+import idealworld.dew.framework.dto.IdentOptCacheInfo;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.IdentOptInfo;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token会话序列化.
+ * <p>
+ * 默认以紧凑的二进制格式写入，读取时按首字符选择编解码器，兼容JSON格式的会话。
+ * 可通过 {@link #register(TokenSessionCodec)} 添加编解码器，通过 {@link #use(TokenSessionCodec)} 切换写入格式。
+ *
+ * @author gudaoxuri
+ */
+public class TokenSessionSerializer {
+
+    public static final TokenSessionCodec JSON = new JsonCodec();
+    public static final TokenSessionCodec BINARY = new BinaryCodec();
+
+    private static final Map<Character, TokenSessionCodec> CODECS = new ConcurrentHashMap<>();
+    private static volatile TokenSessionCodec writeCodec = BINARY;
+
+    static {
+        register(JSON);
+        register(BINARY);
+    }
+
+    public static void register(TokenSessionCodec codec) {
+        CODECS.put(codec.flag(), codec);
+    }
+
+    public static void use(TokenSessionCodec codec) {
+        register(codec);
+        writeCodec = codec;
+    }
+
+    public static String encode(IdentOptCacheInfo optInfo) {
+        return writeCodec.encode(optInfo);
+    }
+
+    public static IdentOptExchangeInfo decode(String session) {
+        var codec = CODECS.get(session.charAt(0));
+        if (codec == null) {
+            throw new RTException("Token session format [" + session.charAt(0) + "] not supported");
+        }
+        return codec.decode(session);
+    }
+
+    private static class JsonCodec implements TokenSessionCodec {
+
+        @Override
+        public char flag() {
+            return '{';
+        }
+
+        @Override
+        public String encode(IdentOptCacheInfo optInfo) {
+            return JsonObject.mapFrom(optInfo).toString();
+        }
+
+        @Override
+        public IdentOptExchangeInfo decode(String session) {
+            return new JsonObject(session).mapTo(IdentOptExchangeInfo.class);
+        }
+
+    }
+
+    /**
+     * 二进制格式，编码为Base64以兼容字符串存储.
+     * <p>
+     * 格式（版本1）：版本号，token、账号名称、账号编码、应用编码、Token类型，账号Id、应用Id、租户Id，
+     * 群组编码及群组名称字符串表，角色列表，群组节点列表（群组编码及群组名称为字符串表中的序号）。
+     * 整数使用变长编码，字符串为 长度+1 及UTF-8字节，0表示null。
+     */
+    private static class BinaryCodec implements TokenSessionCodec {
+
+        private static final byte VERSION = 1;
+
+        @Override
+        public char flag() {
+            return 'B';
+        }
+
+        @Override
+        public String encode(IdentOptCacheInfo optInfo) {
+            var out = new ByteArrayOutputStream(256);
+            out.write(VERSION);
+            writeString(out, optInfo.getToken());
+            writeString(out, optInfo.getAccountName());
+            writeString(out, optInfo.getAccountCode());
+            writeString(out, optInfo.getAppCode());
+            writeString(out, optInfo.getTokenKind());
+            writeLong(out, optInfo.getAccountId());
+            writeLong(out, optInfo.getAppId());
+            writeLong(out, optInfo.getTenantId());
+            // 同一群组的节点共享群组编码及名称，只写入一次
+            var strings = new LinkedHashMap<String, Integer>();
+            var groups = optInfo.getGroupInfo() != null ? optInfo.getGroupInfo() : new HashSet<IdentOptInfo.GroupInfo>();
+            for (var group : groups) {
+                intern(strings, group.getGroupCode());
+                intern(strings, group.getGroupName());
+            }
+            writeVarLong(out, strings.size());
+            strings.keySet().forEach(str -> writeString(out, str));
+            var roles = optInfo.getRoleInfo() != null ? optInfo.getRoleInfo() : new HashSet<IdentOptInfo.RoleInfo>();
+            writeVarLong(out, roles.size());
+            for (var role : roles) {
+                writeLong(out, role.getId());
+                writeString(out, role.getDefCode());
+                writeString(out, role.getName());
+            }
+            writeVarLong(out, groups.size());
+            for (var group : groups) {
+                writeVarLong(out, group.getGroupCode() == null ? 0 : strings.get(group.getGroupCode()) + 1);
+                writeString(out, group.getGroupNodeCode());
+                writeString(out, group.getGroupNodeBusCode());
+                writeVarLong(out, group.getGroupName() == null ? 0 : strings.get(group.getGroupName()) + 1);
+                writeString(out, group.getGroupNodeName());
+            }
+            return flag() + Base64.getEncoder().withoutPadding().encodeToString(out.toByteArray());
+        }
+
+        @Override
+        public IdentOptExchangeInfo decode(String session) {
+            var in = new Reader(Base64.getDecoder().decode(session.substring(1)));
+            var version = in.readByte();
+            if (version != VERSION) {
+                throw new RTException("Token session binary version [" + version + "] not supported");
+            }
+            var optInfo = new IdentOptExchangeInfo();
+            optInfo.setToken(in.readString());
+            optInfo.setAccountName(in.readString());
+            optInfo.setAccountCode(in.readString());
+            optInfo.setAppCode(in.readString());
+            optInfo.setTokenKind(in.readString());
+            optInfo.setAccountId(in.readLong());
+            optInfo.setAppId(in.readLong());
+            optInfo.setTenantId(in.readLong());
+            var stringSize = (int) in.readVarLong();
+            List<String> strings = new ArrayList<>(stringSize);
+            for (var i = 0; i < stringSize; i++) {
+                strings.add(in.readString());
+            }
+            var roleSize = (int) in.readVarLong();
+            var roles = new HashSet<IdentOptInfo.RoleInfo>(roleSize * 2);
+            for (var i = 0; i < roleSize; i++) {
+                roles.add(IdentOptInfo.RoleInfo.builder()
+                        .id(in.readLong())
+                        .defCode(in.readString())
+                        .name(in.readString())
+                        .build());
+            }
+            optInfo.setRoleInfo(roles);
+            var groupSize = (int) in.readVarLong();
+            var groups = new HashSet<IdentOptInfo.GroupInfo>(groupSize * 2);
+            for (var i = 0; i < groupSize; i++) {
+                var groupCodeIdx = (int) in.readVarLong();
+                var groupNodeCode = in.readString();
+                var groupNodeBusCode = in.readString();
+                var groupNameIdx = (int) in.readVarLong();
+                groups.add(IdentOptInfo.GroupInfo.builder()
+                        .groupCode(groupCodeIdx == 0 ? null : strings.get(groupCodeIdx - 1))
+                        .groupNodeCode(groupNodeCode)
+                        .groupNodeBusCode(groupNodeBusCode)
+                        .groupName(groupNameIdx == 0 ? null : strings.get(groupNameIdx - 1))
+                        .groupNodeName(in.readString())
+                        .build());
+            }
+            optInfo.setGroupInfo(groups);
+            return optInfo;
+        }
+
+        private static void intern(Map<String, Integer> strings, String str) {
+            if (str != null) {
+                strings.putIfAbsent(str, strings.size());
+            }
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private static void writeLong(ByteArrayOutputStream out, Long value) {
+            if (value == null) {
+                out.write(0);
+                return;
+            }
+            out.write(1);
+            // ZigZag，使较小的负数（如未定义标识-1）也只占一个字节
+            writeVarLong(out, (value << 1) ^ (value >> 63));
+        }
+
+        private static void writeString(ByteArrayOutputStream out, String value) {
+            if (value == null) {
+                writeVarLong(out, 0);
+                return;
+            }
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length + 1);
+            out.write(bytes, 0, bytes.length);
+        }
+
+    }
+
+    private static class Reader {
+
+        private final byte[] bytes;
+        private int pos = 0;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte readByte() {
+            return bytes[pos++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            var shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        Long readLong() {
+            if (readByte() == 0) {
+                return null;
+            }
+            var value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            var len = (int) readVarLong();
+            if (len == 0) {
+                return null;
+            }
+            var str = new String(bytes, pos, len - 1, StandardCharsets.UTF_8);
+            pos += len - 1;
+            return str;
+        }
+
+    }
+
+}
@@ -34,5 +34,7 @@ public class ResourceExchange {
 
     private String uri;
     private String actionKind;
+    // 响应缓存时间（秒），为空或0时不缓存
+    private Integer cacheExpireSec;
 
 }
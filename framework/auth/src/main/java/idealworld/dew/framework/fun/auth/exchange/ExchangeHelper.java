@@ -16,18 +16,19 @@
 
 package idealworld.dew.framework.fun.auth.exchange;
 
-import com.ecfront.dew.common.$;
 import com.ecfront.dew.common.tuple.Tuple2;
 import idealworld.dew.framework.DewAuthConfig;
 import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
 import idealworld.dew.framework.fun.auth.LocalResourceCache;
 import idealworld.dew.framework.fun.auth.dto.ResourceExchange;
 import idealworld.dew.framework.fun.auth.dto.ResourceKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceSubjectExchange;
 import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.util.URIHelper;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
@@ -35,10 +36,13 @@ import io.vertx.core.json.JsonObject;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * 模块间数据交互处理器.
@@ -54,121 +58,221 @@ public class ExchangeHelper {
         config = _config;
     }
 
+    /**
+     * 加载并监听资源.
+     *
+     * @param moduleName 模块名
+     * @param kind       资源类型，为空时表示所有类型
+     * @return 加载结果
+     */
     public static Future<Void> loadAndWatchResources(String moduleName, String kind) {
-        return Future.succeededFuture()
-                .compose(resp -> {
-                    if (config == null || config.getAppId() == null) {
-                        log.warn("Cannot connect to the iam service because the iam configuration does not exist!");
-                        return Future.succeededFuture();
-                    }
-                    var header = new HashMap<String, String>();
-                    var identOptInfo = IdentOptExchangeInfo.builder()
-                            .tenantId(config.getTenantId())
-                            .appId(config.getAppId())
-                            .unauthorizedTenantId(config.getTenantId())
-                            .unauthorizedAppId(config.getAppId())
-                            .build();
-                    header.put(DewAuthConstant.REQUEST_IDENT_OPT_FLAG, $.security.encodeStringToBase64(JsonObject.mapFrom(identOptInfo).toString(),
-                            StandardCharsets.UTF_8));
-                    return FunEventBus.choose(moduleName).request(config.getModuleName(), OptActionKind.FETCH,
-                            DewAuthConstant.REQUEST_INNER_PATH_PREFIX + "resource?kind=" + kind, null, header)
-                            .compose(result -> {
-                                var resources = new JsonArray(result._0.toString(StandardCharsets.UTF_8));
-                                for (var resource : resources) {
-                                    var resourceExchange = ((JsonObject) resource).mapTo(ResourceExchange.class);
-                                    LocalResourceCache.addLocalResource(URIHelper.newURI(resourceExchange.getUri()),
-                                            resourceExchange.getActionKind().toLowerCase());
-                                    log.info("[Exchange]Init [resource.actionKind={}:uri={}] data", resourceExchange.getActionKind(),
-                                            resourceExchange.getUri());
-                                }
-                                return Future.succeededFuture();
-                            });
-                })
-                .compose(resp -> watch(moduleName, new HashSet<>() {
-                    {
-                        add("eb://" + DewAuthConstant.MODULE_IAM_NAME + "/resource." + kind);
+        var kinds = kind == null || kind.isBlank()
+                ? Arrays.asList(ResourceKind.values())
+                : List.of(ResourceKind.parse(kind));
+        return CompositeFuture.all(kinds.stream()
+                .map(resourceKind -> loadAndWatchResources(moduleName, resourceKind))
+                .collect(Collectors.toList()))
+                .compose(resp -> watchPolicies(moduleName));
+    }
+
+    private static Future<Void> loadAndWatchResources(String moduleName, ResourceKind kind) {
+        var category = "resource." + kind.toString().toLowerCase();
+        // 本地已加载的资源，全量重新加载时据此删除IAM中已不存在的资源
+        Set<ResourceExchange> loadedResources = ConcurrentHashMap.newKeySet();
+        Consumer<Tuple2<OptActionKind, Buffer>> changeFun = exchangeInfo -> {
+            var resourceExchange = exchangeInfo._1.toJsonObject().mapTo(ResourceExchange.class);
+            var resourceActionKind = resourceExchange.getActionKind().toLowerCase();
+            var resourceUri = URIHelper.newURI(resourceExchange.getUri());
+            resourceExchange.setActionKind(resourceActionKind);
+            LocalPolicyCache.removePolicy(URIHelper.formatUri(resourceUri), resourceActionKind);
+            switch (exchangeInfo._0) {
+                case CREATE:
+                    LocalResourceCache.addLocalResource(resourceUri, resourceActionKind, resourceExchange.getCacheExpireSec());
+                    loadedResources.add(resourceExchange);
+                    log.info("[Exchange]Created [resource.actionKind={},uri={}] data", resourceActionKind, resourceExchange.getUri());
+                    break;
+                case MODIFY:
+                    LocalResourceCache.removeLocalResource(resourceUri, resourceActionKind);
+                    LocalResourceCache.addLocalResource(resourceUri, resourceActionKind, resourceExchange.getCacheExpireSec());
+                    // 缓存时间变更后旧的记录不再相等，需先移除，以免全量重新加载时误删此资源
+                    loadedResources.removeIf(loadedResource -> loadedResource.getUri().equals(resourceExchange.getUri())
+                            && loadedResource.getActionKind().equals(resourceActionKind));
+                    loadedResources.add(resourceExchange);
+                    log.info("[Exchange]Modify [resource.actionKind={},uri={}] data", resourceActionKind, resourceExchange.getUri());
+                    break;
+                case DELETE:
+                    LocalResourceCache.removeLocalResource(resourceUri, resourceActionKind);
+                    loadedResources.remove(resourceExchange);
+                    log.info("[Exchange]Delete [resource.actionKind={},uri={}] data", resourceActionKind, resourceExchange.getUri());
+                    break;
+                default:
+                    log.warn("[Exchange]Not found action kind");
+            }
+        };
+        if (config == null || config.getAppId() == null) {
+            log.warn("Cannot connect to the iam service because the iam configuration does not exist!");
+            return watch(moduleName, Set.of(category), changeFun);
+        }
+        return new ExchangeSubscription(moduleName, category, () -> loadResources(moduleName, kind, loadedResources), changeFun)
+                .start(config.getSyncIntervalSec());
+    }
+
+    private static Future<Void> loadResources(String moduleName, ResourceKind kind, Set<ResourceExchange> loadedResources) {
+        return FunEventBus.choose(moduleName).request(config.getModuleName(), OptActionKind.FETCH,
+                DewAuthConstant.REQUEST_INNER_PATH_PREFIX + "resource?kind=" + kind.toString(), null, new HashMap<>(), identOptInfo(), null)
+                .compose(result -> {
+                    var resources = new JsonArray(result._0.toString(StandardCharsets.UTF_8)).stream()
+                            .map(resource -> {
+                                var resourceExchange = ((JsonObject) resource).mapTo(ResourceExchange.class);
+                                resourceExchange.setActionKind(resourceExchange.getActionKind().toLowerCase());
+                                return resourceExchange;
+                            })
+                            .collect(Collectors.toSet());
+                    for (var resourceExchange : loadedResources) {
+                        if (!resources.contains(resourceExchange)) {
+                            var resourceUri = URIHelper.newURI(resourceExchange.getUri());
+                            LocalResourceCache.removeLocalResource(resourceUri, resourceExchange.getActionKind());
+                            LocalPolicyCache.removePolicy(URIHelper.formatUri(resourceUri), resourceExchange.getActionKind());
+                            loadedResources.remove(resourceExchange);
+                            log.info("[Exchange]Reload removed [resource.actionKind={}:uri={}] data", resourceExchange.getActionKind(),
+                                    resourceExchange.getUri());
+                        }
                     }
-                }, exchangeInfo -> {
-                    var resourceExchange = exchangeInfo._1.toJsonObject().mapTo(ResourceExchange.class);
-                    var resourceActionKind = resourceExchange.getActionKind().toLowerCase();
-                    var resourceUri = URIHelper.newURI(resourceExchange.getUri());
-                    switch (exchangeInfo._0) {
-                        case CREATE:
-                            LocalResourceCache.addLocalResource(resourceUri, resourceActionKind);
-                            log.info("[Exchange]Created [resource.actionKind={},uri={}] data", resourceActionKind, resourceExchange.getUri());
-                            break;
-                        case MODIFY:
-                            LocalResourceCache.removeLocalResource(resourceUri, resourceActionKind);
-                            LocalResourceCache.addLocalResource(resourceUri, resourceActionKind);
-                            log.info("[Exchange]Modify [resource.actionKind={},uri={}] data", resourceActionKind, resourceExchange.getUri());
-                            break;
-                        case DELETE:
-                            LocalResourceCache.removeLocalResource(resourceUri, resourceActionKind);
-                            log.info("[Exchange]Delete [resource.actionKind={},uri={}] data", resourceActionKind, resourceExchange.getUri());
-                            break;
-                        default:
-                            log.warn("[Exchange]Not found action kind");
+                    for (var resourceExchange : resources) {
+                        if (loadedResources.add(resourceExchange)) {
+                            LocalResourceCache.addLocalResource(URIHelper.newURI(resourceExchange.getUri()), resourceExchange.getActionKind(),
+                                    resourceExchange.getCacheExpireSec());
+                            log.info("[Exchange]Init [resource.actionKind={}:uri={}] data", resourceExchange.getActionKind(),
+                                    resourceExchange.getUri());
+                        }
                     }
-                }));
+                    return Future.succeededFuture();
+                });
+    }
+
+    /**
+     * 监听鉴权策略变更，删除本地对应的策略缓存.
+     *
+     * @param moduleName 模块名
+     * @return 监听结果
+     */
+    public static Future<Void> watchPolicies(String moduleName) {
+        return watch(moduleName, Set.of("policy"), exchangeInfo -> {
+            var resourceExchange = exchangeInfo._1.toJsonObject().mapTo(ResourceExchange.class);
+            LocalPolicyCache.removePolicy(resourceExchange.getUri(), resourceExchange.getActionKind());
+            log.info("[Exchange]Changed [policy.actionKind={},uri={}] data", resourceExchange.getActionKind(), resourceExchange.getUri());
+        });
     }
 
     public static Future<Void> loadAndWatchResourceSubjects(String moduleName, ResourceKind kind, Consumer<ResourceSubjectExchange> addFun,
                                                             Consumer<String> removeFun) {
-        return Future.succeededFuture()
-                .compose(resp -> {
-                    if (config == null || config.getAppId() == null) {
-                        log.warn("Cannot connect to the iam service because the iam configuration does not exist!");
-                        return Future.succeededFuture();
-                    }
-                    var header = new HashMap<String, String>();
-                    var identOptInfo = IdentOptExchangeInfo.builder()
-                            .tenantId(config.getTenantId())
-                            .appId(config.getAppId())
-                            .unauthorizedTenantId(config.getTenantId())
-                            .unauthorizedAppId(config.getAppId())
-                            .build();
-                    header.put(DewAuthConstant.REQUEST_IDENT_OPT_FLAG, $.security.encodeStringToBase64(JsonObject.mapFrom(identOptInfo).toString(),
-                            StandardCharsets.UTF_8));
-                    return FunEventBus.choose(moduleName).request(config.getModuleName(), OptActionKind.FETCH,
-                            DewAuthConstant.REQUEST_INNER_PATH_PREFIX + "resource/subject?kind=" + kind.toString(), null, header)
-                            .compose(result -> {
-                                var resourceSubjects = new JsonArray(result._0.toString(StandardCharsets.UTF_8));
-                                for (var resourceSubject : resourceSubjects) {
-                                    var resourceSubjectExchange = ((JsonObject) resourceSubject).mapTo(ResourceSubjectExchange.class);
-                                    addFun.accept(resourceSubjectExchange);
-                                    log.info("[Exchange]Init [resourceSubject.code={}] data", resourceSubjectExchange.getCode());
-                                }
-                                return Future.succeededFuture();
-                            });
-                })
-                .compose(resp -> watch(moduleName, new HashSet<>() {
-                    {
-                        add("eb://" + DewAuthConstant.MODULE_IAM_NAME + "/resourcesubject." + kind.toString().toLowerCase());
+        var category = "resourcesubject." + kind.toString().toLowerCase();
+        // 本地已加载的资源主体编码，全量重新加载时据此删除IAM中已不存在的资源主体
+        Set<String> loadedCodes = ConcurrentHashMap.newKeySet();
+        Consumer<Tuple2<OptActionKind, Buffer>> changeFun = exchangeInfo -> {
+            var resourceSubjectExchange = exchangeInfo._1.toJsonObject().mapTo(ResourceSubjectExchange.class);
+            if (exchangeInfo._0 == OptActionKind.CREATE
+                    || exchangeInfo._0 == OptActionKind.MODIFY) {
+                removeFun.accept(resourceSubjectExchange.getCode());
+                addFun.accept(resourceSubjectExchange);
+                loadedCodes.add(resourceSubjectExchange.getCode());
+                log.info("[Exchange]Updated [resourceSubject.code={}] data", resourceSubjectExchange.getCode());
+            } else if (exchangeInfo._0 == OptActionKind.DELETE) {
+                removeFun.accept(resourceSubjectExchange.getCode());
+                loadedCodes.remove(resourceSubjectExchange.getCode());
+                log.error("[Exchange]Removed [resourceSubject.code={}]", resourceSubjectExchange.getCode());
+            }
+        };
+        if (config == null || config.getAppId() == null) {
+            log.warn("Cannot connect to the iam service because the iam configuration does not exist!");
+            return watch(moduleName, Set.of(category), changeFun);
+        }
+        return new ExchangeSubscription(moduleName, category, () -> loadResourceSubjects(moduleName, kind, addFun, removeFun, loadedCodes), changeFun)
+                .start(config.getSyncIntervalSec());
+    }
+
+    private static Future<Void> loadResourceSubjects(String moduleName, ResourceKind kind, Consumer<ResourceSubjectExchange> addFun,
+                                                     Consumer<String> removeFun, Set<String> loadedCodes) {
+        return FunEventBus.choose(moduleName).request(config.getModuleName(), OptActionKind.FETCH,
+                DewAuthConstant.REQUEST_INNER_PATH_PREFIX + "resource/subject?kind=" + kind.toString(), null, new HashMap<>(), identOptInfo(), null)
+                .compose(result -> {
+                    var resourceSubjects = new JsonArray(result._0.toString(StandardCharsets.UTF_8)).stream()
+                            .map(resourceSubject -> ((JsonObject) resourceSubject).mapTo(ResourceSubjectExchange.class))
+                            .collect(Collectors.toList());
+                    var codes = resourceSubjects.stream().map(ResourceSubjectExchange::getCode).collect(Collectors.toSet());
+                    for (var code : loadedCodes) {
+                        if (!codes.contains(code)) {
+                            removeFun.accept(code);
+                            loadedCodes.remove(code);
+                            log.info("[Exchange]Reload removed [resourceSubject.code={}] data", code);
+                        }
                     }
-                }, exchangeInfo -> {
-                    var resourceSubjectExchange = exchangeInfo._1.toJsonObject().mapTo(ResourceSubjectExchange.class);
-                    if (exchangeInfo._0 == OptActionKind.CREATE
-                            || exchangeInfo._0 == OptActionKind.MODIFY) {
-                        removeFun.accept(resourceSubjectExchange.getCode());
+                    for (var resourceSubjectExchange : resourceSubjects) {
+                        if (!loadedCodes.add(resourceSubjectExchange.getCode())) {
+                            removeFun.accept(resourceSubjectExchange.getCode());
+                        }
                         addFun.accept(resourceSubjectExchange);
-                        log.info("[Exchange]Updated [resourceSubject.code={}] data", resourceSubjectExchange.getCode());
-                    } else if (exchangeInfo._0 == OptActionKind.DELETE) {
-                        removeFun.accept(resourceSubjectExchange.getCode());
-                        log.error("[Exchange]Removed [resourceSubject.code={}]", resourceSubjectExchange.getCode());
+                        log.info("[Exchange]Init [resourceSubject.code={}] data", resourceSubjectExchange.getCode());
                     }
-                }));
+                    return Future.succeededFuture();
+                });
     }
 
-    public static Future<Void> watch(String moduleName, Set<String> uris, Consumer<Tuple2<OptActionKind, Buffer>> fun) {
-        FunEventBus.choose(moduleName).consumer("", (FunEventBus.ConsumerFun<Void>) (actionKind, uri, header, body) -> {
-            var strUri = uri.toString().toLowerCase();
-            if (uris.stream().anyMatch(u -> strUri.startsWith(u.toLowerCase()))) {
-                log.trace("[Exchange]Received {}", body.toString());
-                fun.accept(new Tuple2<>(actionKind, body));
-            }
-            return Future.succeededFuture();
-        });
+    /**
+     * 监听IAM的变更主题.
+     * <p>
+     * 每个主题对应一个事件总线地址，只会收到所监听主题的变更。
+     *
+     * @param moduleName 模块名
+     * @param categories 主题，即IAM发布变更时的 subjectCategory
+     * @param fun        变更处理函数
+     * @return 监听结果
+     */
+    public static Future<Void> watch(String moduleName, Set<String> categories, Consumer<Tuple2<OptActionKind, Buffer>> fun) {
+        for (var category : categories) {
+            FunEventBus.choose(moduleName).consumer(topic(DewAuthConstant.MODULE_IAM_NAME, category),
+                    (FunEventBus.ConsumerFun<Void>) (actionKind, uri, header, body) -> {
+                        log.trace("[Exchange]Received {}", body.toString());
+                        fun.accept(new Tuple2<>(actionKind, body));
+                        return Future.succeededFuture();
+                    });
+        }
         return Future.succeededFuture();
     }
 
+    /**
+     * 获取变更主题对应的事件总线地址.
+     *
+     * @param moduleName 发布变更的模块名
+     * @param category   主题
+     * @return 事件总线地址
+     */
+    public static String topic(String moduleName, String category) {
+        return DewAuthConstant.EXCHANGE_TOPIC_PREFIX + moduleName + "." + category.toLowerCase();
+    }
+
+    /**
+     * 获取IAM变更日志.
+     *
+     * @param moduleName 模块名
+     * @param category   主题
+     * @param sinceSeq   获取此序号之后的变更
+     * @return 当前序号（seq）、日志中最早的序号（firstSeq）及变更列表（changes）
+     */
+    static Future<JsonObject> fetchChangeLog(String moduleName, String category, long sinceSeq) {
+        return FunEventBus.choose(moduleName).request(config.getModuleName(), OptActionKind.FETCH,
+                DewAuthConstant.REQUEST_INNER_PATH_PREFIX + "changelog?category=" + category + "&since=" + sinceSeq,
+                null, new HashMap<>(), identOptInfo(), null)
+                .map(result -> new JsonObject(result._0.toString(StandardCharsets.UTF_8)));
+    }
+
+    private static IdentOptExchangeInfo identOptInfo() {
+        return IdentOptExchangeInfo.builder()
+                .tenantId(config.getTenantId())
+                .appId(config.getAppId())
+                .unauthorizedTenantId(config.getTenantId())
+                .unauthorizedAppId(config.getAppId())
+                .build();
+    }
+
 }
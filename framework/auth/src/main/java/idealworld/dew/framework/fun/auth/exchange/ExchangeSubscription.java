@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.auth.exchange;
+
+import com.ecfront.dew.common.tuple.Tuple2;
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.eventbus.FunEventBus;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 基于变更日志的模块间数据订阅.
+ * <p>
+ * IAM的资源及资源主体变更按主题记录到变更日志并带有主题内单调递增的序号（见 {@link DewAuthConstant#REQUEST_EXCHANGE_SEQ_FLAG}），
+ * 每个订阅对应一个主题，本地记录已应用的最大序号：收到的变更序号连续时直接应用，出现间隔（如重连期间丢失了事件）时按序号增量拉取缺失的变更，
+ * 所需的变更已从日志中移除或IAM的序号比本地还小时才全量重新加载。
+ * 另外定时增量拉取一次，以发现之后没有新事件触发的遗漏。
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+class ExchangeSubscription {
+
+    private static final long SEQ_UNINITIALIZED = -1L;
+
+    private final String moduleName;
+    private final String category;
+    private final Supplier<Future<Void>> reloadFun;
+    private final Consumer<Tuple2<OptActionKind, Buffer>> changeFun;
+    private long seq = SEQ_UNINITIALIZED;
+    private boolean syncing = false;
+
+    ExchangeSubscription(String moduleName, String category, Supplier<Future<Void>> reloadFun,
+                         Consumer<Tuple2<OptActionKind, Buffer>> changeFun) {
+        this.moduleName = moduleName;
+        this.category = category;
+        this.reloadFun = reloadFun;
+        this.changeFun = changeFun;
+    }
+
+    Future<Void> start(Integer syncIntervalSec) {
+        FunEventBus.choose(moduleName).consumer(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, category),
+                (FunEventBus.ConsumerFun<Void>) (actionKind, uri, header, body) -> {
+                    onChange(actionKind, body, header.get(DewAuthConstant.REQUEST_EXCHANGE_SEQ_FLAG));
+                    return Future.succeededFuture();
+                });
+        return reload()
+                .onSuccess(resp -> {
+                    if (syncIntervalSec != null && syncIntervalSec > 0) {
+                        FunEventBus.choose(moduleName).getVertx().setPeriodic(syncIntervalSec * 1000L, id -> sync());
+                    }
+                });
+    }
+
+    private synchronized void onChange(OptActionKind actionKind, Buffer body, String changeSeqStr) {
+        if (changeSeqStr == null || seq == SEQ_UNINITIALIZED) {
+            // 不带序号的变更或尚未完成加载时直接应用，加载完成后的增量同步会按序重放
+            apply(actionKind, body);
+            return;
+        }
+        var changeSeq = Long.parseLong(changeSeqStr);
+        if (changeSeq <= seq) {
+            return;
+        }
+        if (changeSeq == seq + 1) {
+            apply(actionKind, body);
+            seq = changeSeq;
+            return;
+        }
+        log.warn("[Exchange]Missing [{}] changes between [{}] and [{}], fetching delta", category, seq, changeSeq);
+        sync();
+    }
+
+    private void apply(OptActionKind actionKind, Buffer body) {
+        log.trace("[Exchange]Received {}", body.toString());
+        changeFun.accept(new Tuple2<>(actionKind, body));
+    }
+
+    private Future<Void> reload() {
+        // 先获取当前序号再加载全量数据，加载期间的变更由之后的增量同步补齐
+        return ExchangeHelper.fetchChangeLog(moduleName, category, Long.MAX_VALUE)
+                .map(changeLog -> changeLog.getLong("seq"))
+                .otherwise(e -> {
+                    log.warn("[Exchange]Change log is not available, only applying published changes: {}", e.getMessage());
+                    return SEQ_UNINITIALIZED;
+                })
+                .compose(latestSeq -> reloadFun.get()
+                        .compose(resp -> {
+                            if (latestSeq == SEQ_UNINITIALIZED) {
+                                return Future.succeededFuture();
+                            }
+                            synchronized (this) {
+                                seq = latestSeq;
+                            }
+                            return fetchDelta();
+                        }));
+    }
+
+    private synchronized void sync() {
+        if (syncing || seq == SEQ_UNINITIALIZED) {
+            return;
+        }
+        syncing = true;
+        fetchDelta()
+                .onComplete(result -> {
+                    synchronized (this) {
+                        syncing = false;
+                    }
+                    if (result.failed()) {
+                        log.warn("[Exchange]Sync [{}] changes error: {}", category, result.cause().getMessage(), result.cause());
+                    }
+                });
+    }
+
+    private synchronized Future<Void> fetchDelta() {
+        return ExchangeHelper.fetchChangeLog(moduleName, category, seq)
+                .compose(this::applyChangeLog);
+    }
+
+    private Future<Void> applyChangeLog(JsonObject changeLog) {
+        var latestSeq = changeLog.getLong("seq");
+        var firstSeq = changeLog.getLong("firstSeq");
+        synchronized (this) {
+            if (seq == SEQ_UNINITIALIZED) {
+                // 正在重新加载
+                return Future.succeededFuture();
+            }
+            if (latestSeq < seq || seq + 1 < firstSeq) {
+                log.warn("[Exchange]Changes of [{}] since [{}] are not available (change log: {}-{}), reloading", category, seq, firstSeq, latestSeq);
+                seq = SEQ_UNINITIALIZED;
+            } else {
+                for (var item : changeLog.getJsonArray("changes")) {
+                    var change = (JsonObject) item;
+                    var changeSeq = change.getLong("seq");
+                    if (changeSeq <= seq) {
+                        continue;
+                    }
+                    apply(OptActionKind.parse(change.getString("actionKind")), change.getJsonObject("body").toBuffer());
+                    seq = changeSeq;
+                }
+                seq = Math.max(seq, latestSeq);
+                return Future.succeededFuture();
+            }
+        }
+        return reload();
+    }
+
+}
@@ -17,6 +17,7 @@
 package idealworld.dew.framework.test;
 
 import com.ecfront.dew.common.$;
+import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.DewConfig;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.fun.auth.AuthCacheProcessor;
@@ -78,4 +79,53 @@ public class AuthCacheTest extends DewTest {
         testContext.completeNow();
     }
 
+    @SneakyThrows
+    @Test
+    public void testRevisionHistoryLimit(Vertx vertx, VertxTestContext testContext) {
+        await(FunCacheClient.init("", vertx, DewConfig.FunConfig.CacheConfig.builder()
+                .uri("redis://localhost:" + redisConfig.getFirstMappedPort())
+                .build()));
+        var context = ProcessContext.builder()
+                .moduleName("")
+                .funStatus(new HashMap<>() {
+                    {
+                        put("cache", true);
+                    }
+                })
+                .build().init(IdentOptExchangeInfo.builder().build());
+        AuthCacheProcessor.setRevisionHistoryLimit(0, Map.of("APP", 1));
+        var tokens = new ArrayList<String>();
+        for (var i = 0; i < 4; i++) {
+            var token = $.field.createUUID();
+            tokens.add(token);
+            await(AuthCacheProcessor.setOptInfo(IdentOptExchangeInfo.builder()
+                    .token(token)
+                    .accountCode("revision")
+                    .tokenKind(i % 2 == 0 ? "app" : "web")
+                    .build(), DewAuthConstant.OBJECT_UNDEFINED, context));
+            Thread.sleep(5);
+        }
+        // app 保留最新的2个，web 保留最新的1个
+        Assertions.assertTrue(await(AuthCacheProcessor.getOptInfo(tokens.get(0), context))._0.isPresent());
+        Assertions.assertTrue(await(AuthCacheProcessor.getOptInfo(tokens.get(2), context))._0.isPresent());
+        Assertions.assertTrue(await(AuthCacheProcessor.getOptInfo(tokens.get(3), context))._0.isPresent());
+        await(AuthCacheProcessor.setOptInfo(IdentOptExchangeInfo.builder()
+                .token($.field.createUUID())
+                .accountCode("revision")
+                .tokenKind("app")
+                .build(), DewAuthConstant.OBJECT_UNDEFINED, context));
+        await(AuthCacheProcessor.setOptInfo(IdentOptExchangeInfo.builder()
+                .token($.field.createUUID())
+                .accountCode("revision")
+                .tokenKind("web")
+                .build(), DewAuthConstant.OBJECT_UNDEFINED, context));
+        Assertions.assertFalse(await(AuthCacheProcessor.getOptInfo(tokens.get(0), context))._0.isPresent());
+        Assertions.assertTrue(await(AuthCacheProcessor.getOptInfo(tokens.get(2), context))._0.isPresent());
+        Assertions.assertFalse(await(AuthCacheProcessor.getOptInfo(tokens.get(3), context))._0.isPresent());
+        Assertions.assertEquals(3,
+                await(FunCacheClient.choose("").hgetall(DewAuthConstant.CACHE_TOKEN_ID_REL_FLAG + "revision"))._0.size());
+        AuthCacheProcessor.setRevisionHistoryLimit(0, Map.of());
+        testContext.completeNow();
+    }
+
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import idealworld.dew.framework.DewAuthConfig;
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.DewConfig;
+import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
+import idealworld.dew.framework.fun.auth.LocalResourceCache;
+import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
+import idealworld.dew.framework.fun.auth.dto.AuthSubjectOperatorKind;
+import idealworld.dew.framework.fun.auth.exchange.ExchangeHelper;
+import idealworld.dew.framework.fun.cache.FunCacheClient;
+import idealworld.dew.framework.fun.eventbus.FunEventBus;
+import idealworld.dew.framework.fun.test.DewTest;
+import idealworld.dew.framework.util.URIHelper;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于变更日志的数据订阅测试.
+ * <p>
+ * 以事件总线处理函数模拟IAM的资源及变更日志接口，丢弃、乱序发布变更或裁剪变更日志后，本地缓存应与IAM一致。
+ *
+ * @author gudaoxuri
+ */
+public class ExchangeSubscriptionTest extends DewTest {
+
+    private static final String MODULE_NAME = "exchangetest";
+    private static final String IAM_MODULE_NAME = "iamexchangetest";
+    private static final String CATEGORY = "resource.menu";
+    private static final String RESOURCE_URI_PREFIX = "menu://1.menu.exchangetest/";
+    private static final List<String> RESOURCE_NAMES = List.of("init", "a", "b", "c", "d", "e");
+
+    // 模拟的IAM资源：资源URI -> 缓存时间
+    private static final Map<String, Integer> IAM_RESOURCES = new ConcurrentHashMap<>();
+    private static final List<JsonObject> IAM_CHANGE_LOG = new CopyOnWriteArrayList<>();
+    private static final AtomicLong IAM_SEQ = new AtomicLong();
+
+    static {
+        enableRedis();
+    }
+
+    @BeforeAll
+    public static void before(Vertx vertx, VertxTestContext testContext) {
+        await(FunEventBus.init(MODULE_NAME, vertx, DewConfig.FunConfig.EventBusConfig.builder().build()));
+        await(FunCacheClient.init(MODULE_NAME, vertx, DewConfig.FunConfig.CacheConfig.builder()
+                .uri("redis://localhost:" + redisConfig.getFirstMappedPort())
+                .build()));
+        ExchangeHelper.init(DewAuthConfig.IAMConfig.builder()
+                .moduleName(IAM_MODULE_NAME)
+                .appId(1L)
+                .tenantId(1L)
+                .syncIntervalSec(0)
+                .build());
+        FunEventBus.choose(MODULE_NAME).consumer(IAM_MODULE_NAME, (FunEventBus.ConsumerFun<String>) (actionKind, uri, header, body) -> {
+            var params = URIHelper.getSingleValueQuery(uri.getQuery());
+            if (uri.getPath().endsWith("/changelog")) {
+                return Future.succeededFuture(changeLog(Long.parseLong(params.get("since"))).toString());
+            }
+            var resources = new JsonArray();
+            IAM_RESOURCES.forEach((resourceUri, cacheExpireSec) -> resources.add(resource(resourceUri, cacheExpireSec)));
+            return Future.succeededFuture(resources.toString());
+        });
+        iamChange(OptActionKind.CREATE, "init", 1, false);
+        await(ExchangeHelper.loadAndWatchResources(MODULE_NAME, "menu"));
+        assertMatchesIAM();
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testMissingAndReorderedChanges(Vertx vertx, VertxTestContext testContext) {
+        // 丢失的变更在收到下一个变更时按序号补齐
+        iamChange(OptActionKind.CREATE, "a", 10, false);
+        iamChange(OptActionKind.CREATE, "b", 20, true);
+        assertMatchesIAM();
+
+        // 乱序到达的变更
+        var createChange = iamChange(OptActionKind.CREATE, "c", 30, false);
+        var modifyChange = iamChange(OptActionKind.MODIFY, "c", 31, false);
+        publish(modifyChange);
+        publish(createChange);
+        assertMatchesIAM();
+
+        // 补齐的资源变更同时删除本地的鉴权策略缓存
+        var policyKey = LocalPolicyCache.policyKey(URIHelper.formatUri(URIHelper.newURI(RESOURCE_URI_PREFIX + "a")), "fetch");
+        var cacheClient = FunCacheClient.choose(MODULE_NAME);
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + policyKey,
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ACCOUNT, "1"), "1"));
+        Assertions.assertEquals(1, subjectIds(policyKey).size());
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + policyKey,
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ACCOUNT, "2"), "1"));
+        iamChange(OptActionKind.MODIFY, "a", 11, false);
+        iamChange(OptActionKind.DELETE, "b", 20, true);
+        assertMatchesIAM();
+        Assertions.assertEquals(2, subjectIds(policyKey).size());
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testTrimmedChangeLog(Vertx vertx, VertxTestContext testContext) {
+        iamChange(OptActionKind.CREATE, "d", 40, false);
+        iamChange(OptActionKind.DELETE, "init", 1, false);
+        // 缺失的变更已从日志中移除时全量重新加载
+        IAM_CHANGE_LOG.clear();
+        iamChange(OptActionKind.CREATE, "e", 50, true);
+        assertMatchesIAM();
+        // 重新加载后继续按序号应用变更
+        iamChange(OptActionKind.MODIFY, "d", 41, true);
+        assertMatchesIAM();
+        testContext.completeNow();
+    }
+
+    private static JsonObject iamChange(OptActionKind actionKind, String name, Integer cacheExpireSec, boolean publish) {
+        var resourceUri = RESOURCE_URI_PREFIX + name;
+        if (actionKind == OptActionKind.DELETE) {
+            IAM_RESOURCES.remove(resourceUri);
+        } else {
+            IAM_RESOURCES.put(resourceUri, cacheExpireSec);
+        }
+        var change = new JsonObject()
+                .put("seq", IAM_SEQ.incrementAndGet())
+                .put("actionKind", actionKind.toString())
+                .put("body", resource(resourceUri, cacheExpireSec));
+        IAM_CHANGE_LOG.add(change);
+        if (publish) {
+            publish(change);
+        }
+        return change;
+    }
+
+    private static void publish(JsonObject change) {
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, CATEGORY),
+                OptActionKind.parse(change.getString("actionKind")),
+                "eb://iam/" + CATEGORY,
+                change.getJsonObject("body").toBuffer(),
+                Map.of(DewAuthConstant.REQUEST_EXCHANGE_SEQ_FLAG, change.getLong("seq").toString()));
+    }
+
+    private static JsonObject changeLog(long sinceSeq) {
+        var changes = new JsonArray();
+        IAM_CHANGE_LOG.stream()
+                .filter(change -> change.getLong("seq") > sinceSeq)
+                .forEach(changes::add);
+        return new JsonObject()
+                .put("seq", IAM_SEQ.get())
+                .put("firstSeq", IAM_CHANGE_LOG.isEmpty() ? IAM_SEQ.get() + 1 : IAM_CHANGE_LOG.get(0).getLong("seq"))
+                .put("changes", changes);
+    }
+
+    private static JsonObject resource(String resourceUri, Integer cacheExpireSec) {
+        return new JsonObject()
+                .put("uri", resourceUri)
+                .put("actionKind", "fetch")
+                .put("cacheExpireSec", cacheExpireSec);
+    }
+
+    private static Set<String> subjectIds(String policyKey) {
+        return await(LocalPolicyCache.getPolicies(MODULE_NAME, List.of(policyKey), null))._0.get(policyKey)
+                .getSubjectIds(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ACCOUNT);
+    }
+
+    @SneakyThrows
+    private static void assertMatchesIAM() {
+        // 变更异步送达，等待本地缓存与IAM一致
+        var deadline = System.currentTimeMillis() + 5000;
+        while (!matchesIAM() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (var name : RESOURCE_NAMES) {
+            var resourceUri = RESOURCE_URI_PREFIX + name;
+            Assertions.assertEquals(IAM_RESOURCES.getOrDefault(resourceUri, 0),
+                    LocalResourceCache.getCacheExpireSec(URIHelper.newURI(resourceUri), "fetch"), resourceUri);
+        }
+    }
+
+    private static boolean matchesIAM() {
+        return RESOURCE_NAMES.stream()
+                .map(name -> RESOURCE_URI_PREFIX + name)
+                .allMatch(resourceUri -> IAM_RESOURCES.getOrDefault(resourceUri, 0)
+                        == LocalResourceCache.getCacheExpireSec(URIHelper.newURI(resourceUri), "fetch"));
+    }
+
+}
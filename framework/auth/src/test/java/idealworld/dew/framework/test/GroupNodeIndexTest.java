@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import idealworld.dew.framework.fun.auth.GroupNodeIndex;
+import idealworld.dew.framework.fun.test.DewTest;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * 群组节点层级索引测试.
+ *
+ * @author gudaoxuri
+ */
+public class GroupNodeIndexTest extends DewTest {
+
+    @Test
+    public void testIndex(Vertx vertx, VertxTestContext testContext) {
+        var groupNodeIndex = GroupNodeIndex.build(List.of("g1#1000010000", "g2#10001"), 5);
+        // 自身
+        Assertions.assertTrue(groupNodeIndex.containsSelfOrAncestor("g1#1000010000"));
+        Assertions.assertTrue(groupNodeIndex.containsSelfOrDescendant("g1#1000010000"));
+        // 下级节点
+        Assertions.assertTrue(groupNodeIndex.containsSelfOrAncestor("g1#100001000010000"));
+        Assertions.assertFalse(groupNodeIndex.containsSelfOrDescendant("g1#100001000010000"));
+        // 上级节点
+        Assertions.assertFalse(groupNodeIndex.containsSelfOrAncestor("g1#10000"));
+        Assertions.assertTrue(groupNodeIndex.containsSelfOrDescendant("g1#10000"));
+        // 无关节点
+        Assertions.assertFalse(groupNodeIndex.containsSelfOrAncestor("g1#1000010001"));
+        Assertions.assertFalse(groupNodeIndex.containsSelfOrDescendant("g1#10001"));
+        Assertions.assertTrue(groupNodeIndex.containsSelfOrDescendant("g2#10001"));
+        testContext.completeNow();
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import idealworld.dew.framework.dto.IdentOptCacheInfo;
+import idealworld.dew.framework.dto.IdentOptInfo;
+import idealworld.dew.framework.fun.auth.TokenSessionSerializer;
+import idealworld.dew.framework.fun.test.DewTest;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+/**
+ * Token会话序列化测试.
+ *
+ * @author gudaoxuri
+ */
+public class TokenSessionSerializerTest extends DewTest {
+
+    @Test
+    public void testSerialize(Vertx vertx, VertxTestContext testContext) {
+        var optInfo = IdentOptCacheInfo.builder()
+                .token("t01")
+                .accountCode("a01")
+                .accountName("测试账号")
+                .appCode("app01")
+                .tokenKind("default")
+                .accountId(1L)
+                .appId(-1L)
+                .tenantId(null)
+                .roleInfo(Set.of(IdentOptInfo.RoleInfo.builder().id(10L).defCode("admin").name("管理员").build()))
+                .groupInfo(Set.of(
+                        IdentOptInfo.GroupInfo.builder()
+                                .groupCode("g1").groupNodeCode("10000").groupNodeBusCode("b1").groupName("部门").groupNodeName("总部").build(),
+                        IdentOptInfo.GroupInfo.builder()
+                                .groupCode("g1").groupNodeCode("1000010000").groupName("部门").groupNodeName("研发部").build()))
+                .build();
+        var binary = TokenSessionSerializer.encode(optInfo);
+        var json = TokenSessionSerializer.JSON.encode(optInfo);
+        Assertions.assertTrue(binary.startsWith("B"));
+        Assertions.assertTrue(binary.length() < json.length());
+        for (var session : new String[]{binary, json}) {
+            var decoded = TokenSessionSerializer.decode(session);
+            Assertions.assertEquals("t01", decoded.getToken());
+            Assertions.assertEquals("a01", decoded.getAccountCode());
+            Assertions.assertEquals("测试账号", decoded.getAccountName());
+            Assertions.assertEquals("app01", decoded.getAppCode());
+            Assertions.assertEquals("default", decoded.getTokenKind());
+            Assertions.assertEquals(1L, decoded.getAccountId());
+            Assertions.assertEquals(-1L, decoded.getAppId());
+            Assertions.assertNull(decoded.getTenantId());
+            Assertions.assertEquals(optInfo.getRoleInfo(), decoded.getRoleInfo());
+            Assertions.assertEquals(optInfo.getGroupInfo(), decoded.getGroupInfo());
+        }
+        // 兼容已有的JSON格式会话
+        var legacy = TokenSessionSerializer.decode("{\"accountCode\":\"testCode\"}");
+        Assertions.assertEquals("testCode", legacy.getAccountCode());
+        testContext.completeNow();
+    }
+
+}
@@ -132,6 +132,21 @@ public abstract class DewConfig {
         public static class EventBusConfig {
 
             private Long timeoutMs;
+            // 目标模块部署在本JVM内时是否直接调用，不经过事件总线，开启后本JVM内的调用不经过事件总线拦截器
+            @Builder.Default
+            private Boolean localFirst = false;
+            // 发往每个目标模块的最大在途请求数，小于等于0时不限制
+            @Builder.Default
+            private Integer maxInFlight = 512;
+            // 超出最大在途请求数后的最大排队请求数，队列满时直接返回过载错误
+            @Builder.Default
+            private Integer maxWaitQueueSize = 1024;
+            // 是否合并相同的并发 FETCH/EXISTS 请求
+            @Builder.Default
+            private Boolean coalesceFetch = false;
+            // 流式请求整个传输过程的超时时间，也是发送方等待每个响应块确认的超时时间，每个响应块的等待超时由请求指定
+            @Builder.Default
+            private Long streamTimeoutMs = 3600000L;
 
         }
 
@@ -32,6 +32,7 @@ public class DewConstant {
     public static final String REQUEST_RESOURCE_ACTION_FLAG = "Dew-Resource-Action";
     public static final String REQUEST_WITHOUT_RESP_FLAG = "Dew-Without-Resp";
     public static final String REQUEST_IDENT_OPT_FLAG = "Dew-Ident-Opt";
+    public static final String REQUEST_STREAM_ADDRESS_FLAG = "Dew-Stream-Address";
 
     public static final String REQUEST_INNER_PATH_PREFIX = "/eb/inner/";
 
@@ -146,6 +146,9 @@ public abstract class DewModule<C extends Object> extends AbstractVerticle {
         if (enabledSQLFun()) {
             funPromises.add(FunSQLClient.destroy());
         }
+        if (enabledEventbus()) {
+            FunEventBus.removeLocalConsumer(getModuleName(), context);
+        }
         funPromises.addAll(unLoadCustomFuns(funConfig));
         return funPromises;
     }
@@ -33,6 +33,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -50,11 +51,13 @@ public class FunCacheClient {
     private static final String CACHE_KEY_PREFIX = "redis:";
     private static final String CACHE_KEY_ELECTION_PREFIX = "dew:cluster:election:";
     private static final Map<String, FunCacheClient> REDIS_CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<String, String> SCRIPT_SHAS = new ConcurrentHashMap<>();
     private final String instanceId = $.field.createUUID();
     protected AtomicBoolean leader = new AtomicBoolean(false);
     private String code;
     private Integer electionPeriodSec;
     private Vertx innerVertx;
+    private Redis redis;
     private RedisAPI redisAPI;
     private RedisConnection subRedisConn;
     private RedisConnection pubRedisConn;
@@ -75,6 +78,7 @@ public class FunCacheClient {
                         .setPassword(config.getPassword())
                         .setMaxPoolSize(config.getMaxPoolSize())
                         .setMaxPoolWaiting(config.getMaxPoolWaiting()));
+        redisClient.redis = redis;
         redisClient.redisAPI = RedisAPI.api(redis);
         REDIS_CLIENTS.put(code, redisClient);
         redis.connect()
@@ -310,20 +314,7 @@ public class FunCacheClient {
     public Future<Map<String, String>> hgetall(String key) {
         return Future.future(promise ->
                 redisAPI.hgetall(key)
-                        .onSuccess(response -> {
-                            var result = new HashMap<String, String>();
-                            var it = response.stream().iterator();
-                            while (it.hasNext()) {
-                                var item = it.next();
-                                if (item instanceof MultiType) {
-                                    result.put(item.get(0).toString(), ((BulkType) item.get(1)).toString());
-                                } else {
-                                    // TODO 在某些时候会变成单值
-                                    result.put(item.toString(), it.next().toString());
-                                }
-                            }
-                            promise.complete(result);
-                        })
+                        .onSuccess(response -> promise.complete(toMap(response)))
                         .onFailure(e -> {
                             log.error("[Redis][{}]Hgetall [{}] error: {}", code, key, e.getMessage(), e);
                             promise.fail(e.getCause());
@@ -331,6 +322,45 @@ public class FunCacheClient {
         );
     }
 
+    /**
+     * 批量获取Hash，所有命令在一次请求中发送.
+     *
+     * @param keys Key列表
+     * @return 与Key顺序一致的Hash列表，Key不存在时为空Map
+     */
+    public Future<List<Map<String, String>>> hgetall(List<String> keys) {
+        return Future.future(promise ->
+                redis.batch(keys.stream()
+                        .map(key -> Request.cmd(Command.HGETALL).arg(key))
+                        .collect(Collectors.toList()))
+                        .onSuccess(responses -> promise.complete(responses.stream()
+                                .map(this::toMap)
+                                .collect(Collectors.toList())))
+                        .onFailure(e -> {
+                            log.error("[Redis][{}]Hgetall [{}] error: {}", code, String.join(",", keys), e.getMessage(), e);
+                            promise.fail(e.getCause());
+                        })
+        );
+    }
+
+    private Map<String, String> toMap(Response response) {
+        var result = new HashMap<String, String>();
+        if (response == null) {
+            return result;
+        }
+        var it = response.stream().iterator();
+        while (it.hasNext()) {
+            var item = it.next();
+            if (item instanceof MultiType) {
+                result.put(item.get(0).toString(), ((BulkType) item.get(1)).toString());
+            } else {
+                // TODO 在某些时候会变成单值
+                result.put(item.toString(), it.next().toString());
+            }
+        }
+        return result;
+    }
+
     public Future<Boolean> hexists(String key, String fieldKey) {
         return Future.future(promise ->
                 redisAPI.hexists(key, fieldKey)
@@ -370,9 +400,52 @@ public class FunCacheClient {
 
     // ---------------------------- Others ----------------------------
 
+    /**
+     * 执行Lua脚本.
+     * <p>
+     * 优先使用EVALSHA，服务端未缓存该脚本时回退到EVAL。
+     *
+     * @param script 脚本
+     * @param keys   Key列表
+     * @param args   参数列表
+     * @return 脚本返回值，nil时为null
+     */
+    public Future<String> eval(String script, List<String> keys, List<String> args) {
+        var sha = SCRIPT_SHAS.computeIfAbsent(script, s -> $.security.digest.digest(s, "SHA1"));
+        return Future.future(promise ->
+                redisAPI.evalsha(scriptArgs(sha, keys, args))
+                        .recover(e -> e.getMessage() != null && e.getMessage().startsWith("NOSCRIPT")
+                                ? redisAPI.eval(scriptArgs(script, keys, args))
+                                : Future.failedFuture(e))
+                        .onSuccess(response -> promise.complete(
+                                response != null ? response.toString() : null))
+                        .onFailure(e -> {
+                            log.error("[Redis][{}]Eval [{}] error: {}", code, String.join(",", keys), e.getMessage(), e);
+                            promise.fail(e.getCause());
+                        })
+        );
+    }
+
+    private List<String> scriptArgs(String scriptOrSha, List<String> keys, List<String> args) {
+        var scriptArgs = new ArrayList<String>();
+        scriptArgs.add(scriptOrSha);
+        scriptArgs.add(String.valueOf(keys.size()));
+        scriptArgs.addAll(keys);
+        scriptArgs.addAll(args);
+        return scriptArgs;
+    }
 
-    public void scan(String key, Consumer<String> fun) {
-        doScan(0, key, fun);
+    /**
+     * 遍历Key.
+     *
+     * @param key 前缀
+     * @param fun 每个Key的处理函数
+     * @return 遍历完成
+     */
+    public Future<Void> scan(String key, Consumer<String> fun) {
+        Promise<Void> promise = Promise.promise();
+        doScan(0, key, fun, promise);
+        return promise.future();
     }
 
     public Future<Void> publish(String key, String message) {
@@ -403,7 +476,7 @@ public class FunCacheClient {
         );
     }
 
-    private void doScan(Integer cursor, String key, Consumer<String> fun) {
+    private void doScan(Integer cursor, String key, Consumer<String> fun, Promise<Void> promise) {
         redisAPI.scan(new ArrayList<>() {
             {
                 add(cursor + "");
@@ -414,9 +487,14 @@ public class FunCacheClient {
             response.get(1).forEach(returnKey -> fun.accept(returnKey.toString(StandardCharsets.UTF_8)));
             var newCursor = response.get(0).toInteger();
             if (newCursor != 0) {
-                doScan(newCursor, key, fun);
+                doScan(newCursor, key, fun, promise);
+            } else {
+                promise.complete();
             }
-        }).onFailure(e -> log.error("[Redis][{}]Scan [{}] error: {}", code, key, e.getMessage(), e));
+        }).onFailure(e -> {
+            log.error("[Redis][{}]Scan [{}] error: {}", code, key, e.getMessage(), e);
+            promise.fail(e);
+        });
     }
 
     public Boolean isLeader() {
@@ -21,7 +21,7 @@ import idealworld.dew.framework.DewConstant;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
 import idealworld.dew.framework.exception.NotFoundException;
-import idealworld.dew.framework.util.AntPathMatcher;
+import idealworld.dew.framework.util.PathTrie;
 import idealworld.dew.framework.util.URIHelper;
 import io.vertx.core.Future;
 import io.vertx.core.buffer.Buffer;
@@ -42,89 +42,86 @@ import java.util.concurrent.ConcurrentHashMap;
 public class EventBusDispatcher {
 
     private static final Map<String, Map<OptActionKind, Map<String, ProcessFun>>> PROCESSORS = new ConcurrentHashMap<>();
-    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+    // 按模块及操作类型预编译的路由树，用于非精确匹配
+    private static final Map<String, Map<OptActionKind, PathTrie<ProcessFun>>> ROUTERS = new ConcurrentHashMap<>();
 
     public static synchronized void initModule(String moduleName) {
         PROCESSORS.put(moduleName, new HashMap<>());
-        PROCESSORS.get(moduleName).put(OptActionKind.CREATE, new ConcurrentHashMap<>());
-        PROCESSORS.get(moduleName).put(OptActionKind.MODIFY, new ConcurrentHashMap<>());
-        PROCESSORS.get(moduleName).put(OptActionKind.FETCH, new ConcurrentHashMap<>());
-        PROCESSORS.get(moduleName).put(OptActionKind.EXISTS, new ConcurrentHashMap<>());
-        PROCESSORS.get(moduleName).put(OptActionKind.PATCH, new ConcurrentHashMap<>());
-        PROCESSORS.get(moduleName).put(OptActionKind.DELETE, new ConcurrentHashMap<>());
+        ROUTERS.put(moduleName, new HashMap<>());
+        for (var actionKind : OptActionKind.values()) {
+            PROCESSORS.get(moduleName).put(actionKind, new ConcurrentHashMap<>());
+            ROUTERS.get(moduleName).put(actionKind, new PathTrie<>());
+        }
     }
 
     public static void addProcessor(String moduleName, String pathPattern, ProcessFun processFun) {
-        PROCESSORS.get(moduleName).get(OptActionKind.CREATE).put(pathPattern, processFun);
-        PROCESSORS.get(moduleName).get(OptActionKind.MODIFY).put(pathPattern, processFun);
-        PROCESSORS.get(moduleName).get(OptActionKind.FETCH).put(pathPattern, processFun);
-        PROCESSORS.get(moduleName).get(OptActionKind.EXISTS).put(pathPattern, processFun);
-        PROCESSORS.get(moduleName).get(OptActionKind.PATCH).put(pathPattern, processFun);
-        PROCESSORS.get(moduleName).get(OptActionKind.DELETE).put(pathPattern, processFun);
+        addProcessor(moduleName, OptActionKind.CREATE, pathPattern, processFun);
+        addProcessor(moduleName, OptActionKind.MODIFY, pathPattern, processFun);
+        addProcessor(moduleName, OptActionKind.FETCH, pathPattern, processFun);
+        addProcessor(moduleName, OptActionKind.EXISTS, pathPattern, processFun);
+        addProcessor(moduleName, OptActionKind.PATCH, pathPattern, processFun);
+        addProcessor(moduleName, OptActionKind.DELETE, pathPattern, processFun);
     }
 
     public static void addProcessor(String moduleName, OptActionKind actionKind, String pathPattern, ProcessFun processFun) {
         PROCESSORS.get(moduleName).get(actionKind).put(pathPattern, processFun);
+        ROUTERS.get(moduleName).get(actionKind).put(pathPattern, processFun);
     }
 
     public static <E> Future<E> chooseProcess(String moduleName, Object config, Map<String, Boolean> funStatus, OptActionKind actionKind,
                                               String pathRequest, String query, Map<String, String> header, Buffer body) {
+        return chooseProcess(moduleName, config, funStatus, actionKind, pathRequest, query, header, null, body);
+    }
+
+    public static <E> Future<E> chooseProcess(String moduleName, Object config, Map<String, Boolean> funStatus, OptActionKind actionKind,
+                                              String pathRequest, String query, Map<String, String> header,
+                                              IdentOptExchangeInfo identOptInfo, Buffer body) {
         if (PROCESSORS.get(moduleName).get(actionKind).containsKey(pathRequest)) {
-            return PROCESSORS.get(moduleName).get(actionKind).get(pathRequest).process(EventBusContext.builder()
-                    .req(EventBusContext.Request.builder()
-                            .header(header)
-                            .params(URIHelper.getSingleValueQuery(query, false))
-                            .body(body)
-                            .identOptInfo(
-                                    header.containsKey(DewConstant.REQUEST_IDENT_OPT_FLAG)
-                                            ? new JsonObject($.security.decodeBase64ToString(header.get(DewConstant.REQUEST_IDENT_OPT_FLAG),
-                                            StandardCharsets.UTF_8)).mapTo(IdentOptExchangeInfo.class)
-                                            : new IdentOptExchangeInfo())
-                            .build())
-                    .context(ProcessContext.builder()
-                            .conf(config)
-                            .funStatus(funStatus)
-                            .moduleName(moduleName)
-                            .build())
-                    .build()
-                    .init());
+            return process(PROCESSORS.get(moduleName).get(actionKind).get(pathRequest), moduleName, config, funStatus,
+                    URIHelper.getSingleValueQuery(query, false), header, identOptInfo, body);
         }
-        var matchedPathTemplate = PROCESSORS.get(moduleName).get(actionKind).keySet()
-                .stream()
-                .filter(pathPattern -> PATH_MATCHER.match(pathPattern.toLowerCase(), pathRequest.toLowerCase()))
-                .findAny();
-        if (matchedPathTemplate.isEmpty()) {
+        var matched = ROUTERS.get(moduleName).get(actionKind).match(pathRequest);
+        if (matched == null) {
             log.warn("[EventBus]Can't found process by [{}] {}", actionKind.toString(), pathRequest);
             throw new NotFoundException("找不到对应的请求[" + actionKind.toString() + ":" + pathRequest + "]处理器");
-        } else {
-            var pathPattern = matchedPathTemplate.get();
-            var params = PATH_MATCHER.extractUriTemplateVariables(pathPattern, pathRequest);
-            params.putAll(URIHelper.getSingleValueQuery(query, false));
-            return PROCESSORS.get(moduleName).get(actionKind).get(pathPattern).process(EventBusContext.builder()
-                    .req(EventBusContext.Request.builder()
-                            .header(header)
-                            .params(params)
-                            .body(body)
-                            .identOptInfo(
-                                    header.containsKey(DewConstant.REQUEST_IDENT_OPT_FLAG)
-                                            ? new JsonObject($.security.decodeBase64ToString(header.get(DewConstant.REQUEST_IDENT_OPT_FLAG),
-                                            StandardCharsets.UTF_8)).mapTo(IdentOptExchangeInfo.class)
-                                            : new IdentOptExchangeInfo())
-                            .build())
-                    .context(ProcessContext.builder()
-                            .conf(config)
-                            .funStatus(funStatus)
-                            .moduleName(moduleName)
-                            .build())
-                    .build()
-                    .init());
         }
+        var params = new HashMap<>(matched.getVariables());
+        params.putAll(URIHelper.getSingleValueQuery(query, false));
+        return process(matched.getValue(), moduleName, config, funStatus, params, header, identOptInfo, body);
+    }
+
+    private static <E> Future<E> process(ProcessFun<E> processFun, String moduleName, Object config, Map<String, Boolean> funStatus,
+                                         Map<String, String> params, Map<String, String> header, IdentOptExchangeInfo identOptInfo,
+                                         Buffer body) {
+        if (identOptInfo == null) {
+            // 兼容以请求头传递身份信息的调用方
+            identOptInfo = header.containsKey(DewConstant.REQUEST_IDENT_OPT_FLAG)
+                    ? new JsonObject($.security.decodeBase64ToString(header.get(DewConstant.REQUEST_IDENT_OPT_FLAG), StandardCharsets.UTF_8))
+                    .mapTo(IdentOptExchangeInfo.class)
+                    : new IdentOptExchangeInfo();
+        }
+        return processFun.process(EventBusContext.builder()
+                .req(EventBusContext.Request.builder()
+                        .header(header)
+                        .params(params)
+                        .body(body)
+                        .identOptInfo(identOptInfo)
+                        .build())
+                .context(ProcessContext.builder()
+                        .conf(config)
+                        .funStatus(funStatus)
+                        .moduleName(moduleName)
+                        .build())
+                .build()
+                .init());
     }
 
     public static Future<Void> watch(String moduleName, Object config, Map<String, Boolean> funStatus) {
-        FunEventBus.choose(moduleName).consumer(moduleName, (actionKind, uri, header, body) ->
-                chooseProcess(moduleName, config, funStatus, actionKind, uri.getPath(), uri.getRawQuery() != null ? uri.getQuery() : null, header,
-                        body));
+        FunEventBus.choose(moduleName).localConsumer(moduleName, (FunEventBus.EnvelopeConsumerFun<Object>) envelope -> {
+            var uri = URIHelper.newURI(envelope.getUri());
+            return chooseProcess(moduleName, config, funStatus, envelope.getActionKind(), uri.getPath(),
+                    uri.getRawQuery() != null ? uri.getQuery() : null, envelope.getHeader(), envelope.getIdentOptInfo(), envelope.getBody());
+        });
         return Future.succeededFuture();
     }
 
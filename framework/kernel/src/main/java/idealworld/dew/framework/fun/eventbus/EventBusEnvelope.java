@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.eventbus;
+
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.OptActionKind;
+import io.vertx.core.buffer.Buffer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 事件总线请求信封.
+ * <p>
+ * 将操作类型、资源URI、身份信息、请求头及请求体打包为一个对象传输，
+ * 本地投递时直接传递对象引用，集群投递时由 {@link EventBusEnvelopeCodec} 编码为紧凑的二进制格式。
+ * <p>
+ * 发送后信封归接收方所有，发送方不应再修改其内容。
+ *
+ * @author gudaoxuri
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventBusEnvelope {
+
+    private OptActionKind actionKind;
+    private String uri;
+    // 为空时表示未携带身份信息
+    private IdentOptExchangeInfo identOptInfo;
+    @Builder.Default
+    private Map<String, String> header = new HashMap<>();
+    private Buffer body;
+
+}
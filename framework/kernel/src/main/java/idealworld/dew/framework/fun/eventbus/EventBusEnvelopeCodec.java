@@ -0,0 +1,264 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.eventbus;
+
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.IdentOptInfo;
+import idealworld.dew.framework.dto.OptActionKind;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * 事件总线请求信封编解码器.
+ * <p>
+ * 本地投递直接返回原对象；集群投递时按如下格式编码：
+ * 版本号、操作类型、URI、身份信息、请求头、请求体，字符串以 长度+UTF-8字节 表示，长度为-1时表示null。
+ *
+ * @author gudaoxuri
+ */
+public class EventBusEnvelopeCodec implements MessageCodec<EventBusEnvelope, EventBusEnvelope> {
+
+    public static final String NAME = "dew-eb-envelope";
+
+    private static final byte VERSION = 1;
+
+    @Override
+    public void encodeToWire(Buffer buffer, EventBusEnvelope envelope) {
+        buffer.appendByte(VERSION);
+        writeString(buffer, envelope.getActionKind() != null ? envelope.getActionKind().toString() : null);
+        writeString(buffer, envelope.getUri());
+        writeIdentOptInfo(buffer, envelope.getIdentOptInfo());
+        if (envelope.getHeader() == null) {
+            buffer.appendInt(-1);
+        } else {
+            buffer.appendInt(envelope.getHeader().size());
+            envelope.getHeader().forEach((k, v) -> {
+                writeString(buffer, k);
+                writeString(buffer, v);
+            });
+        }
+        if (envelope.getBody() == null) {
+            buffer.appendInt(-1);
+        } else {
+            buffer.appendInt(envelope.getBody().length());
+            buffer.appendBuffer(envelope.getBody());
+        }
+    }
+
+    @Override
+    public EventBusEnvelope decodeFromWire(int pos, Buffer buffer) {
+        var reader = new Reader(buffer, pos);
+        var version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported event bus envelope version [" + version + "]");
+        }
+        var envelope = new EventBusEnvelope();
+        var actionKind = reader.readString();
+        envelope.setActionKind(actionKind != null ? OptActionKind.parse(actionKind) : null);
+        envelope.setUri(reader.readString());
+        envelope.setIdentOptInfo(readIdentOptInfo(reader));
+        var headerSize = reader.readInt();
+        if (headerSize == -1) {
+            envelope.setHeader(null);
+        } else {
+            var header = new HashMap<String, String>(headerSize * 4 / 3 + 1);
+            for (var i = 0; i < headerSize; i++) {
+                header.put(reader.readString(), reader.readString());
+            }
+            envelope.setHeader(header);
+        }
+        var bodyLength = reader.readInt();
+        envelope.setBody(bodyLength == -1 ? null : reader.readBuffer(bodyLength));
+        return envelope;
+    }
+
+    @Override
+    public EventBusEnvelope transform(EventBusEnvelope envelope) {
+        return envelope;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    private static void writeIdentOptInfo(Buffer buffer, IdentOptExchangeInfo identOptInfo) {
+        if (identOptInfo == null) {
+            buffer.appendByte((byte) 0);
+            return;
+        }
+        buffer.appendByte((byte) 1);
+        writeString(buffer, identOptInfo.getToken());
+        writeString(buffer, identOptInfo.getAccountName());
+        writeString(buffer, identOptInfo.getAccountCode());
+        writeString(buffer, identOptInfo.getAppCode());
+        if (identOptInfo.getRoleInfo() == null) {
+            buffer.appendInt(-1);
+        } else {
+            buffer.appendInt(identOptInfo.getRoleInfo().size());
+            for (var roleInfo : identOptInfo.getRoleInfo()) {
+                writeLong(buffer, roleInfo.getId());
+                writeString(buffer, roleInfo.getDefCode());
+                writeString(buffer, roleInfo.getName());
+            }
+        }
+        if (identOptInfo.getGroupInfo() == null) {
+            buffer.appendInt(-1);
+        } else {
+            buffer.appendInt(identOptInfo.getGroupInfo().size());
+            for (var groupInfo : identOptInfo.getGroupInfo()) {
+                writeString(buffer, groupInfo.getGroupCode());
+                writeString(buffer, groupInfo.getGroupNodeCode());
+                writeString(buffer, groupInfo.getGroupNodeBusCode());
+                writeString(buffer, groupInfo.getGroupName());
+                writeString(buffer, groupInfo.getGroupNodeName());
+            }
+        }
+        writeString(buffer, identOptInfo.getTokenKind());
+        writeLong(buffer, identOptInfo.getAccountId());
+        writeLong(buffer, identOptInfo.getAppId());
+        writeLong(buffer, identOptInfo.getTenantId());
+        writeString(buffer, identOptInfo.getUnauthorizedAppCode());
+        writeLong(buffer, identOptInfo.getUnauthorizedAppId());
+        writeLong(buffer, identOptInfo.getUnauthorizedTenantId());
+    }
+
+    private static IdentOptExchangeInfo readIdentOptInfo(Reader reader) {
+        if (reader.readByte() == 0) {
+            return null;
+        }
+        var identOptInfo = new IdentOptExchangeInfo();
+        identOptInfo.setToken(reader.readString());
+        identOptInfo.setAccountName(reader.readString());
+        identOptInfo.setAccountCode(reader.readString());
+        identOptInfo.setAppCode(reader.readString());
+        var roleSize = reader.readInt();
+        if (roleSize == -1) {
+            identOptInfo.setRoleInfo(null);
+        } else {
+            var roleInfo = new HashSet<IdentOptInfo.RoleInfo>();
+            for (var i = 0; i < roleSize; i++) {
+                roleInfo.add(IdentOptInfo.RoleInfo.builder()
+                        .id(reader.readLong())
+                        .defCode(reader.readString())
+                        .name(reader.readString())
+                        .build());
+            }
+            identOptInfo.setRoleInfo(roleInfo);
+        }
+        var groupSize = reader.readInt();
+        if (groupSize == -1) {
+            identOptInfo.setGroupInfo(null);
+        } else {
+            var groupInfo = new HashSet<IdentOptInfo.GroupInfo>();
+            for (var i = 0; i < groupSize; i++) {
+                groupInfo.add(IdentOptInfo.GroupInfo.builder()
+                        .groupCode(reader.readString())
+                        .groupNodeCode(reader.readString())
+                        .groupNodeBusCode(reader.readString())
+                        .groupName(reader.readString())
+                        .groupNodeName(reader.readString())
+                        .build());
+            }
+            identOptInfo.setGroupInfo(groupInfo);
+        }
+        identOptInfo.setTokenKind(reader.readString());
+        identOptInfo.setAccountId(reader.readLong());
+        identOptInfo.setAppId(reader.readLong());
+        identOptInfo.setTenantId(reader.readLong());
+        identOptInfo.setUnauthorizedAppCode(reader.readString());
+        identOptInfo.setUnauthorizedAppId(reader.readLong());
+        identOptInfo.setUnauthorizedTenantId(reader.readLong());
+        return identOptInfo;
+    }
+
+    private static void writeString(Buffer buffer, String str) {
+        if (str == null) {
+            buffer.appendInt(-1);
+            return;
+        }
+        var bytes = str.getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(bytes.length);
+        buffer.appendBytes(bytes);
+    }
+
+    private static void writeLong(Buffer buffer, Long value) {
+        if (value == null) {
+            buffer.appendByte((byte) 0);
+            return;
+        }
+        buffer.appendByte((byte) 1);
+        buffer.appendLong(value);
+    }
+
+    private static class Reader {
+
+        private final Buffer buffer;
+        private int pos;
+
+        Reader(Buffer buffer, int pos) {
+            this.buffer = buffer;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buffer.getByte(pos++);
+        }
+
+        int readInt() {
+            var value = buffer.getInt(pos);
+            pos += 4;
+            return value;
+        }
+
+        Long readLong() {
+            if (readByte() == 0) {
+                return null;
+            }
+            var value = buffer.getLong(pos);
+            pos += 8;
+            return value;
+        }
+
+        String readString() {
+            var length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            var str = buffer.getString(pos, pos + length, StandardCharsets.UTF_8.name());
+            pos += length;
+            return str;
+        }
+
+        Buffer readBuffer(int length) {
+            var value = buffer.getBuffer(pos, pos + length);
+            pos += length;
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.eventbus;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.LongConsumer;
+
+/**
+ * 事件总线请求并发限制器.
+ * <p>
+ * 限制发往某个目标模块的在途请求数，超出时进入有界等待队列，队列满时拒绝请求。
+ * 排队的请求在出队时扣除已等待的时间，等待超时的请求由定时器移出队列并失败，无需等待其它请求释放许可。
+ * 排队的请求在其申请时的上下文中执行，而非释放许可的请求的上下文。
+ *
+ * @author gudaoxuri
+ */
+public class EventBusLimiter {
+
+    private final Vertx vertx;
+    private final int maxInFlight;
+    private final int maxWaitQueueSize;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private volatile int inFlight = 0;
+
+    public EventBusLimiter(Vertx vertx, int maxInFlight, int maxWaitQueueSize) {
+        this.vertx = vertx;
+        this.maxInFlight = maxInFlight;
+        this.maxWaitQueueSize = maxWaitQueueSize;
+    }
+
+    /**
+     * 申请执行.
+     *
+     * @param timeoutMs 超时时间
+     * @param task      获得执行许可后调用，参数为剩余的超时时间，执行完成后必须调用 {@link #release()}
+     * @param expired   在队列中等待超时后调用
+     * @return 是否被接受，false表示在途及排队的请求都已满
+     */
+    public boolean acquire(long timeoutMs, LongConsumer task, Runnable expired) {
+        synchronized (this) {
+            if (inFlight >= maxInFlight) {
+                if (waiters.size() >= maxWaitQueueSize) {
+                    return false;
+                }
+                var waiter = new Waiter(Vertx.currentContext(), System.currentTimeMillis() + timeoutMs, task, expired);
+                waiter.timerId = vertx.setTimer(Math.max(1, timeoutMs), id -> expire(waiter));
+                waiters.offer(waiter);
+                return true;
+            }
+            inFlight++;
+        }
+        task.accept(timeoutMs);
+        return true;
+    }
+
+    /**
+     * 释放执行许可，有排队的请求时将许可直接转交给队首的请求.
+     */
+    public void release() {
+        while (true) {
+            Waiter waiter;
+            synchronized (this) {
+                waiter = waiters.poll();
+                if (waiter == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            vertx.cancelTimer(waiter.timerId);
+            if (waiter.context != null && waiter.context != Vertx.currentContext()) {
+                waiter.context.runOnContext(v -> execute(waiter));
+                return;
+            }
+            var remainingMs = waiter.deadline - System.currentTimeMillis();
+            if (remainingMs > 0) {
+                waiter.task.accept(remainingMs);
+                return;
+            }
+            waiter.expired.run();
+        }
+    }
+
+    private void execute(Waiter waiter) {
+        var remainingMs = waiter.deadline - System.currentTimeMillis();
+        if (remainingMs > 0) {
+            waiter.task.accept(remainingMs);
+            return;
+        }
+        waiter.expired.run();
+        // 转交的许可未被使用
+        release();
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiters.remove(waiter)) {
+                // 已出队
+                return;
+            }
+        }
+        waiter.expired.run();
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueSize() {
+        return waiters.size();
+    }
+
+    private static class Waiter {
+
+        private final Context context;
+        private final long deadline;
+        private final LongConsumer task;
+        private final Runnable expired;
+        private long timerId;
+
+        Waiter(Context context, long deadline, LongConsumer task, Runnable expired) {
+            this.context = context;
+            this.deadline = deadline;
+            this.task = task;
+            this.expired = expired;
+        }
+
+    }
+
+}
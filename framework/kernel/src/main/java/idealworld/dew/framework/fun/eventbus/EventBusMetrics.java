@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.fun.eventbus;
+
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+/**
+ * 事件总线指标.
+ * <p>
+ * vertx-micrometer-metrics 为可选依赖，存在且启用了默认指标库时注册在途及排队请求数指标。
+ *
+ * @author gudaoxuri
+ */
+class EventBusMetrics {
+
+    private static final boolean MICROMETER_PRESENT = isPresent("io.vertx.micrometer.backends.BackendRegistries");
+
+    static void register(String code, String moduleName, EventBusLimiter limiter) {
+        if (MICROMETER_PRESENT) {
+            Micrometer.register(code, moduleName, limiter);
+        }
+    }
+
+    private static boolean isPresent(String clazzName) {
+        try {
+            Class.forName(clazzName, false, EventBusMetrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static class Micrometer {
+
+        static void register(String code, String moduleName, EventBusLimiter limiter) {
+            var registry = BackendRegistries.getDefaultNow();
+            if (registry == null) {
+                return;
+            }
+            Gauge.builder("dew.eventbus.inflight", limiter, EventBusLimiter::getInFlight)
+                    .description("In flight requests to the target module")
+                    .tag("source", code)
+                    .tag("target", moduleName)
+                    .register(registry);
+            Gauge.builder("dew.eventbus.queue", limiter, EventBusLimiter::getQueueSize)
+                    .description("Requests waiting for the target module")
+                    .tag("source", code)
+                    .tag("target", moduleName)
+                    .register(registry);
+        }
+
+    }
+
+}
@@ -16,11 +16,14 @@
 
 package idealworld.dew.framework.fun.eventbus;
 
+import com.ecfront.dew.common.$;
 import com.ecfront.dew.common.tuple.Tuple2;
 import idealworld.dew.framework.DewConfig;
 import idealworld.dew.framework.DewConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
 import idealworld.dew.framework.exception.DewException;
+import idealworld.dew.framework.util.JsonHelper;
 import idealworld.dew.framework.util.URIHelper;
 import io.vertx.core.*;
 import io.vertx.core.buffer.Buffer;
@@ -28,16 +31,25 @@ import io.vertx.core.eventbus.DeliveryContext;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * 事件总线操作入口.
@@ -48,13 +60,42 @@ import java.util.concurrent.ConcurrentHashMap;
 public class FunEventBus {
 
     private static final Map<String, FunEventBus> EVENT_BUS = new ConcurrentHashMap<>();
+    // 请求过多时的错误码
+    private static final int OVERLOAD_CODE = 503;
+    // 本JVM内部署的模块处理函数（每个Verticle实例一个），请求这些模块时直接调用，不经过事件总线
+    private static final Map<String, List<LocalConsumer>> LOCAL_CONSUMERS = new ConcurrentHashMap<>();
+    private static final AtomicInteger LOCAL_CONSUMER_INDEX = new AtomicInteger();
+    // 流式请求接收响应块的临时地址前缀
+    private static final String STREAM_ADDRESS_PREFIX = "dew.eb.stream.";
     protected EventBus eventBus;
+    private Vertx vertx;
     private String code;
+    private boolean localFirst;
+    private int maxInFlight;
+    private int maxWaitQueueSize;
+    private final Map<String, EventBusLimiter> limiters = new ConcurrentHashMap<>();
+    private boolean coalesceFetch;
+    private long streamTimeoutMs;
+    private final Map<CoalesceKey, Future<Tuple2<Buffer, Map<String, String>>>> inFlightFetches = new ConcurrentHashMap<>();
 
     public static Future<Void> init(String code, Vertx vertx, DewConfig.FunConfig.EventBusConfig eventBusConfig) {
         var dewEventBus = new FunEventBus();
         dewEventBus.code = code;
+        dewEventBus.vertx = vertx;
         dewEventBus.eventBus = vertx.eventBus();
+        if (eventBusConfig == null) {
+            eventBusConfig = DewConfig.FunConfig.EventBusConfig.builder().build();
+        }
+        dewEventBus.localFirst = eventBusConfig.getLocalFirst() != null && eventBusConfig.getLocalFirst();
+        dewEventBus.maxInFlight = eventBusConfig.getMaxInFlight() != null ? eventBusConfig.getMaxInFlight() : -1;
+        dewEventBus.maxWaitQueueSize = eventBusConfig.getMaxWaitQueueSize() != null ? eventBusConfig.getMaxWaitQueueSize() : 0;
+        dewEventBus.coalesceFetch = eventBusConfig.getCoalesceFetch() != null && eventBusConfig.getCoalesceFetch();
+        dewEventBus.streamTimeoutMs = eventBusConfig.getStreamTimeoutMs() != null ? eventBusConfig.getStreamTimeoutMs() : 3600000L;
+        try {
+            dewEventBus.eventBus.registerDefaultCodec(EventBusEnvelope.class, new EventBusEnvelopeCodec());
+        } catch (IllegalStateException ignore) {
+            // 同一Vertx实例下的多个模块共享事件总线，编解码器只需注册一次
+        }
         dewEventBus.addInboundInterceptors().forEach(interceptor -> dewEventBus.eventBus.addInboundInterceptor(interceptor));
         dewEventBus.addOutboundInterceptors().forEach(interceptor -> dewEventBus.eventBus.addOutboundInterceptor(interceptor));
         EVENT_BUS.put(code, dewEventBus);
@@ -77,6 +118,33 @@ public class FunEventBus {
         EVENT_BUS.remove(code);
     }
 
+    /**
+     * 移除当前Verticle实例注册的本地处理函数.
+     *
+     * @param moduleName 模块名
+     */
+    public static void removeLocalConsumer(String moduleName) {
+        removeLocalConsumer(moduleName, Vertx.currentContext());
+    }
+
+    /**
+     * 移除指定Verticle实例注册的本地处理函数，同一模块的其它实例不受影响.
+     *
+     * @param moduleName 模块名
+     * @param context    注册时所在的上下文
+     */
+    public static void removeLocalConsumer(String moduleName, Context context) {
+        LOCAL_CONSUMERS.computeIfPresent(moduleName, (name, consumers) -> {
+            var remaining = new ArrayList<>(consumers);
+            remaining.removeIf(consumer -> consumer.context == context);
+            return remaining.isEmpty() ? null : List.copyOf(remaining);
+        });
+    }
+
+    public Vertx getVertx() {
+        return vertx;
+    }
+
     public <T> List<Handler<DeliveryContext<T>>> addInboundInterceptors() {
         return new ArrayList<>();
     }
@@ -92,22 +160,232 @@ public class FunEventBus {
 
     public Future<Tuple2<Buffer, Map<String, String>>> request(String moduleName, OptActionKind actionKind, String uri, Buffer body, Map<String,
             String> header, Long timeoutMs) {
+        return request(moduleName, actionKind, uri, body, header, null, timeoutMs);
+    }
+
+    /**
+     * 发送请求.
+     * <p>
+     * 请求以 {@link EventBusEnvelope} 传输，身份信息以对象形式传递，无需Base64及JSON编解码.
+     * 启用 localFirst 且目标模块部署在本JVM内时直接调用其处理函数（不经过事件总线拦截器），否则经过事件总线投递.
+     * 启用合并请求时，相同的并发 FETCH/EXISTS 请求只投递一次并共享响应.
+     *
+     * @param moduleName   目标模块
+     * @param actionKind   操作类型
+     * @param uri          资源URI
+     * @param body         请求体
+     * @param header       请求头，发送后不应再修改
+     * @param identOptInfo 身份信息，可为空
+     * @param timeoutMs    超时时间，为空时使用默认值
+     * @return 响应体及响应头
+     */
+    public Future<Tuple2<Buffer, Map<String, String>>> request(String moduleName, OptActionKind actionKind, String uri, Buffer body, Map<String,
+            String> header, IdentOptExchangeInfo identOptInfo, Long timeoutMs) {
+        var envelope = EventBusEnvelope.builder()
+                .actionKind(actionKind)
+                .uri(uri)
+                .identOptInfo(identOptInfo)
+                .header(header != null ? header : new HashMap<>())
+                .body(body)
+                .build();
+        var timeout = timeoutMs != null ? timeoutMs : DeliveryOptions.DEFAULT_TIMEOUT;
+        if (!coalesceFetch || (actionKind != OptActionKind.FETCH && actionKind != OptActionKind.EXISTS)) {
+            return limitedDispatch(moduleName, envelope, timeout);
+        }
+        // 相同的并发只读请求共享同一个请求结果
+        var key = new CoalesceKey(moduleName, envelope);
         Promise<Tuple2<Buffer, Map<String, String>>> promise = Promise.promise();
-        var deliveryOptions = new DeliveryOptions()
-                .addHeader(DewConstant.REQUEST_RESOURCE_ACTION_FLAG, actionKind.toString())
-                .addHeader(DewConstant.REQUEST_RESOURCE_URI_FLAG, uri);
-        if (header != null) {
-            header.forEach(deliveryOptions::addHeader);
+        var inFlightF = inFlightFetches.putIfAbsent(key, promise.future());
+        if (inFlightF != null) {
+            log.trace("[EventBus][{}]Coalesce request [{}]{}:{}", code, moduleName, actionKind.toString(), uri);
+            return inFlightF.map(resp -> new Tuple2<>(resp._0.copy(), new HashMap<>(resp._1)));
+        }
+        limitedDispatch(moduleName, envelope, timeout)
+                .onComplete(result -> {
+                    inFlightFetches.remove(key);
+                    promise.handle(result);
+                });
+        return promise.future();
+    }
+
+    /**
+     * 发送流式请求.
+     * <p>
+     * 为本次请求注册一个临时地址并放入请求头，支持流式响应的处理函数通过 {@link #sendChunk(Map, Buffer)} 逐块发送响应，
+     * 每块在 chunkHandler 返回的Future完成后才确认，发送方收到确认后才发送下一块，以此形成背压.
+     * 所有块发送完成后处理函数再正常回复，不支持流式响应的处理函数直接回复完整的响应体.
+     * 流式请求不参与合并，超时时间为等待每个响应块（含最终响应）的时间，整个传输过程受 streamTimeoutMs 配置限制，
+     * 收到第一个响应块后即释放在途请求数.
+     *
+     * @param moduleName   目标模块
+     * @param actionKind   操作类型
+     * @param uri          资源URI
+     * @param body         请求体
+     * @param header       请求头
+     * @param identOptInfo 身份信息，可为空
+     * @param timeoutMs    等待每个响应块的超时时间，为空时使用默认值
+     * @param chunkHandler 响应块的处理函数
+     * @return 最终的响应体及响应头，收到过响应块时响应体应忽略
+     */
+    public Future<Tuple2<Buffer, Map<String, String>>> requestStream(String moduleName, OptActionKind actionKind, String uri, Buffer body,
+                                                                     Map<String, String> header, IdentOptExchangeInfo identOptInfo, Long timeoutMs,
+                                                                     Function<Buffer, Future<Void>> chunkHandler) {
+        var timeout = timeoutMs != null ? timeoutMs : DeliveryOptions.DEFAULT_TIMEOUT;
+        var address = STREAM_ADDRESS_PREFIX + $.field.createUUID();
+        Promise<Tuple2<Buffer, Map<String, String>>> promise = Promise.promise();
+        Promise<Void> releasePromise = Promise.promise();
+        var idleTimerId = new AtomicLong(streamIdleTimer(moduleName, timeout, promise));
+        MessageConsumer<Buffer> chunkConsumer = eventBus.consumer(address, message -> {
+            // 已开始传输，不再占用在途请求数
+            releasePromise.tryComplete();
+            // 处理响应块（等待下游排空）期间不计入超时
+            vertx.cancelTimer(idleTimerId.get());
+            chunkHandler.apply(message.body())
+                    .onSuccess(v -> {
+                        if (!promise.future().isComplete()) {
+                            idleTimerId.set(streamIdleTimer(moduleName, timeout, promise));
+                        }
+                        message.reply(null);
+                    })
+                    .onFailure(e -> message.fail(failureCode(e), e.getMessage() == null ? "响应块处理错误" : e.getMessage()));
+        });
+        var streamHeader = header != null ? new HashMap<>(header) : new HashMap<String, String>();
+        streamHeader.put(DewConstant.REQUEST_STREAM_ADDRESS_FLAG, address);
+        var envelope = EventBusEnvelope.builder()
+                .actionKind(actionKind)
+                .uri(uri)
+                .identOptInfo(identOptInfo)
+                .header(streamHeader)
+                .body(body)
+                .build();
+        chunkConsumer.completion()
+                .compose(v -> limitedDispatch(moduleName, envelope, streamTimeoutMs, releasePromise.future()))
+                .onComplete(promise::tryHandle);
+        return promise.future()
+                .onComplete(result -> {
+                    vertx.cancelTimer(idleTimerId.get());
+                    releasePromise.tryComplete();
+                    chunkConsumer.unregister();
+                });
+    }
+
+    private long streamIdleTimer(String moduleName, long timeoutMs, Promise<Tuple2<Buffer, Map<String, String>>> promise) {
+        return vertx.setTimer(timeoutMs, id -> {
+            if (promise.tryFail(new ReplyException(ReplyFailure.TIMEOUT,
+                    "Timed out after waiting " + timeoutMs + "(ms) for a response chunk. address: " + moduleName))) {
+                log.error("[EventBus][{}]Stream request [{}] timeout", code, moduleName);
+            }
+        });
+    }
+
+    /**
+     * 是否为流式请求.
+     *
+     * @param header 请求头
+     * @return 请求方是否接收流式响应
+     */
+    public static boolean isStreamRequest(Map<String, String> header) {
+        return header != null && header.containsKey(DewConstant.REQUEST_STREAM_ADDRESS_FLAG);
+    }
+
+    /**
+     * 向流式请求的请求方发送一个响应块.
+     * <p>
+     * 请求方处理响应块时需等待下游排空，等待确认的超时时间为 streamTimeoutMs 配置，而非事件总线默认的超时时间.
+     *
+     * @param header 请求头
+     * @param chunk  响应块
+     * @return 请求方处理完成该块
+     */
+    public Future<Void> sendChunk(Map<String, String> header, Buffer chunk) {
+        return eventBus.<Void>request(header.get(DewConstant.REQUEST_STREAM_ADDRESS_FLAG), chunk,
+                new DeliveryOptions().setSendTimeout(streamTimeoutMs)).mapEmpty();
+    }
+
+    private Future<Tuple2<Buffer, Map<String, String>>> limitedDispatch(String moduleName, EventBusEnvelope envelope, long timeout) {
+        return limitedDispatch(moduleName, envelope, timeout, null);
+    }
+
+    /**
+     * 在并发限制内投递请求.
+     *
+     * @param releaseSignal 提前释放在途请求数的信号，为空时在请求完成后释放
+     */
+    private Future<Tuple2<Buffer, Map<String, String>>> limitedDispatch(String moduleName, EventBusEnvelope envelope, long timeout,
+                                                                        Future<Void> releaseSignal) {
+        if (maxInFlight <= 0) {
+            return dispatch(moduleName, envelope, timeout);
         }
-        if (timeoutMs != null) {
-            deliveryOptions.setSendTimeout(timeoutMs);
+        var actionKind = envelope.getActionKind();
+        var uri = envelope.getUri();
+        Promise<Tuple2<Buffer, Map<String, String>>> promise = Promise.promise();
+        var limiter = limiter(moduleName);
+        var accepted = limiter.acquire(timeout,
+                remainingMs -> {
+                    if (releaseSignal != null && releaseSignal.isComplete()) {
+                        // 排队期间调用方已放弃请求
+                        limiter.release();
+                        promise.fail(new ReplyException(ReplyFailure.TIMEOUT, "Request abandoned in wait queue. address: " + moduleName));
+                        return;
+                    }
+                    var released = new AtomicBoolean(false);
+                    Runnable release = () -> {
+                        if (released.compareAndSet(false, true)) {
+                            limiter.release();
+                        }
+                    };
+                    if (releaseSignal != null) {
+                        releaseSignal.onComplete(r -> release.run());
+                    }
+                    dispatch(moduleName, envelope, remainingMs)
+                            .onComplete(result -> {
+                                release.run();
+                                promise.handle(result);
+                            });
+                },
+                () -> {
+                    log.warn("[EventBus][{}]Request [{}]{}:{} timeout in wait queue", code, moduleName, actionKind.toString(), uri);
+                    promise.fail(new ReplyException(ReplyFailure.TIMEOUT,
+                            "Timed out after waiting " + timeout + "(ms) in wait queue. address: " + moduleName));
+                });
+        if (!accepted) {
+            log.warn("[EventBus][{}]Request [{}]{}:{} rejected, in flight {} and wait queue {} are full",
+                    code, moduleName, actionKind.toString(), uri, limiter.getInFlight(), limiter.getQueueSize());
+            promise.fail(new ReplyException(ReplyFailure.RECIPIENT_FAILURE, OVERLOAD_CODE, "模块[" + moduleName + "]请求过多，请稍后重试"));
+        }
+        return promise.future();
+    }
+
+    /**
+     * 获取发往目标模块的请求并发限制器，可用于查看在途及排队的请求数.
+     *
+     * @param moduleName 目标模块
+     * @return 并发限制器，未启用并发限制时返回null
+     */
+    public EventBusLimiter limiter(String moduleName) {
+        if (maxInFlight <= 0) {
+            return null;
+        }
+        return limiters.computeIfAbsent(moduleName, name -> {
+            var limiter = new EventBusLimiter(vertx, maxInFlight, maxWaitQueueSize);
+            EventBusMetrics.register(code, name, limiter);
+            return limiter;
+        });
+    }
+
+    private Future<Tuple2<Buffer, Map<String, String>>> dispatch(String moduleName, EventBusEnvelope envelope, long timeoutMs) {
+        Promise<Tuple2<Buffer, Map<String, String>>> promise = Promise.promise();
+        var localConsumer = localFirst ? chooseLocalConsumer(moduleName) : null;
+        if (localConsumer != null) {
+            localRequest(moduleName, localConsumer, envelope, timeoutMs, promise);
+            return promise.future();
         }
         eventBus.request(moduleName,
-                body,
-                deliveryOptions,
+                envelope,
+                new DeliveryOptions().setSendTimeout(timeoutMs),
                 (Handler<AsyncResult<Message<Buffer>>>) event -> {
                     if (event.failed()) {
-                        log.error("[EventBus][{}]Request [{}]{}:{} error", code, moduleName, actionKind.toString(), uri);
+                        log.error("[EventBus][{}]Request [{}]{}:{} error", code, moduleName, envelope.getActionKind().toString(), envelope.getUri());
                         promise.fail(event.cause());
                     } else {
                         var respHeader = new HashMap<String, String>();
@@ -119,6 +397,64 @@ public class FunEventBus {
         return promise.future();
     }
 
+    private static LocalConsumer chooseLocalConsumer(String moduleName) {
+        var consumers = LOCAL_CONSUMERS.get(moduleName);
+        if (consumers == null) {
+            return null;
+        }
+        // 同一模块部署了多个实例时轮询
+        return consumers.get(Math.floorMod(LOCAL_CONSUMER_INDEX.getAndIncrement(), consumers.size()));
+    }
+
+    /**
+     * 直接调用本JVM内模块的处理函数.
+     * <p>
+     * 处理函数在其注册时所在Verticle实例的上下文中执行，结果回到调用方的上下文中处理，与经过事件总线投递时的线程模型一致.
+     * 请求体、身份信息及响应体均直接传递对象引用，不做复制.
+     */
+    private void localRequest(String moduleName, LocalConsumer localConsumer, EventBusEnvelope envelope, long timeoutMs,
+                              Promise<Tuple2<Buffer, Map<String, String>>> promise) {
+        var callerContext = Vertx.currentContext();
+        var timerId = vertx.setTimer(timeoutMs, id -> {
+            if (promise.tryFail(new ReplyException(ReplyFailure.TIMEOUT,
+                    "Timed out after waiting " + timeoutMs + "(ms) for a reply. address: " + moduleName))) {
+                log.error("[EventBus][{}]Request [{}]{}:{} timeout", code, moduleName, envelope.getActionKind().toString(), envelope.getUri());
+            }
+        });
+        Handler<AsyncResult<Tuple2<Buffer, Map<String, String>>>> replyHandler = result -> {
+            vertx.cancelTimer(timerId);
+            if (callerContext == null || callerContext == Vertx.currentContext()) {
+                promise.tryHandle(result);
+            } else {
+                callerContext.runOnContext(v -> promise.tryHandle(result));
+            }
+        };
+        if (localConsumer.context == null || localConsumer.context == callerContext) {
+            localProcess(moduleName, localConsumer.consumerFun, envelope, replyHandler);
+        } else {
+            localConsumer.context.runOnContext(v -> localProcess(moduleName, localConsumer.consumerFun, envelope, replyHandler));
+        }
+    }
+
+    private void localProcess(String moduleName, EnvelopeConsumerFun<?> consumerFun, EventBusEnvelope envelope,
+                              Handler<AsyncResult<Tuple2<Buffer, Map<String, String>>>> replyHandler) {
+        Future<?> processF;
+        try {
+            processF = consumerFun.consume(prepare(envelope));
+        } catch (Exception e) {
+            log.error("[EventBus][{}]Process [{}]{}:{} error", code, moduleName, envelope.getActionKind().toString(), envelope.getUri(), e);
+            replyHandler.handle(Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE, failureCode(e), e.getMessage())));
+            return;
+        }
+        processF
+                .onSuccess(processResult -> replyHandler.handle(Future.succeededFuture(toReply(processResult))))
+                .onFailure(e -> {
+                    log.error("[EventBus][{}]Process [{}]{}:{} error", code, moduleName, envelope.getActionKind().toString(), envelope.getUri(), e);
+                    replyHandler.handle(Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE, failureCode(e),
+                            e.getMessage() == null ? "请求错误" : e.getMessage())));
+                });
+    }
+
     public void publish(String moduleName, OptActionKind actionKind, String uri, Buffer body, Map<String, String> header) {
         var deliveryOptions = new DeliveryOptions()
                 .addHeader(DewConstant.REQUEST_RESOURCE_ACTION_FLAG, actionKind.toString())
@@ -148,61 +484,195 @@ public class FunEventBus {
     }
 
     public <E> void consumer(String moduleName, ConsumerFun<E> consumerFun) {
+        consumer(moduleName, (EnvelopeConsumerFun<E>) envelope -> {
+            if (envelope.getIdentOptInfo() != null && !envelope.getHeader().containsKey(DewConstant.REQUEST_IDENT_OPT_FLAG)) {
+                // 兼容以请求头获取身份信息的处理函数
+                envelope.getHeader().put(DewConstant.REQUEST_IDENT_OPT_FLAG,
+                        $.security.encodeStringToBase64(JsonObject.mapFrom(envelope.getIdentOptInfo()).toString(), StandardCharsets.UTF_8));
+            }
+            return consumerFun.consume(envelope.getActionKind(), URIHelper.newURI(envelope.getUri()), envelope.getHeader(), envelope.getBody());
+        });
+    }
+
+    public <E> void consumer(String moduleName, EnvelopeConsumerFun<E> consumerFun) {
         eventBus.consumer(moduleName,
-                (Handler<Message<Buffer>>) event -> {
-                    var header = new HashMap<String, String>();
-                    event.headers().forEach(h -> header.put(h.getKey(), h.getValue()));
-                    var actionKind = OptActionKind.parse(event.headers().get(DewConstant.REQUEST_RESOURCE_ACTION_FLAG));
-                    var uri = URIHelper.newURI(event.headers().get(DewConstant.REQUEST_RESOURCE_URI_FLAG));
-                    log.trace("[EventBus][{}]Receive data [{}]{}", code, actionKind, uri.toString());
+                (Handler<Message<Object>>) event -> {
+                    EventBusEnvelope envelope;
+                    boolean withoutResp;
+                    if (event.body() instanceof EventBusEnvelope) {
+                        envelope = prepare((EventBusEnvelope) event.body());
+                        withoutResp = false;
+                    } else {
+                        var header = new HashMap<String, String>();
+                        event.headers().forEach(h -> header.put(h.getKey(), h.getValue()));
+                        envelope = EventBusEnvelope.builder()
+                                .actionKind(OptActionKind.parse(event.headers().get(DewConstant.REQUEST_RESOURCE_ACTION_FLAG)))
+                                .uri(event.headers().get(DewConstant.REQUEST_RESOURCE_URI_FLAG))
+                                .header(header)
+                                .body((Buffer) event.body())
+                                .build();
+                        withoutResp = event.headers().contains(DewConstant.REQUEST_WITHOUT_RESP_FLAG);
+                    }
+                    var actionKind = envelope.getActionKind();
+                    var uri = envelope.getUri();
+                    log.trace("[EventBus][{}]Receive data [{}]{}", code, actionKind, uri);
                     try {
-                        var processF = consumerFun.consume(actionKind, uri, header, event.body());
-                        if (!event.headers().contains(DewConstant.REQUEST_WITHOUT_RESP_FLAG)) {
+                        var processF = consumerFun.consume(envelope);
+                        if (!withoutResp) {
                             processF
                                     .onSuccess(processResult -> {
-                                        if (processResult instanceof Number
-                                                || processResult instanceof Boolean) {
-                                            event.reply(Buffer.buffer(processResult.toString(), "utf-8"));
-                                        } else if (processResult instanceof String) {
-                                            event.reply(Buffer.buffer((String) processResult, "utf-8"));
-                                        } else if (processResult instanceof Buffer) {
-                                            event.reply(processResult);
-                                        } else if (processResult == null) {
-                                            event.reply(Buffer.buffer());
-                                        } else if (processResult instanceof List) {
-                                            var array = new JsonArray();
-                                            ((List<?>) processResult).forEach(p -> array.add(JsonObject.mapFrom(p)));
-                                            event.reply(array.toBuffer());
-                                        } else if (processResult instanceof JsonObject) {
-                                            event.reply(((JsonObject) processResult).toBuffer());
-                                        } else if (processResult instanceof JsonArray) {
-                                            event.reply(((JsonArray) processResult).toBuffer());
-                                        } else {
-                                            event.reply(JsonObject.mapFrom(processResult).toBuffer());
-                                        }
+                                        var reply = toReply(processResult);
+                                        var deliveryOptions = new DeliveryOptions();
+                                        reply._1.forEach(deliveryOptions::addHeader);
+                                        event.reply(reply._0, deliveryOptions);
                                     });
                         }
                         processF
                                 .onFailure(e -> {
                                     log.error("[EventBus][{}]Process [{}]{}:{} error", code, moduleName, actionKind.toString(), uri, e);
-                                    if (e instanceof DewException) {
-                                        event.fail(((DewException) e).getCode(), e.getMessage());
-                                    } else {
-                                        event.fail(-1, e.getMessage() == null ? "请求错误" : e.getMessage());
-                                    }
+                                    event.fail(failureCode(e), e.getMessage() == null ? "请求错误" : e.getMessage());
                                 });
                     } catch (Exception e) {
                         log.error("[EventBus][{}]Process [{}]{}:{} error", code, moduleName, actionKind.toString(), uri, e);
-                        if (e instanceof DewException) {
-                            event.fail(((DewException) e).getCode(), e.getMessage());
-                        } else {
-                            event.fail(-1, e.getMessage());
-                        }
+                        event.fail(failureCode(e), e.getMessage());
                     }
                 }
         );
     }
 
+    /**
+     * 注册本模块的处理函数.
+     * <p>
+     * 同时注册到事件总线及本地调用表，本JVM内的请求直接调用处理函数，其它节点的请求经过事件总线投递.
+     * 本地调用表按Verticle实例（当前上下文）登记，实例停止时通过 {@link #removeLocalConsumer(String, Context)} 移除.
+     *
+     * @param moduleName  模块名
+     * @param consumerFun 处理函数
+     * @param <E>         返回类型
+     */
+    public <E> void localConsumer(String moduleName, EnvelopeConsumerFun<E> consumerFun) {
+        consumer(moduleName, consumerFun);
+        var localConsumer = new LocalConsumer(Vertx.currentContext(), consumerFun);
+        LOCAL_CONSUMERS.merge(moduleName, List.of(localConsumer), (consumers, added) -> {
+            var merged = new ArrayList<>(consumers);
+            merged.addAll(added);
+            return List.copyOf(merged);
+        });
+    }
+
+    private static EventBusEnvelope prepare(EventBusEnvelope envelope) {
+        // 本地投递时信封及请求头与发送方共享，复制后再补充以免修改发送方的数据
+        var header = envelope.getHeader() != null ? new HashMap<>(envelope.getHeader()) : new HashMap<String, String>();
+        header.put(DewConstant.REQUEST_RESOURCE_ACTION_FLAG, envelope.getActionKind().toString());
+        header.put(DewConstant.REQUEST_RESOURCE_URI_FLAG, envelope.getUri());
+        return EventBusEnvelope.builder()
+                .actionKind(envelope.getActionKind())
+                .uri(envelope.getUri())
+                .identOptInfo(envelope.getIdentOptInfo())
+                .header(header)
+                .body(envelope.getBody())
+                .build();
+    }
+
+    /**
+     * 转换处理结果为响应体及响应头.
+     * <p>
+     * 处理结果为 Tuple2&lt;响应体, 响应头&gt; 时（如转发其它模块的响应）保留响应头.
+     */
+    private static Tuple2<Buffer, Map<String, String>> toReply(Object processResult) {
+        if (processResult instanceof Tuple2 && ((Tuple2<?, ?>) processResult)._1 instanceof Map) {
+            var reply = (Tuple2<?, Map<String, String>>) processResult;
+            return new Tuple2<>(toReplyBody(reply._0), new HashMap<>(reply._1));
+        }
+        return new Tuple2<>(toReplyBody(processResult), new HashMap<>());
+    }
+
+    private static Buffer toReplyBody(Object processResult) {
+        if (processResult instanceof Number
+                || processResult instanceof Boolean) {
+            return Buffer.buffer(processResult.toString(), "utf-8");
+        } else if (processResult instanceof String) {
+            return Buffer.buffer((String) processResult, "utf-8");
+        } else if (processResult instanceof Buffer) {
+            return (Buffer) processResult;
+        } else if (processResult == null) {
+            return Buffer.buffer();
+        } else if (processResult instanceof JsonObject) {
+            return ((JsonObject) processResult).toBuffer();
+        } else if (processResult instanceof JsonArray) {
+            return ((JsonArray) processResult).toBuffer();
+        } else {
+            // POJO、List及Page等直接由Jackson写入Buffer
+            return JsonHelper.toBuffer(processResult);
+        }
+    }
+
+    private static int failureCode(Throwable e) {
+        return e instanceof DewException ? ((DewException) e).getCode() : -1;
+    }
+
+    /**
+     * 可合并请求的标识，目标模块、操作类型、URI、请求头、请求体及身份信息均相同时视为相同请求.
+     */
+    private static class CoalesceKey {
+
+        private final String moduleName;
+        private final OptActionKind actionKind;
+        private final String uri;
+        private final Map<String, String> header;
+        private final Buffer body;
+        private final IdentOptExchangeInfo identOptInfo;
+        private final int hash;
+
+        CoalesceKey(String moduleName, EventBusEnvelope envelope) {
+            this.moduleName = moduleName;
+            this.actionKind = envelope.getActionKind();
+            this.uri = envelope.getUri();
+            // 请求头在处理过程中可能被修改，需要复制
+            this.header = new HashMap<>(envelope.getHeader());
+            this.body = envelope.getBody();
+            this.identOptInfo = envelope.getIdentOptInfo();
+            this.hash = Objects.hash(moduleName, actionKind, uri, header, body, identOptInfo);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CoalesceKey)) {
+                return false;
+            }
+            var that = (CoalesceKey) o;
+            return hash == that.hash
+                    && moduleName.equals(that.moduleName)
+                    && actionKind == that.actionKind
+                    && uri.equals(that.uri)
+                    && header.equals(that.header)
+                    && Objects.equals(body, that.body)
+                    && Objects.equals(identOptInfo, that.identOptInfo);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    private static class LocalConsumer {
+
+        // 注册时所在Verticle实例的上下文，不在Verticle中注册时为空
+        private final Context context;
+        private final EnvelopeConsumerFun<?> consumerFun;
+
+        LocalConsumer(Context context, EnvelopeConsumerFun<?> consumerFun) {
+            this.context = context;
+            this.consumerFun = consumerFun;
+        }
+
+    }
+
     @FunctionalInterface
     public interface ConsumerFun<E> {
 
@@ -210,4 +680,11 @@ public class FunEventBus {
 
     }
 
+    @FunctionalInterface
+    public interface EnvelopeConsumerFun<E> {
+
+        Future<E> consume(EventBusEnvelope envelope);
+
+    }
+
 }
@@ -16,24 +16,34 @@
 
 package idealworld.dew.framework.fun.eventbus;
 
-import com.ecfront.dew.common.$;
 import com.ecfront.dew.common.Page;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import idealworld.dew.framework.domain.IdEntity;
 import idealworld.dew.framework.dto.IdResp;
 import idealworld.dew.framework.exception.BadRequestException;
+import idealworld.dew.framework.util.BeanHelper;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.jackson.DatabindCodec;
 import lombok.SneakyThrows;
 
 import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -47,6 +57,8 @@ public class ProcessHelper {
 
     private static final ValidatorFactory VALIDATOR_FACTORY = Validation.buildDefaultValidatorFactory();
     private static final Validator VALIDATOR = VALIDATOR_FACTORY.getValidator();
+    // 类是否包含校验约束，不包含约束的类跳过校验
+    private static final Map<Class<?>, Boolean> CONSTRAINED_CLASSES = new ConcurrentHashMap<>();
 
     static <E> E parseBody(Buffer body, Class<E> bodyClazz, String... excludeKeys) {
         if (bodyClazz == Void.class) {
@@ -58,21 +70,17 @@ public class ProcessHelper {
         if (bodyClazz == String.class) {
             return (E) body.toString(StandardCharsets.UTF_8);
         }
+        if (bodyClazz != JsonObject.class
+                && bodyClazz != JsonArray.class
+                && bodyClazz != List.class
+                && bodyClazz != Set.class) {
+            // 直接反序列化为目标对象，不再经过中间的JsonObject
+            return parseBean(body, bodyClazz, excludeKeys);
+        }
         var jsonBody = Json.decodeValue(body);
-        if (jsonBody instanceof JsonObject) {
+        if (jsonBody instanceof JsonObject && bodyClazz == JsonObject.class) {
             trimValues((JsonObject) jsonBody, Arrays.asList(excludeKeys));
-            if (bodyClazz == JsonObject.class) {
-                return (E) jsonBody;
-            }
-            var beanBody = ((JsonObject) jsonBody).mapTo(bodyClazz);
-            var violations = VALIDATOR.validate(beanBody);
-            if (violations.isEmpty()) {
-                return beanBody;
-            }
-            var errorMsg = violations.stream()
-                    .map(violation -> "[" + violation.getPropertyPath().toString() + "]" + violation.getMessage())
-                    .collect(Collectors.joining("\n"));
-            throw new BadRequestException(errorMsg);
+            return (E) jsonBody;
         }
         if (jsonBody instanceof JsonArray) {
             if (bodyClazz == JsonArray.class) {
@@ -88,6 +96,29 @@ public class ProcessHelper {
         throw new BadRequestException("无法将\"" + body.toString() + "\"转换成[" + bodyClazz.getName() + "]");
     }
 
+    private static <E> E parseBean(Buffer body, Class<E> bodyClazz, String... excludeKeys) {
+        E beanBody;
+        try {
+            beanBody = TrimStringDeserializer.mapper().readerFor(bodyClazz)
+                    .withAttribute(TrimStringDeserializer.EXCLUDE_KEYS_ATTR,
+                            excludeKeys.length > 0 ? new HashSet<>(Arrays.asList(excludeKeys)) : Collections.emptySet())
+                    .readValue(body.getBytes());
+        } catch (IOException e) {
+            throw new BadRequestException("无法将\"" + body.toString() + "\"转换成[" + bodyClazz.getName() + "]", e);
+        }
+        if (beanBody == null || !CONSTRAINED_CLASSES.computeIfAbsent(bodyClazz, clazz -> VALIDATOR.getConstraintsForClass(clazz).isBeanConstrained())) {
+            return beanBody;
+        }
+        var violations = VALIDATOR.validate(beanBody);
+        if (violations.isEmpty()) {
+            return beanBody;
+        }
+        var errorMsg = violations.stream()
+                .map(violation -> "[" + violation.getPropertyPath().toString() + "]" + violation.getMessage())
+                .collect(Collectors.joining("\n"));
+        throw new BadRequestException(errorMsg);
+    }
+
     private static void trimValues(JsonObject json, List<String> excludeKeys) {
         json.stream()
                 .filter(j -> !excludeKeys.contains(j.getKey()))
@@ -117,13 +148,13 @@ public class ProcessHelper {
     }
 
     public <E extends IdResp, I extends IdEntity> Future<E> success(I entity, Class<E> clazz) {
-        return Future.succeededFuture($.bean.copyProperties(entity, clazz));
+        return Future.succeededFuture(BeanHelper.copyProperties(entity, clazz));
     }
 
     public <E extends IdResp, I extends IdEntity> Future<List<E>> success(List<I> entities, Class<E> clazz) {
         return Future.succeededFuture(
                 entities.stream()
-                        .map(r -> $.bean.copyProperties(r, clazz))
+                        .map(r -> BeanHelper.copyProperties(r, clazz))
                         .collect(Collectors.toList()));
     }
 
@@ -134,7 +165,7 @@ public class ProcessHelper {
         page.setPageTotal(entities.getPageTotal());
         page.setRecordTotal(entities.getRecordTotal());
         page.setObjects(entities.getObjects().stream()
-                .map(r -> $.bean.copyProperties(r, clazz))
+                .map(r -> BeanHelper.copyProperties(r, clazz))
                 .collect(Collectors.toList()));
         return Future.succeededFuture(page);
     }
@@ -145,7 +176,7 @@ public class ProcessHelper {
     }
 
     public <E> E convert(Object bean, Class<E> clazz) {
-        return $.bean.copyProperties(bean, clazz);
+        return BeanHelper.copyProperties(bean, clazz);
     }
 
     public <E> Future<E> existToError(Future<E> existFuture, Supplier<Throwable> errorFun) {
@@ -203,4 +234,68 @@ public class ProcessHelper {
                 .onFailure(promise::fail);
     }
 
+    /**
+     * 去除对象属性值首尾空格的字符串反序列化器.
+     * <p>
+     * 只处理对象属性的值（含数组中对象的属性），数组中直接的字符串元素保持不变，
+     * 属性路径（以.分隔）或其父路径在排除列表中的不做处理。
+     * <p>
+     * 只注册到首次使用时复制的Vert.x ObjectMapper上，仅用于请求体的解析，不影响其它反序列化。
+     */
+    private static class TrimStringDeserializer extends StdScalarDeserializer<String> {
+
+        private static final String EXCLUDE_KEYS_ATTR = "dew.trim.excludeKeys";
+        private static volatile ObjectMapper mapper;
+
+        TrimStringDeserializer() {
+            super(String.class);
+        }
+
+        static ObjectMapper mapper() {
+            if (mapper == null) {
+                synchronized (TrimStringDeserializer.class) {
+                    if (mapper == null) {
+                        mapper = DatabindCodec.mapper().copy()
+                                .registerModule(new SimpleModule().addDeserializer(String.class, new TrimStringDeserializer()));
+                    }
+                }
+            }
+            return mapper;
+        }
+
+        @Override
+        public String deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            var value = StringDeserializer.instance.deserialize(p, ctxt);
+            if (value == null || !p.getParsingContext().inObject()) {
+                return value;
+            }
+            var excludeKeys = (Set<String>) ctxt.getAttribute(EXCLUDE_KEYS_ATTR);
+            if (excludeKeys != null && !excludeKeys.isEmpty() && isExcluded(p.getParsingContext(), excludeKeys)) {
+                return value;
+            }
+            return value.trim();
+        }
+
+        private static boolean isExcluded(JsonStreamContext context, Set<String> excludeKeys) {
+            var names = new LinkedList<String>();
+            for (var ctx = context; ctx != null && !ctx.inRoot(); ctx = ctx.getParent()) {
+                if (ctx.inObject() && ctx.getCurrentName() != null) {
+                    names.addFirst(ctx.getCurrentName());
+                }
+            }
+            var path = new StringBuilder();
+            for (var name : names) {
+                if (path.length() > 0) {
+                    path.append('.');
+                }
+                path.append(name);
+                if (excludeKeys.contains(path.toString())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
 }
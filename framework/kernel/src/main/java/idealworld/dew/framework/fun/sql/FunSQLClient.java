@@ -596,6 +596,52 @@ public class FunSQLClient {
         return promise.future();
     }
 
+    /**
+     * 以游标方式执行查询，分批获取记录.
+     * <p>
+     * 内存中只保留当前批次的记录，适用于结果集较大的查询.
+     *
+     * @param sql          查询SQL
+     * @param parameters   参数
+     * @param fetchSize    每批获取的记录数
+     * @param chunkHandler 每批记录的处理函数，返回的Future完成后才获取下一批，结果集为空时也会以空数组调用一次
+     * @return 记录总数
+     */
+    public Future<Long> rawStream(String sql, List parameters, int fetchSize, Function<JsonArray, Future<Void>> chunkHandler) {
+        Future<Long> streamF;
+        if (client instanceof SqlConnection) {
+            streamF = cursorFetch((SqlConnection) client, sql, parameters, fetchSize, chunkHandler);
+        } else {
+            streamF = ((Pool) client).withConnection(connection -> cursorFetch(connection, sql, parameters, fetchSize, chunkHandler));
+        }
+        return streamF.onFailure(e -> log.error("[SQL][{}]Raw Stream error: {}", code, e.getMessage(), e));
+    }
+
+    private Future<Long> cursorFetch(SqlConnection connection, String sql, List parameters, int fetchSize,
+                                     Function<JsonArray, Future<Void>> chunkHandler) {
+        return connection.prepare(sql)
+                .compose(preparedStatement -> {
+                    var cursor = preparedStatement.cursor(Tuple.from(parameters));
+                    return fetchChunk(cursor, fetchSize, chunkHandler, 0L)
+                            .onComplete(result -> cursor.close().onComplete(closed -> preparedStatement.close()));
+                });
+    }
+
+    private Future<Long> fetchChunk(Cursor cursor, int fetchSize, Function<JsonArray, Future<Void>> chunkHandler, long fetchedSize) {
+        return cursor.read(fetchSize)
+                .compose(rows -> {
+                    var chunk = new JsonArray(new ArrayList<>(rows.size()));
+                    for (Row row : rows) {
+                        chunk.add(row.toJson());
+                    }
+                    var totalSize = fetchedSize + rows.size();
+                    return chunkHandler.apply(chunk)
+                            .compose(v -> cursor.hasMore()
+                                    ? fetchChunk(cursor, fetchSize, chunkHandler, totalSize)
+                                    : Future.succeededFuture(totalSize));
+                });
+    }
+
     private <E extends IdEntity> JsonObject convertToJson(E entity, Boolean insert) {
         if (insert && addEntityByInsertFun != null) {
             addEntityByInsertFun.accept(entity);
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.util;
+
+import com.ecfront.dew.common.$;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bean辅助类.
+ * <p>
+ * 按 源类型-目标类型 缓存属性复制器，复制器由同名且类型兼容的属性的 getter/setter {@link MethodHandle} 组成，
+ * 只在首次复制时做一次反射，之后不再查找属性。
+ * 与 $.bean.copyProperties 一致，值为null的属性不复制；存在同名但类型不兼容的属性时退化为 $.bean.copyProperties 以保留其类型转换逻辑。
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class BeanHelper {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static final Map<Class<?>, Map<Class<?>, Function<Object, Object>>> COPIERS = new ConcurrentHashMap<>();
+
+    /**
+     * 复制属性到新的目标对象.
+     *
+     * @param source      源对象
+     * @param targetClazz 目标类型，需要有无参构造函数
+     * @param <E>         目标类型
+     * @return 目标对象
+     */
+    public static <E> E copyProperties(Object source, Class<E> targetClazz) {
+        if (source == null) {
+            return null;
+        }
+        return (E) COPIERS.computeIfAbsent(source.getClass(), clazz -> new ConcurrentHashMap<>())
+                .computeIfAbsent(targetClazz, clazz -> buildCopier(source.getClass(), targetClazz))
+                .apply(source);
+    }
+
+    private static Function<Object, Object> buildCopier(Class<?> sourceClazz, Class<?> targetClazz) {
+        try {
+            var sourceProperties = Arrays.stream(Introspector.getBeanInfo(sourceClazz).getPropertyDescriptors())
+                    .filter(property -> property.getReadMethod() != null && !property.getName().equals("class"))
+                    .collect(Collectors.toMap(PropertyDescriptor::getName, property -> property));
+            var getters = new ArrayList<MethodHandle>();
+            var setters = new ArrayList<MethodHandle>();
+            for (var targetProperty : Introspector.getBeanInfo(targetClazz).getPropertyDescriptors()) {
+                var sourceProperty = sourceProperties.get(targetProperty.getName());
+                if (sourceProperty == null || targetProperty.getWriteMethod() == null) {
+                    continue;
+                }
+                if (!wrap(targetProperty.getPropertyType()).isAssignableFrom(wrap(sourceProperty.getPropertyType()))) {
+                    log.debug("[Bean]Property [{}] type mismatch between {} and {}, use reflection copy",
+                            targetProperty.getName(), sourceClazz.getName(), targetClazz.getName());
+                    return source -> $.bean.copyProperties(source, targetClazz);
+                }
+                getters.add(LOOKUP.unreflect(sourceProperty.getReadMethod()).asType(GETTER_TYPE));
+                setters.add(LOOKUP.unreflect(targetProperty.getWriteMethod()).asType(SETTER_TYPE));
+            }
+            var constructor = LOOKUP.findConstructor(targetClazz, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+            return new Copier(constructor, getters.toArray(new MethodHandle[0]), setters.toArray(new MethodHandle[0]));
+        } catch (IntrospectionException | IllegalAccessException | NoSuchMethodException e) {
+            log.debug("[Bean]Can't build copier from {} to {}, use reflection copy", sourceClazz.getName(), targetClazz.getName(), e);
+            return source -> $.bean.copyProperties(source, targetClazz);
+        }
+    }
+
+    private static Class<?> wrap(Class<?> clazz) {
+        return clazz.isPrimitive() ? MethodType.methodType(clazz).wrap().returnType() : clazz;
+    }
+
+    private static class Copier implements Function<Object, Object> {
+
+        private final MethodHandle constructor;
+        private final MethodHandle[] getters;
+        private final MethodHandle[] setters;
+
+        Copier(MethodHandle constructor, MethodHandle[] getters, MethodHandle[] setters) {
+            this.constructor = constructor;
+            this.getters = getters;
+            this.setters = setters;
+        }
+
+        @SneakyThrows
+        @Override
+        public Object apply(Object source) {
+            var target = (Object) constructor.invokeExact();
+            for (var i = 0; i < getters.length; i++) {
+                var value = (Object) getters[i].invokeExact(source);
+                if (value != null) {
+                    setters[i].invokeExact(target, value);
+                }
+            }
+            return target;
+        }
+
+    }
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.util;
+
+/**
+ * IP网段前缀树.
+ * <p>
+ * 支持IPv4及IPv6的IP或CIDR网段（如 10.0.0.0/8、2001:db8::/32），IPv4统一按IPv4映射地址（::ffff:a.b.c.d）存储，
+ * 按位逐级匹配，查找的复杂度为前缀长度，查找过程不分配对象。
+ * <p>
+ * 不支持并发写，构建完成后只读，更新时应整体重建后替换。
+ *
+ * @author gudaoxuri
+ */
+public class CIDRTrie {
+
+    private static final int IPV6_BITS = 128;
+    private static final int IPV4_MAPPED_PREFIX_BITS = 96;
+    private static final long IPV4_MAPPED_FLAG = 0xFFFF_0000_0000L;
+    private static final ThreadLocal<long[]> LOOKUP_ADDRESS = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final Node root = new Node();
+    private boolean empty = true;
+
+    /**
+     * 添加IP或CIDR网段.
+     *
+     * @param cidr IP或CIDR网段
+     * @throws IllegalArgumentException 格式错误
+     */
+    public void add(String cidr) {
+        var strCidr = cidr.trim();
+        var prefixSplitIdx = strCidr.indexOf('/');
+        var strIp = prefixSplitIdx == -1 ? strCidr : strCidr.substring(0, prefixSplitIdx);
+        var address = new long[2];
+        if (!parse(strIp, address)) {
+            throw new IllegalArgumentException("IP [" + cidr + "] format error");
+        }
+        var ipv4 = strIp.indexOf(':') == -1;
+        var prefixLength = IPV6_BITS;
+        if (prefixSplitIdx != -1) {
+            try {
+                prefixLength = Integer.parseInt(strCidr.substring(prefixSplitIdx + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("IP [" + cidr + "] format error");
+            }
+            if (prefixLength < 0 || prefixLength > (ipv4 ? 32 : IPV6_BITS)) {
+                throw new IllegalArgumentException("IP [" + cidr + "] prefix length error");
+            }
+            if (ipv4) {
+                prefixLength += IPV4_MAPPED_PREFIX_BITS;
+            }
+        }
+        var node = root;
+        for (var i = 0; i < prefixLength && !node.terminal; i++) {
+            var bit = bit(address, i);
+            if (node.children[bit] == null) {
+                node.children[bit] = new Node();
+            }
+            node = node.children[bit];
+        }
+        if (!node.terminal) {
+            // 已被更短的网段包含时无需再添加，包含了更长的网段时裁剪掉子树
+            node.terminal = true;
+            node.children[0] = null;
+            node.children[1] = null;
+        }
+        empty = false;
+    }
+
+    /**
+     * 是否包含此IP.
+     *
+     * @param ip IPv4或IPv6地址
+     * @return 是否包含，IP格式错误时返回false
+     */
+    public boolean contains(String ip) {
+        if (root.terminal) {
+            return true;
+        }
+        if (empty) {
+            return false;
+        }
+        var address = LOOKUP_ADDRESS.get();
+        if (!parse(ip, address)) {
+            return false;
+        }
+        var node = root;
+        for (var i = 0; i < IPV6_BITS; i++) {
+            node = node.children[bit(address, i)];
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * 解析IP地址.
+     * <p>
+     * 支持带中括号及区域标识（%）的IPv6地址，不做域名解析。
+     *
+     * @param ip      IP地址
+     * @param address 解析结果，高64位及低64位
+     * @return 是否合法
+     */
+    public static boolean parse(String ip, long[] address) {
+        var start = 0;
+        var end = ip.length();
+        if (end > 1 && ip.charAt(0) == '[' && ip.charAt(end - 1) == ']') {
+            start++;
+            end--;
+        }
+        var zoneIdx = ip.indexOf('%', start);
+        if (zoneIdx != -1 && zoneIdx < end) {
+            end = zoneIdx;
+        }
+        if (start >= end) {
+            return false;
+        }
+        if (ip.indexOf(':', start) == -1 || ip.indexOf(':', start) >= end) {
+            var ipv4 = parseIPv4(ip, start, end);
+            if (ipv4 == -1) {
+                return false;
+            }
+            address[0] = 0;
+            address[1] = IPV4_MAPPED_FLAG | ipv4;
+            return true;
+        }
+        return parseIPv6(ip, start, end, address);
+    }
+
+    private static boolean parseIPv6(String ip, int start, int end, long[] address) {
+        // 双冒号前的分组计入head，之后的计入tail，最后将head左移补齐被省略的0
+        long headHigh = 0;
+        long headLow = 0;
+        var headCount = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        var tailCount = 0;
+        var compressed = false;
+        var pos = start;
+        if (ip.startsWith("::", pos)) {
+            compressed = true;
+            pos += 2;
+        }
+        while (pos < end) {
+            var fieldEnd = ip.indexOf(':', pos);
+            if (fieldEnd == -1 || fieldEnd > end) {
+                fieldEnd = end;
+            }
+            int groupCount;
+            long value;
+            if (ip.indexOf('.', pos) != -1 && ip.indexOf('.', pos) < fieldEnd) {
+                // 内嵌IPv4，必须位于最后
+                if (fieldEnd != end) {
+                    return false;
+                }
+                value = parseIPv4(ip, pos, fieldEnd);
+                if (value == -1) {
+                    return false;
+                }
+                groupCount = 2;
+            } else {
+                value = parseHexGroup(ip, pos, fieldEnd);
+                if (value == -1) {
+                    return false;
+                }
+                groupCount = 1;
+            }
+            if (headCount + tailCount + groupCount > 8) {
+                return false;
+            }
+            var shift = groupCount * 16;
+            if (compressed) {
+                tailHigh = (tailHigh << shift) | (tailLow >>> (64 - shift));
+                tailLow = (tailLow << shift) | value;
+                tailCount += groupCount;
+            } else {
+                headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+                headLow = (headLow << shift) | value;
+                headCount += groupCount;
+            }
+            if (fieldEnd == end) {
+                break;
+            }
+            if (ip.startsWith("::", fieldEnd)) {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                pos = fieldEnd + 2;
+            } else {
+                pos = fieldEnd + 1;
+                if (pos == end) {
+                    return false;
+                }
+            }
+        }
+        var count = headCount + tailCount;
+        if (compressed ? count > 7 : count != 8) {
+            return false;
+        }
+        if (headCount > 0 && headCount < 8) {
+            var shift = (8 - headCount) * 16;
+            if (shift >= 64) {
+                headHigh = headLow << (shift - 64);
+                headLow = 0;
+            } else {
+                headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+                headLow = headLow << shift;
+            }
+        }
+        address[0] = headHigh | tailHigh;
+        address[1] = headLow | tailLow;
+        return true;
+    }
+
+    private static long parseHexGroup(String ip, int start, int end) {
+        if (start >= end || end - start > 4) {
+            return -1;
+        }
+        long value = 0;
+        for (var i = start; i < end; i++) {
+            var digit = Character.digit(ip.charAt(i), 16);
+            if (digit == -1) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static long parseIPv4(String ip, int start, int end) {
+        long value = 0;
+        var octets = 0;
+        var pos = start;
+        while (octets < 4) {
+            var octet = 0;
+            var digits = 0;
+            while (pos < end && ip.charAt(pos) != '.') {
+                var c = ip.charAt(pos);
+                if (c < '0' || c > '9' || digits == 3) {
+                    return -1;
+                }
+                octet = octet * 10 + (c - '0');
+                digits++;
+                pos++;
+            }
+            if (digits == 0 || octet > 255) {
+                return -1;
+            }
+            value = (value << 8) | octet;
+            octets++;
+            if (pos == end) {
+                break;
+            }
+            // 跳过 .
+            pos++;
+        }
+        return octets == 4 && pos == end ? value : -1;
+    }
+
+    private static int bit(long[] address, int index) {
+        return index < 64
+                ? (int) ((address[0] >>> (63 - index)) & 1)
+                : (int) ((address[1] >>> (127 - index)) & 1);
+    }
+
+    private static class Node {
+
+        private final Node[] children = new Node[2];
+        private boolean terminal;
+
+    }
+
+}
@@ -16,9 +16,15 @@
 
 package idealworld.dew.framework.util;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.jackson.DatabindCodec;
+import lombok.SneakyThrows;
 
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JSON辅助类.
@@ -27,6 +33,8 @@ import io.vertx.core.json.JsonObject;
  */
 public class JsonHelper {
 
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
     public static JsonObject appendBuffer(JsonObject json, String key, Buffer value) {
         if (value.length() == 0) {
             return json.put(key, null);
@@ -47,4 +55,44 @@ public class JsonHelper {
         return json.put(key, value.toString("utf-8"));
     }
 
+    /**
+     * 将对象直接序列化到Buffer.
+     * <p>
+     * 按对象类型缓存 {@link ObjectWriter}，由Jackson生成器直接写入Buffer，
+     * 避免 {@link JsonObject#mapFrom(Object)} 先转换成Map再编码的中间对象。
+     *
+     * @param value 对象，可以是POJO、List、Map及Page等
+     * @return 序列化后的Buffer
+     */
+    @SneakyThrows
+    public static Buffer toBuffer(Object value) {
+        if (value == null) {
+            return Buffer.buffer("null");
+        }
+        var writer = WRITERS.computeIfAbsent(value.getClass(), clazz -> DatabindCodec.mapper().writerFor(clazz));
+        var buffer = Buffer.buffer(256);
+        writer.writeValue(new BufferOutputStream(buffer), value);
+        return buffer;
+    }
+
+    private static class BufferOutputStream extends OutputStream {
+
+        private final Buffer buffer;
+
+        BufferOutputStream(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.appendByte((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.appendBytes(b, off, len);
+        }
+
+    }
+
 }
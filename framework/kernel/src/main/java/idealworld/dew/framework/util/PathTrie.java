@@ -0,0 +1,437 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 路径匹配前缀树.
+ * <p>
+ * 按 / 分段预编译路径模式，支持字面量、{var}、* 及 ** 节点，字面量忽略大小写。
+ * 匹配时按 字面量 > 变量(*) > ** 的优先级深度优先查找，返回最具体的模式；
+ * 匹配过程只在线程内复用的数组中记录变量在请求路径中的位置，命中后才复制并在获取时生成变量Map，
+ * 没有变量的模式直接返回预先生成的匹配结果，匹配过程不分配对象。
+ * <p>
+ * 含有部分通配的分段（如 *.html、app{id}）无法编译到树中，此类模式退化为 {@link AntPathMatcher} 匹配。
+ * <p>
+ * 写操作加锁并以写时复制方式替换子节点，读操作无锁。
+ *
+ * @author gudaoxuri
+ * @param <V> 路由值类型
+ */
+public class PathTrie<V> {
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+    private static final String SEPARATOR = "/";
+    private static final String ANY_PATH = "**";
+    private static final String ANY_SEGMENT = "*";
+    private static final int[] EMPTY_CAPTURES = new int[0];
+    private static final ThreadLocal<int[][]> CAPTURES = ThreadLocal.withInitial(() -> new int[][]{EMPTY_CAPTURES});
+
+    private final Node<V> root = new Node<>();
+    private volatile List<Route<V>> fallbackRoutes = new ArrayList<>();
+    private volatile int maxVariables = 0;
+
+    public synchronized void put(String pattern, V value) {
+        var segments = tokenize(pattern);
+        if (segments.stream().anyMatch(PathTrie::isComplexSegment)) {
+            var routes = new ArrayList<>(fallbackRoutes);
+            routes.removeIf(route -> route.pattern.equals(pattern));
+            routes.add(new Route<>(pattern, value, new String[0]));
+            fallbackRoutes = routes;
+            return;
+        }
+        var variableNames = new ArrayList<String>();
+        for (var segment : segments) {
+            if (segment.equals(ANY_SEGMENT)) {
+                variableNames.add(null);
+            } else if (isVariableSegment(segment)) {
+                variableNames.add(segment.substring(1, segment.length() - 1));
+            }
+        }
+        // 先扩大变量位置数组，保证并发匹配时不会越界
+        maxVariables = Math.max(maxVariables, variableNames.size());
+        var node = root;
+        for (var segment : segments) {
+            if (segment.equals(ANY_PATH)) {
+                if (node.anyPathNode == null) {
+                    node.anyPathNode = new Node<>();
+                }
+                node = node.anyPathNode;
+            } else if (segment.equals(ANY_SEGMENT) || isVariableSegment(segment)) {
+                if (node.variableNode == null) {
+                    node.variableNode = new Node<>();
+                }
+                node = node.variableNode;
+            } else {
+                node = node.addLiteral(segment);
+            }
+        }
+        node.route = new Route<>(pattern, value, variableNames.toArray(new String[0]));
+    }
+
+    public synchronized void remove(String pattern) {
+        var segments = tokenize(pattern);
+        if (segments.stream().anyMatch(PathTrie::isComplexSegment)) {
+            var routes = new ArrayList<>(fallbackRoutes);
+            routes.removeIf(route -> route.pattern.equals(pattern));
+            fallbackRoutes = routes;
+            return;
+        }
+        var node = root;
+        for (var segment : segments) {
+            if (segment.equals(ANY_PATH)) {
+                node = node.anyPathNode;
+            } else if (segment.equals(ANY_SEGMENT) || isVariableSegment(segment)) {
+                node = node.variableNode;
+            } else {
+                node = node.findLiteral(segment, 0, segment.length(), literalHash(segment, 0, segment.length()));
+            }
+            if (node == null) {
+                return;
+            }
+        }
+        if (node.route != null && node.route.pattern.equals(pattern)) {
+            node.route = null;
+        }
+    }
+
+    /**
+     * 查找与请求路径最匹配的模式.
+     *
+     * @param path 请求路径
+     * @return 匹配结果，不存在时返回null
+     */
+    public Matched<V> match(String path) {
+        var captures = captures();
+        var route = doMatch(root, path, 0, captures, 0);
+        Matched<V> matched = null;
+        if (route != null) {
+            matched = route.variableNames.length == 0
+                    ? route.matched
+                    : new Matched<>(route, path, Arrays.copyOf(captures, route.variableNames.length * 2));
+        }
+        var routes = fallbackRoutes;
+        if (routes.isEmpty()) {
+            return matched;
+        }
+        // 存在无法编译的模式时与前缀树的结果一起按具体程度比较
+        var lowerPath = path.toLowerCase();
+        var comparator = PATH_MATCHER.getPatternComparator(lowerPath);
+        var fallbackRoute = routes.stream()
+                .filter(r -> PATH_MATCHER.match(r.pattern.toLowerCase(), lowerPath))
+                .min((r1, r2) -> comparator.compare(r1.pattern.toLowerCase(), r2.pattern.toLowerCase()));
+        if (fallbackRoute.isEmpty()
+                || matched != null && comparator.compare(route.pattern.toLowerCase(), fallbackRoute.get().pattern.toLowerCase()) <= 0) {
+            return matched;
+        }
+        matched = new Matched<>(fallbackRoute.get(), path, EMPTY_CAPTURES);
+        matched.variables = PATH_MATCHER.extractUriTemplateVariables(fallbackRoute.get().pattern, path);
+        return matched;
+    }
+
+    /**
+     * 查找与请求路径匹配的所有模式.
+     *
+     * @param path 请求路径
+     * @return 匹配的模式对应的值，按具体程度排序，最具体的在前
+     */
+    public List<V> matchAll(String path) {
+        var routes = new ArrayList<Route<V>>();
+        doMatchAll(root, path, 0, routes);
+        var currentFallbackRoutes = fallbackRoutes;
+        if (!currentFallbackRoutes.isEmpty()) {
+            var lowerPath = path.toLowerCase();
+            for (var route : currentFallbackRoutes) {
+                if (PATH_MATCHER.match(route.pattern.toLowerCase(), lowerPath)) {
+                    routes.add(route);
+                }
+            }
+        }
+        if (routes.size() > 1) {
+            var comparator = PATH_MATCHER.getPatternComparator(path.toLowerCase());
+            routes.sort((r1, r2) -> comparator.compare(r1.pattern.toLowerCase(), r2.pattern.toLowerCase()));
+        }
+        var values = new ArrayList<V>(routes.size());
+        for (var route : routes) {
+            values.add(route.value);
+        }
+        return values;
+    }
+
+    private int[] captures() {
+        var holder = CAPTURES.get();
+        var size = maxVariables * 2;
+        if (holder[0].length < size) {
+            holder[0] = new int[size];
+        }
+        return holder[0];
+    }
+
+    private Route<V> doMatch(Node<V> node, String path, int pos, int[] captures, int captureIdx) {
+        var start = pos;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        if (start >= path.length()) {
+            if (node.route != null) {
+                return node.route;
+            }
+            // ** 可匹配零个分段
+            return node.anyPathNode != null ? doMatch(node.anyPathNode, path, start, captures, captureIdx) : null;
+        }
+        var end = path.indexOf('/', start);
+        if (end == -1) {
+            end = path.length();
+        }
+        var literalNode = node.findLiteral(path, start, end, literalHash(path, start, end));
+        if (literalNode != null) {
+            var route = doMatch(literalNode, path, end, captures, captureIdx);
+            if (route != null) {
+                return route;
+            }
+        }
+        if (node.variableNode != null) {
+            captures[captureIdx * 2] = start;
+            captures[captureIdx * 2 + 1] = end;
+            var route = doMatch(node.variableNode, path, end, captures, captureIdx + 1);
+            if (route != null) {
+                return route;
+            }
+        }
+        if (node.anyPathNode != null) {
+            // 从零个分段开始逐个扩展 ** 覆盖的范围
+            var anyPathEnd = pos;
+            while (true) {
+                var route = doMatch(node.anyPathNode, path, anyPathEnd, captures, captureIdx);
+                if (route != null) {
+                    return route;
+                }
+                if (anyPathEnd >= path.length()) {
+                    return null;
+                }
+                var segmentStart = anyPathEnd;
+                while (segmentStart < path.length() && path.charAt(segmentStart) == '/') {
+                    segmentStart++;
+                }
+                if (segmentStart >= path.length()) {
+                    return null;
+                }
+                anyPathEnd = path.indexOf('/', segmentStart);
+                if (anyPathEnd == -1) {
+                    anyPathEnd = path.length();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void doMatchAll(Node<V> node, String path, int pos, List<Route<V>> routes) {
+        var start = pos;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        if (start >= path.length()) {
+            if (node.route != null && !routes.contains(node.route)) {
+                // ** 可经由不同的分段到达同一模式
+                routes.add(node.route);
+            }
+            if (node.anyPathNode != null) {
+                doMatchAll(node.anyPathNode, path, start, routes);
+            }
+            return;
+        }
+        var end = path.indexOf('/', start);
+        if (end == -1) {
+            end = path.length();
+        }
+        var literalNode = node.findLiteral(path, start, end, literalHash(path, start, end));
+        if (literalNode != null) {
+            doMatchAll(literalNode, path, end, routes);
+        }
+        if (node.variableNode != null) {
+            doMatchAll(node.variableNode, path, end, routes);
+        }
+        if (node.anyPathNode != null) {
+            var anyPathEnd = pos;
+            while (true) {
+                doMatchAll(node.anyPathNode, path, anyPathEnd, routes);
+                var segmentStart = anyPathEnd;
+                while (segmentStart < path.length() && path.charAt(segmentStart) == '/') {
+                    segmentStart++;
+                }
+                if (segmentStart >= path.length()) {
+                    return;
+                }
+                anyPathEnd = path.indexOf('/', segmentStart);
+                if (anyPathEnd == -1) {
+                    anyPathEnd = path.length();
+                }
+            }
+        }
+    }
+
+    private static List<String> tokenize(String pattern) {
+        var segments = new ArrayList<String>();
+        for (var segment : pattern.split(SEPARATOR)) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private static boolean isVariableSegment(String segment) {
+        return segment.length() > 2
+                && segment.charAt(0) == '{'
+                && segment.charAt(segment.length() - 1) == '}'
+                && segment.indexOf('{', 1) == -1
+                && segment.indexOf(':') == -1;
+    }
+
+    private static boolean isComplexSegment(String segment) {
+        if (segment.equals(ANY_PATH) || segment.equals(ANY_SEGMENT) || isVariableSegment(segment)) {
+            return false;
+        }
+        return segment.indexOf('*') != -1 || segment.indexOf('?') != -1 || segment.indexOf('{') != -1;
+    }
+
+    private static int literalHash(String str, int start, int end) {
+        var hash = 0;
+        for (var i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(str.charAt(i));
+        }
+        return hash;
+    }
+
+    private static class Node<V> {
+
+        @SuppressWarnings("unchecked")
+        private volatile Literal<V>[] literals = new Literal[0];
+        private volatile Node<V> variableNode;
+        private volatile Node<V> anyPathNode;
+        private volatile Route<V> route;
+
+        Node<V> findLiteral(String str, int start, int end, int hash) {
+            var len = end - start;
+            for (var literal : literals) {
+                if (literal.hash == hash
+                        && literal.key.length() == len
+                        && str.regionMatches(true, start, literal.key, 0, len)) {
+                    return literal.node;
+                }
+            }
+            return null;
+        }
+
+        Node<V> addLiteral(String segment) {
+            var hash = literalHash(segment, 0, segment.length());
+            var node = findLiteral(segment, 0, segment.length(), hash);
+            if (node != null) {
+                return node;
+            }
+            node = new Node<>();
+            var current = literals;
+            @SuppressWarnings("unchecked")
+            Literal<V>[] newLiterals = new Literal[current.length + 1];
+            System.arraycopy(current, 0, newLiterals, 0, current.length);
+            newLiterals[current.length] = new Literal<>(segment, hash, node);
+            literals = newLiterals;
+            return node;
+        }
+
+    }
+
+    private static class Literal<V> {
+
+        private final String key;
+        private final int hash;
+        private final Node<V> node;
+
+        Literal(String key, int hash, Node<V> node) {
+            this.key = key;
+            this.hash = hash;
+            this.node = node;
+        }
+
+    }
+
+    private static class Route<V> {
+
+        private final String pattern;
+        private final V value;
+        private final String[] variableNames;
+        // 没有变量时共用的匹配结果
+        private final Matched<V> matched;
+
+        Route(String pattern, V value, String[] variableNames) {
+            this.pattern = pattern;
+            this.value = value;
+            this.variableNames = variableNames;
+            this.matched = variableNames.length == 0 ? new Matched<>(this, null, EMPTY_CAPTURES) : null;
+        }
+
+    }
+
+    /**
+     * 匹配结果.
+     *
+     * @param <V> 路由值类型
+     */
+    public static class Matched<V> {
+
+        private final Route<V> route;
+        private final String path;
+        private final int[] captures;
+        private Map<String, String> variables;
+
+        Matched(Route<V> route, String path, int[] captures) {
+            this.route = route;
+            this.path = path;
+            this.captures = captures;
+        }
+
+        public V getValue() {
+            return route.value;
+        }
+
+        public String getPattern() {
+            return route.pattern;
+        }
+
+        public Map<String, String> getVariables() {
+            if (variables == null && route.variableNames.length == 0) {
+                return Map.of();
+            }
+            if (variables == null) {
+                variables = new HashMap<>();
+                for (var i = 0; i < route.variableNames.length; i++) {
+                    if (route.variableNames[i] != null) {
+                        variables.put(route.variableNames[i], path.substring(captures[i * 2], captures[i * 2 + 1]));
+                    }
+                }
+            }
+            return variables;
+        }
+
+    }
+
+}
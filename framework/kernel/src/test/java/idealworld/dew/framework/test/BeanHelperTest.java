@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import com.ecfront.dew.common.$;
+import idealworld.dew.framework.domain.SafeEntity;
+import idealworld.dew.framework.dto.SafeResp;
+import idealworld.dew.framework.fun.test.DewTest;
+import idealworld.dew.framework.util.BeanHelper;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Bean辅助类测试.
+ *
+ * @author gudaoxuri
+ */
+public class BeanHelperTest extends DewTest {
+
+    @Test
+    public void testCopyProperties(Vertx vertx, VertxTestContext testContext) {
+        var entity = entity();
+        var resp = BeanHelper.copyProperties(entity, AccountResp.class);
+        Assertions.assertEquals(10L, resp.getId());
+        Assertions.assertEquals("孤岛旭日", resp.getName());
+        Assertions.assertEquals(1, resp.getStatus());
+        // 为null的属性不覆盖默认值
+        Assertions.assertEquals("", resp.getOpenId());
+        Assertions.assertNull(BeanHelper.copyProperties(null, AccountResp.class));
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testCompatibility(Vertx vertx, VertxTestContext testContext) {
+        // 继承的属性及集合属性
+        var entity = entity();
+        var resp = BeanHelper.copyProperties(entity, AccountResp.class);
+        Assertions.assertEquals($.bean.copyProperties(entity, AccountResp.class), resp);
+        Assertions.assertEquals(10L, resp.getId());
+        Assertions.assertEquals(List.of("a", "b"), resp.getTags());
+        // 值为null的属性
+        var emptyEntity = new Account();
+        var emptyResp = BeanHelper.copyProperties(emptyEntity, AccountResp.class);
+        Assertions.assertEquals($.bean.copyProperties(emptyEntity, AccountResp.class), emptyResp);
+        Assertions.assertNull(emptyResp.getId());
+        Assertions.assertNull(emptyResp.getTags());
+        Assertions.assertEquals("", emptyResp.getOpenId());
+        testContext.completeNow();
+    }
+
+    private static Account entity() {
+        var entity = Account.builder()
+                .name("孤岛旭日")
+                .avatar("https://dew.idealworld.group/avatar.png")
+                .status(1)
+                .parameters("{}")
+                .tags(List.of("a", "b"))
+                .build();
+        entity.setId(10L);
+        entity.setCreateUser(1L);
+        entity.setUpdateUser(1L);
+        entity.setCreateTime(LocalDateTime.now());
+        entity.setUpdateTime(LocalDateTime.now());
+        return entity;
+    }
+
+    @EqualsAndHashCode(callSuper = true)
+    @Data
+    @SuperBuilder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Account extends SafeEntity {
+
+        private String name;
+        private String avatar;
+        private String openId;
+        private Integer status;
+        private String parameters;
+        private List<String> tags;
+
+    }
+
+    @EqualsAndHashCode(callSuper = true)
+    @Data
+    @SuperBuilder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AccountResp extends SafeResp {
+
+        private String name;
+        private String avatar;
+        @Builder.Default
+        private String openId = "";
+        private Integer status;
+        private String parameters;
+        private List<String> tags;
+
+    }
+
+}
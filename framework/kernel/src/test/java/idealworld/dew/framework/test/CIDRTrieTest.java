@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import idealworld.dew.framework.fun.test.DewTest;
+import idealworld.dew.framework.util.CIDRTrie;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * IP网段前缀树测试.
+ *
+ * @author gudaoxuri
+ */
+public class CIDRTrieTest extends DewTest {
+
+    @Test
+    public void testContains(Vertx vertx, VertxTestContext testContext) {
+        var cidrTrie = new CIDRTrie();
+        Assertions.assertTrue(cidrTrie.isEmpty());
+        Assertions.assertFalse(cidrTrie.contains("10.0.0.1"));
+
+        cidrTrie.add("10.0.0.0/8");
+        cidrTrie.add("192.168.1.1");
+        cidrTrie.add("2001:db8::/32");
+        cidrTrie.add("::1");
+        Assertions.assertFalse(cidrTrie.isEmpty());
+        Assertions.assertTrue(cidrTrie.contains("10.1.2.3"));
+        Assertions.assertFalse(cidrTrie.contains("11.0.0.1"));
+        Assertions.assertTrue(cidrTrie.contains("192.168.1.1"));
+        Assertions.assertFalse(cidrTrie.contains("192.168.1.2"));
+        Assertions.assertTrue(cidrTrie.contains("2001:db8:1::5"));
+        Assertions.assertFalse(cidrTrie.contains("2001:db9::5"));
+        Assertions.assertTrue(cidrTrie.contains("0:0:0:0:0:0:0:1"));
+        Assertions.assertTrue(cidrTrie.contains("[::1]"));
+        // IPv4映射地址
+        Assertions.assertTrue(cidrTrie.contains("::ffff:10.0.0.1"));
+        // 格式错误
+        Assertions.assertFalse(cidrTrie.contains("localhost"));
+        Assertions.assertFalse(cidrTrie.contains("10.0.0"));
+        Assertions.assertFalse(cidrTrie.contains("10.0.0.256"));
+        Assertions.assertFalse(cidrTrie.contains("2001:db8::1::2"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cidrTrie.add("10.0.0.0/33"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cidrTrie.add("10.0.0.x"));
+
+        // 包含更长的网段
+        var shortPrefixTrie = new CIDRTrie();
+        shortPrefixTrie.add("10.1.0.0/16");
+        shortPrefixTrie.add("10.0.0.0/8");
+        Assertions.assertTrue(shortPrefixTrie.contains("10.2.0.1"));
+
+        var address = new long[2];
+        Assertions.assertTrue(CIDRTrie.parse("1:2:3:4:5::", address));
+        Assertions.assertEquals(0x0001000200030004L, address[0]);
+        Assertions.assertEquals(0x0005000000000000L, address[1]);
+        testContext.completeNow();
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.IdentOptInfo;
+import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.eventbus.EventBusEnvelope;
+import idealworld.dew.framework.fun.eventbus.EventBusEnvelopeCodec;
+import idealworld.dew.framework.fun.test.DewTest;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.junit5.VertxTestContext;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 事件总线请求信封编解码测试.
+ *
+ * @author gudaoxuri
+ */
+public class EventBusEnvelopeCodecTest extends DewTest {
+
+    @Test
+    public void testCodec(Vertx vertx, VertxTestContext testContext) {
+        var codec = new EventBusEnvelopeCodec();
+        var envelope = EventBusEnvelope.builder()
+                .actionKind(OptActionKind.MODIFY)
+                .uri("http://iam.http.iam/app/n1/k1/enabled?q=测试")
+                .identOptInfo(IdentOptExchangeInfo.builder()
+                        .accountCode("a01")
+                        .appId(1L)
+                        .tenantId(2L)
+                        .roleInfo(new HashSet<>() {
+                            {
+                                add(IdentOptInfo.RoleInfo.builder().id(10L).defCode("admin").name("管理员").build());
+                            }
+                        })
+                        .unauthorizedAppCode("app01")
+                        .build())
+                .header(new HashMap<>() {
+                    {
+                        put("App-Id", "xxxx");
+                    }
+                })
+                .body(Buffer.buffer("孤岛旭日"))
+                .build();
+        Assertions.assertSame(envelope, codec.transform(envelope));
+
+        var buffer = Buffer.buffer("prefix");
+        codec.encodeToWire(buffer, envelope);
+        var decoded = codec.decodeFromWire("prefix".length(), buffer);
+        Assertions.assertEquals(OptActionKind.MODIFY, decoded.getActionKind());
+        Assertions.assertEquals(envelope.getUri(), decoded.getUri());
+        Assertions.assertEquals(envelope.getIdentOptInfo(), decoded.getIdentOptInfo());
+        Assertions.assertNull(decoded.getIdentOptInfo().getAccountId());
+        Assertions.assertEquals("xxxx", decoded.getHeader().get("App-Id"));
+        Assertions.assertEquals("孤岛旭日", decoded.getBody().toString("utf-8"));
+
+        buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, EventBusEnvelope.builder().actionKind(OptActionKind.FETCH).uri("/app").build());
+        decoded = codec.decodeFromWire(0, buffer);
+        Assertions.assertNull(decoded.getIdentOptInfo());
+        Assertions.assertNull(decoded.getBody());
+        Assertions.assertTrue(decoded.getHeader().isEmpty());
+        testContext.completeNow();
+    }
+
+    @SneakyThrows
+    @Test
+    public void testIdentOptInfoFields(Vertx vertx, VertxTestContext testContext) {
+        // 为身份信息的每个字段赋值，新增字段未在编解码中处理时此测试失败
+        var identOptInfo = new IdentOptExchangeInfo();
+        var fields = fields(IdentOptExchangeInfo.class);
+        for (var i = 0; i < fields.size(); i++) {
+            fields.get(i).set(identOptInfo, sample(fields.get(i), i));
+        }
+        var codec = new EventBusEnvelopeCodec();
+        var buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, EventBusEnvelope.builder()
+                .actionKind(OptActionKind.FETCH)
+                .uri("/app")
+                .identOptInfo(identOptInfo)
+                .build());
+        var decoded = codec.decodeFromWire(0, buffer).getIdentOptInfo();
+        for (var field : fields) {
+            Assertions.assertEquals(field.get(identOptInfo), field.get(decoded), "Field [" + field.getName() + "] not encoded");
+        }
+        testContext.completeNow();
+    }
+
+    private static List<Field> fields(Class<?> clazz) {
+        var fields = new ArrayList<Field>();
+        while (clazz != null && clazz != Object.class) {
+            for (var field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+        return fields;
+    }
+
+    @SneakyThrows
+    private static Object sample(Field field, int index) {
+        if (field.getType() == String.class) {
+            return field.getName() + index;
+        }
+        if (field.getType() == Long.class) {
+            return 100L + index;
+        }
+        if (field.getType() == Set.class) {
+            var itemClass = (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+            var item = itemClass.getDeclaredConstructor().newInstance();
+            var itemFields = fields(itemClass);
+            for (var i = 0; i < itemFields.size(); i++) {
+                itemFields.get(i).set(item, sample(itemFields.get(i), i));
+            }
+            return new HashSet<>(Set.of(item));
+        }
+        throw new IllegalStateException("Unsupported field [" + field.getName() + "] of type " + field.getType().getName());
+    }
+
+}
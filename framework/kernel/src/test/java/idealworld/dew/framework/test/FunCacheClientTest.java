@@ -30,6 +30,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -235,6 +236,14 @@ public class FunCacheClientTest extends DewTest {
                     Assertions.assertEquals("风雨逐梦", resp.get("字段3"));
                     return Future.succeededFuture();
                 })
+                // 批量获取
+                .compose(resp -> funCacheClient.hgetall(List.of("a:b", "a:none")))
+                .compose(resp -> {
+                    Assertions.assertEquals(2, resp.size());
+                    Assertions.assertEquals("孤岛旭日", resp.get(0).get("f1"));
+                    Assertions.assertTrue(resp.get(1).isEmpty());
+                    return Future.succeededFuture();
+                })
                 .compose(resp -> funCacheClient.hexists("a:b", "f1"))
                 .compose(resp -> {
                     Assertions.assertEquals(true, resp);
@@ -18,14 +18,24 @@ package idealworld.dew.framework.test;
 
 import com.ecfront.dew.common.Resp;
 import com.ecfront.dew.common.exception.RTException;
+import com.ecfront.dew.common.tuple.Tuple2;
 import idealworld.dew.framework.DewConfig;
+import idealworld.dew.framework.DewConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.exception.BadRequestException;
+import idealworld.dew.framework.fun.eventbus.EventBusContext;
 import idealworld.dew.framework.fun.eventbus.EventBusDispatcher;
 import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.fun.eventbus.ProcessContext;
 import idealworld.dew.framework.fun.test.DewTest;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxTestContext;
 import lombok.*;
@@ -38,6 +48,7 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -50,7 +61,9 @@ public class FunEventBusTest extends DewTest {
 
     @BeforeAll
     public static void before(Vertx vertx, VertxTestContext testContext) {
-        FunEventBus.init("", vertx, DewConfig.FunConfig.EventBusConfig.builder().build());
+        FunEventBus.init("", vertx, DewConfig.FunConfig.EventBusConfig.builder()
+                .localFirst(true)
+                .build());
         testContext.completeNow();
     }
 
@@ -107,6 +120,267 @@ public class FunEventBusTest extends DewTest {
         testContext.completeNow();
     }
 
+    @SneakyThrows
+    @Test
+    public void testLocalRequest(Vertx vertx, VertxTestContext testContext) {
+        var identOptInfo = IdentOptExchangeInfo.builder().appId(1L).build();
+        FunEventBus.choose("").localConsumer("local", envelope -> {
+            Assertions.assertSame(identOptInfo, envelope.getIdentOptInfo());
+            Assertions.assertEquals("/app/n1", envelope.getHeader().get(DewConstant.REQUEST_RESOURCE_URI_FLAG));
+            if (envelope.getActionKind() == OptActionKind.DELETE) {
+                return Future.failedFuture(new BadRequestException("不能删除"));
+            }
+            return Future.succeededFuture(envelope.getBody().toString(StandardCharsets.UTF_8));
+        });
+        var count = new CountDownLatch(2);
+        var header = new HashMap<String, String>();
+        FunEventBus.choose("").request("local", OptActionKind.FETCH, "/app/n1", Buffer.buffer("孤岛旭日"), header, identOptInfo, null)
+                .onSuccess(resp -> {
+                    Assertions.assertEquals("孤岛旭日", resp._0.toString(StandardCharsets.UTF_8));
+                    // 不修改发送方的请求头
+                    Assertions.assertTrue(header.isEmpty());
+                    count.countDown();
+                });
+        FunEventBus.choose("").request("local", OptActionKind.DELETE, "/app/n1", null, null, identOptInfo, null)
+                .onFailure(e -> {
+                    Assertions.assertEquals(400, ((ReplyException) e).failureCode());
+                    Assertions.assertEquals("不能删除", e.getMessage());
+                    count.countDown();
+                });
+        count.await();
+        FunEventBus.removeLocalConsumer("local");
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testLocalRequestContext(Vertx vertx, VertxTestContext testContext) {
+        var eventBus = FunEventBus.choose("");
+        var context = vertx.getOrCreateContext();
+        context.runOnContext(v -> eventBus.localConsumer("context", envelope -> {
+            // 在注册处理函数的Verticle实例上下文中执行
+            Assertions.assertSame(context, Vertx.currentContext());
+            return Future.succeededFuture(new Tuple2<>("instance1", Map.of("Instance", "1")));
+        }));
+        vertx.setTimer(100, id -> eventBus.request("context", OptActionKind.FETCH, "/app", null, null)
+                .onSuccess(resp -> testContext.verify(() -> {
+                    Assertions.assertEquals("instance1", resp._0.toString(StandardCharsets.UTF_8));
+                    Assertions.assertEquals("1", resp._1.get("Instance"));
+                    eventBus.localConsumer("context", envelope -> Future.succeededFuture("instance2"));
+                    // 只移除指定实例的处理函数
+                    FunEventBus.removeLocalConsumer("context", context);
+                    eventBus.request("context", OptActionKind.FETCH, "/app", null, null)
+                            .onSuccess(otherResp -> testContext.verify(() -> {
+                                Assertions.assertEquals("instance2", otherResp._0.toString(StandardCharsets.UTF_8));
+                                FunEventBus.removeLocalConsumer("context");
+                                testContext.completeNow();
+                            }))
+                            .onFailure(testContext::failNow);
+                }))
+                .onFailure(testContext::failNow));
+    }
+
+    @Test
+    public void testLimiter(Vertx vertx, VertxTestContext testContext) {
+        FunEventBus.init("limit", vertx, DewConfig.FunConfig.EventBusConfig.builder()
+                .localFirst(true)
+                .maxInFlight(1)
+                .maxWaitQueueSize(1)
+                .build());
+        Promise<String> slowPromise = Promise.promise();
+        FunEventBus.choose("limit").localConsumer("slow", envelope -> slowPromise.future());
+        var eventBus = FunEventBus.choose("limit");
+        var first = eventBus.request("slow", OptActionKind.FETCH, "/slow", null, null);
+        var second = eventBus.request("slow", OptActionKind.FETCH, "/slow", null, null);
+        var third = eventBus.request("slow", OptActionKind.FETCH, "/slow", null, null);
+        Assertions.assertEquals(1, eventBus.limiter("slow").getInFlight());
+        Assertions.assertEquals(1, eventBus.limiter("slow").getQueueSize());
+        Assertions.assertTrue(third.failed());
+        Assertions.assertEquals(503, ((ReplyException) third.cause()).failureCode());
+        slowPromise.complete("ok");
+        Assertions.assertEquals("ok", first.result()._0.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals("ok", second.result()._0.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals(0, eventBus.limiter("slow").getInFlight());
+        Assertions.assertEquals(0, eventBus.limiter("slow").getQueueSize());
+        FunEventBus.removeLocalConsumer("slow");
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testLimiterContext(Vertx vertx, VertxTestContext testContext) {
+        FunEventBus.init("limitContext", vertx, DewConfig.FunConfig.EventBusConfig.builder()
+                .localFirst(true)
+                .maxInFlight(1)
+                .maxWaitQueueSize(1)
+                .build());
+        Promise<String> slowPromise = Promise.promise();
+        FunEventBus.choose("limitContext").localConsumer("slowContext", envelope -> slowPromise.future());
+        var eventBus = FunEventBus.choose("limitContext");
+        eventBus.request("slowContext", OptActionKind.FETCH, "/slow", null, null);
+        var context = vertx.getOrCreateContext();
+        context.runOnContext(v -> eventBus.request("slowContext", OptActionKind.FETCH, "/slow", null, null)
+                .onSuccess(resp -> testContext.verify(() -> {
+                    // 排队的请求在其发起时的上下文中执行及完成
+                    Assertions.assertSame(context, Vertx.currentContext());
+                    Assertions.assertEquals("ok", resp._0.toString(StandardCharsets.UTF_8));
+                    FunEventBus.removeLocalConsumer("slowContext", null);
+                    testContext.completeNow();
+                }))
+                .onFailure(testContext::failNow));
+        vertx.setTimer(100, id -> slowPromise.complete("ok"));
+    }
+
+    @Test
+    public void testLimiterWaitTimeout(Vertx vertx, VertxTestContext testContext) {
+        FunEventBus.init("limitTimeout", vertx, DewConfig.FunConfig.EventBusConfig.builder()
+                .localFirst(true)
+                .maxInFlight(1)
+                .maxWaitQueueSize(1)
+                .build());
+        Promise<String> slowPromise = Promise.promise();
+        FunEventBus.choose("limitTimeout").localConsumer("slowTimeout", envelope -> slowPromise.future());
+        var eventBus = FunEventBus.choose("limitTimeout");
+        eventBus.request("slowTimeout", OptActionKind.FETCH, "/slow", null, null, 10000L);
+        // 在途请求未完成时排队的请求也按时失败
+        eventBus.request("slowTimeout", OptActionKind.FETCH, "/slow", null, null, 100L)
+                .onSuccess(resp -> testContext.failNow(new AssertionError("Request should be timeout")))
+                .onFailure(e -> testContext.verify(() -> {
+                    Assertions.assertEquals(ReplyFailure.TIMEOUT, ((ReplyException) e).failureType());
+                    Assertions.assertEquals(1, eventBus.limiter("slowTimeout").getInFlight());
+                    Assertions.assertEquals(0, eventBus.limiter("slowTimeout").getQueueSize());
+                    slowPromise.complete("ok");
+                    Assertions.assertEquals(0, eventBus.limiter("slowTimeout").getInFlight());
+                    // 处理函数不在Verticle中注册
+                    FunEventBus.removeLocalConsumer("slowTimeout", null);
+                    testContext.completeNow();
+                }));
+    }
+
+    @Test
+    public void testCoalesce(Vertx vertx, VertxTestContext testContext) {
+        FunEventBus.init("coalesce", vertx, DewConfig.FunConfig.EventBusConfig.builder()
+                .localFirst(true)
+                .coalesceFetch(true)
+                .build());
+        var counter = new AtomicInteger();
+        Promise<String> fetchPromise = Promise.promise();
+        FunEventBus.choose("coalesce").localConsumer("fetch", envelope -> {
+            counter.incrementAndGet();
+            return envelope.getActionKind() == OptActionKind.FETCH ? fetchPromise.future() : Future.succeededFuture("modified");
+        });
+        var eventBus = FunEventBus.choose("coalesce");
+        var first = eventBus.request("fetch", OptActionKind.FETCH, "/app/n1", null, null);
+        var second = eventBus.request("fetch", OptActionKind.FETCH, "/app/n1", null, null);
+        var other = eventBus.request("fetch", OptActionKind.FETCH, "/app/n2", null, null);
+        var modify = eventBus.request("fetch", OptActionKind.MODIFY, "/app/n1", null, null);
+        Assertions.assertEquals(3, counter.get());
+        Assertions.assertEquals("modified", modify.result()._0.toString(StandardCharsets.UTF_8));
+        fetchPromise.complete("ok");
+        Assertions.assertEquals("ok", first.result()._0.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals("ok", second.result()._0.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals("ok", other.result()._0.toString(StandardCharsets.UTF_8));
+        // 请求完成后不再合并
+        eventBus.request("fetch", OptActionKind.FETCH, "/app/n1", null, null);
+        Assertions.assertEquals(4, counter.get());
+        FunEventBus.removeLocalConsumer("fetch");
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testRequestStream(Vertx vertx, VertxTestContext testContext) {
+        var eventBus = FunEventBus.choose("");
+        eventBus.localConsumer("stream", envelope -> {
+            if (!FunEventBus.isStreamRequest(envelope.getHeader())) {
+                return Future.succeededFuture("[1,2,3,4]");
+            }
+            return eventBus.sendChunk(envelope.getHeader(), Buffer.buffer("[1,2]"))
+                    .compose(v -> eventBus.sendChunk(envelope.getHeader(), Buffer.buffer("[3,4]")))
+                    .map(v -> "");
+        });
+        var chunks = new JsonArray();
+        eventBus.requestStream("stream", OptActionKind.FETCH, "/items", null, null, null, null, chunk -> {
+            chunks.addAll(chunk.toJsonArray());
+            return Future.succeededFuture();
+        })
+                .onSuccess(resp -> testContext.verify(() -> {
+                    Assertions.assertEquals(0, resp._0.length());
+                    Assertions.assertEquals(new JsonArray().add(1).add(2).add(3).add(4), chunks);
+                    eventBus.request("stream", OptActionKind.FETCH, "/items", null, null)
+                            .onSuccess(normalResp -> testContext.verify(() -> {
+                                Assertions.assertEquals("[1,2,3,4]", normalResp._0.toString(StandardCharsets.UTF_8));
+                                FunEventBus.removeLocalConsumer("stream", null);
+                                testContext.completeNow();
+                            }));
+                }))
+                .onFailure(testContext::failNow);
+    }
+
+    @Test
+    public void testRequestStreamTimeout(Vertx vertx, VertxTestContext testContext) {
+        FunEventBus.init("streamLimit", vertx, DewConfig.FunConfig.EventBusConfig.builder()
+                .localFirst(true)
+                .maxInFlight(1)
+                .build());
+        var eventBus = FunEventBus.choose("streamLimit");
+        eventBus.localConsumer("slowStream", envelope ->
+                eventBus.sendChunk(envelope.getHeader(), Buffer.buffer("[1]"))
+                        .compose(v -> delay(vertx, 150))
+                        .compose(v -> eventBus.sendChunk(envelope.getHeader(), Buffer.buffer("[2]")))
+                        .compose(v -> delay(vertx, 150))
+                        .map(v -> ""));
+        var chunks = new JsonArray();
+        // 超时时间为等待每个响应块的时间，而非整个传输过程
+        eventBus.requestStream("slowStream", OptActionKind.FETCH, "/items", null, null, null, 250L, chunk -> {
+            chunks.addAll(chunk.toJsonArray());
+            // 开始传输后不再占用在途请求数
+            Assertions.assertEquals(0, eventBus.limiter("slowStream").getInFlight());
+            return Future.succeededFuture();
+        })
+                .onSuccess(resp -> testContext.verify(() -> {
+                    Assertions.assertEquals(new JsonArray().add(1).add(2), chunks);
+                    eventBus.requestStream("slowStream", OptActionKind.FETCH, "/items", null, null, null, 100L, chunk -> Future.succeededFuture())
+                            .onSuccess(r -> testContext.failNow(new AssertionError("Request should be timeout")))
+                            .onFailure(e -> testContext.verify(() -> {
+                                Assertions.assertEquals(ReplyFailure.TIMEOUT, ((ReplyException) e).failureType());
+                                Assertions.assertEquals(0, eventBus.limiter("slowStream").getInFlight());
+                                FunEventBus.removeLocalConsumer("slowStream", null);
+                                testContext.completeNow();
+                            }));
+                }))
+                .onFailure(testContext::failNow);
+    }
+
+    private static Future<Void> delay(Vertx vertx, long delayMs) {
+        Promise<Void> promise = Promise.promise();
+        vertx.setTimer(delayMs, id -> promise.complete());
+        return promise.future();
+    }
+
+    @Test
+    public void testParseBody(Vertx vertx, VertxTestContext testContext) {
+        var user = EventBusContext.Request.builder()
+                .body(Buffer.buffer("{\"name\":\" 孤岛旭日 \",\"detail\":{\"addr\":\"  中国 \",\"age\":30}}"))
+                .build()
+                .body(User.class);
+        Assertions.assertEquals("孤岛旭日", user.getName());
+        Assertions.assertEquals("中国", user.getDetail().getAddr());
+        Assertions.assertThrows(BadRequestException.class, () -> EventBusContext.Request.builder()
+                .body(Buffer.buffer("{\"detail\":{\"addr\":\"中国\"}}"))
+                .build()
+                .body(User.class));
+        Assertions.assertThrows(BadRequestException.class, () -> EventBusContext.Request.builder()
+                .body(Buffer.buffer("[]"))
+                .build()
+                .body(User.class));
+        var detail = EventBusContext.Request.builder()
+                .body(Buffer.buffer("{\"addr\":\" 中国 \"}"))
+                .build()
+                .body(Tag.class);
+        Assertions.assertEquals("中国", detail.getAddr());
+        // 请求体以外的反序列化不受影响
+        Assertions.assertEquals(" 中国 ", Buffer.buffer("{\"addr\":\" 中国 \"}").toJsonObject().mapTo(Tag.class).getAddr());
+        testContext.completeNow();
+    }
+
     @Test
     public void testError(Vertx vertx, VertxTestContext testContext) {
         var count = new AtomicInteger();
@@ -165,4 +439,12 @@ public class FunEventBusTest extends DewTest {
 
     }
 
+    @Data
+    @NoArgsConstructor
+    public static class Tag {
+
+        private String addr;
+
+    }
+
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import com.ecfront.dew.common.Page;
+import idealworld.dew.framework.fun.test.DewTest;
+import idealworld.dew.framework.util.JsonHelper;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * JSON辅助类测试.
+ *
+ * @author gudaoxuri
+ */
+public class JsonHelperTest extends DewTest {
+
+    @Test
+    public void testToBuffer(Vertx vertx, VertxTestContext testContext) {
+        var item = Item.builder().id(1L).name("孤岛旭日").tags(List.of("a", "b")).build();
+        Assertions.assertEquals(JsonObject.mapFrom(item), JsonHelper.toBuffer(item).toJsonObject());
+
+        var items = items(10);
+        var array = new JsonArray();
+        items.forEach(i -> array.add(JsonObject.mapFrom(i)));
+        Assertions.assertEquals(array, JsonHelper.toBuffer(items).toJsonArray());
+
+        var page = new Page<Item>();
+        page.setPageNumber(1L);
+        page.setPageSize(10L);
+        page.setRecordTotal(10L);
+        page.setPageTotal(1L);
+        page.setObjects(items);
+        Assertions.assertEquals(JsonObject.mapFrom(page), JsonHelper.toBuffer(page).toJsonObject());
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testAllocation(Vertx vertx, VertxTestContext testContext) {
+        var items = items(100);
+        Supplier<Buffer> mapFromFun = () -> {
+            var array = new JsonArray();
+            items.forEach(i -> array.add(JsonObject.mapFrom(i)));
+            return array.toBuffer();
+        };
+        Supplier<Buffer> writerFun = () -> JsonHelper.toBuffer(items);
+        var mapFromBytes = allocatedBytesPerCall(mapFromFun);
+        var writerBytes = allocatedBytesPerCall(writerFun);
+        Assertions.assertTrue(writerBytes < mapFromBytes,
+                "Allocated bytes per reply of 100 items: mapFrom = " + mapFromBytes + ", writer = " + writerBytes);
+        testContext.completeNow();
+    }
+
+    private static long allocatedBytesPerCall(Supplier<Buffer> fun) {
+        var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().getId();
+        // 预热
+        for (var i = 0; i < 2000; i++) {
+            fun.get();
+        }
+        var times = 2000;
+        var start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (var i = 0; i < times; i++) {
+            fun.get();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - start) / times;
+    }
+
+    private static List<Item> items(int size) {
+        var items = new ArrayList<Item>();
+        for (var i = 0; i < size; i++) {
+            items.add(Item.builder().id((long) i).name("item" + i).tags(List.of("t" + i)).build());
+        }
+        return items;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        private Long id;
+        private String name;
+        private List<String> tags;
+
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.framework.test;
+
+import idealworld.dew.framework.fun.test.DewTest;
+import idealworld.dew.framework.util.PathTrie;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * 路径匹配前缀树测试.
+ *
+ * @author gudaoxuri
+ */
+public class PathTrieTest extends DewTest {
+
+    @Test
+    public void testMatch(Vertx vertx, VertxTestContext testContext) {
+        var pathTrie = new PathTrie<String>();
+        pathTrie.put("/app/{name}/**", "1");
+        pathTrie.put("/app/**", "2");
+        pathTrie.put("/app/{name}/{kind}/enabled", "3");
+        pathTrie.put("/app/{name}/{kind}/**", "4");
+        pathTrie.put("/app/{name}/list", "5");
+        pathTrie.put("/web/*.html", "6");
+
+        var matched = pathTrie.match("/app/n1/k1/enabled");
+        Assertions.assertEquals("/app/{name}/{kind}/enabled", matched.getPattern());
+        Assertions.assertEquals("n1", matched.getVariables().get("name"));
+        Assertions.assertEquals("k1", matched.getVariables().get("kind"));
+
+        matched = pathTrie.match("/APP/N1/K1/Enabled");
+        Assertions.assertEquals("3", matched.getValue());
+        Assertions.assertEquals("N1", matched.getVariables().get("name"));
+
+        Assertions.assertEquals("/app/{name}/{kind}/**", pathTrie.match("/app/n1/k1/disabled").getPattern());
+        Assertions.assertEquals("/app/{name}/{kind}/**", pathTrie.match("/app/n1/k1").getPattern());
+        Assertions.assertEquals("/app/{name}/list", pathTrie.match("/app/n1/list").getPattern());
+        Assertions.assertEquals("/app/{name}/**", pathTrie.match("/app/n1").getPattern());
+        Assertions.assertEquals("/app/**", pathTrie.match("/app").getPattern());
+        Assertions.assertNull(pathTrie.match("/app1"));
+        Assertions.assertEquals("/web/*.html", pathTrie.match("/web/index.html").getPattern());
+
+        pathTrie.remove("/app/{name}/list");
+        Assertions.assertEquals("/app/{name}/{kind}/**", pathTrie.match("/app/n1/list").getPattern());
+
+        pathTrie.put("/app/*", "7");
+        Assertions.assertEquals("/app/*", pathTrie.match("/app/n1").getPattern());
+        Assertions.assertTrue(pathTrie.match("/app/n1").getVariables().isEmpty());
+
+        // 没有变量的模式共用匹配结果
+        pathTrie.put("/static/list", "8");
+        Assertions.assertSame(pathTrie.match("/static/list"), pathTrie.match("/Static/List"));
+        Assertions.assertTrue(pathTrie.match("/static/list").getVariables().isEmpty());
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testMatchAll(Vertx vertx, VertxTestContext testContext) {
+        var pathTrie = new PathTrie<String>();
+        pathTrie.put("/console/**", "1");
+        pathTrie.put("/console/tenant/**", "2");
+        pathTrie.put("/console/tenant/account/*", "3");
+        pathTrie.put("/console/tenant/account/ident", "4");
+        pathTrie.put("/console/*/account/*.html", "5");
+
+        Assertions.assertEquals(List.of("4", "3", "2", "1"), pathTrie.matchAll("/console/tenant/account/ident"));
+        Assertions.assertEquals(List.of("3", "2", "1"), pathTrie.matchAll("/Console/Tenant/Account/1"));
+        Assertions.assertEquals(List.of("3", "5", "2", "1"), pathTrie.matchAll("/console/tenant/account/index.html"));
+        Assertions.assertEquals(List.of("2", "1"), pathTrie.matchAll("/console/tenant"));
+        Assertions.assertTrue(pathTrie.matchAll("/app").isEmpty());
+        testContext.completeNow();
+    }
+
+}
@@ -17,9 +17,11 @@
 package idealworld.dew.serviceless.cache.test;
 
 import com.ecfront.dew.common.tuple.Tuple2;
+import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.dto.OptActionKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceSubjectExchange;
+import idealworld.dew.framework.fun.auth.exchange.ExchangeHelper;
 import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.fun.test.DewTest;
 import idealworld.dew.serviceless.cache.CacheConstant;
@@ -70,7 +72,8 @@ public class CacheFlowTest extends DewTest {
         Assertions.assertEquals("找不到请求的资源主体[1.cache.cxxx]", request(OptActionKind.CREATE, "http://1.cache.cxxx/someKey", "someValue")._1.getMessage());
 
         // 添加资源主体
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resourcesubject.cache/cachexx",
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resourcesubject.cache"),
+                OptActionKind.CREATE, "eb://iam/resourcesubject.cache/cachexx",
                 JsonObject.mapFrom(ResourceSubjectExchange.builder()
                         .code("1.cache.cxxx")
                         .name("测试缓存")
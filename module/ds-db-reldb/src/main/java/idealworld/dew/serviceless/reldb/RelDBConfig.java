@@ -37,6 +37,9 @@ public class RelDBConfig {
     private Security security = new Security();
     @Builder.Default
     private ContextFlag contextFlag = new ContextFlag();
+    // 流式查询时每批获取的记录数
+    @Builder.Default
+    private Integer streamFetchSize = 200;
 
     @Data
     @Builder
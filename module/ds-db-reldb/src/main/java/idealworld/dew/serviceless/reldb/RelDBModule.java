@@ -39,7 +39,7 @@ public class RelDBModule extends DewModule<RelDBConfig> {
         var authPolicy = new RelDBAuthPolicy(getModuleName(),
                 config.getSecurity().getResourceCacheExpireSec(),
                 config.getSecurity().getGroupNodeLength());
-        new RelDBProcessor(authPolicy, getModuleName());
+        new RelDBProcessor(authPolicy, config.getStreamFetchSize(), getModuleName());
         return RelDBExchangeProcessor.init(getModuleName(), config, vertx);
     }
 
@@ -20,8 +20,6 @@ import idealworld.dew.framework.fun.auth.AuthenticationProcessor;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import io.vertx.core.Future;
-import io.vertx.core.Promise;
-import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.util.List;
@@ -32,7 +30,6 @@ import java.util.Map;
  *
  * @author gudaoxuri
  */
-@Slf4j
 public class RelDBAuthPolicy {
 
     public RelDBAuthPolicy(String moduleName, Integer resourceCacheExpireSec, Integer groupNodeLength) {
@@ -44,41 +41,12 @@ public class RelDBAuthPolicy {
             Map<String, List<URI>> resourceInfo,
             Map<AuthSubjectKind, List<String>> subjectInfo
     ) {
-        Promise<AuthResultKind> promise = Promise.promise();
         if (resourceInfo.isEmpty()) {
-            promise.complete(AuthResultKind.ACCEPT);
-            return promise.future();
+            return Future.succeededFuture(AuthResultKind.ACCEPT);
         }
-        authentication(moduleName, resourceInfo, subjectInfo, promise);
-        return promise.future();
+        // 所有操作类型的字段级资源一次性鉴权
+        return AuthenticationProcessor.authentication(moduleName, resourceInfo, subjectInfo);
     }
 
-    private void authentication(
-            String moduleName,
-            Map<String, List<URI>> resourceInfo,
-            Map<AuthSubjectKind, List<String>> subjectInfo,
-            Promise<AuthResultKind> promise
-    ) {
-        var currentProcessInfo = resourceInfo.entrySet().iterator().next();
-        AuthenticationProcessor.authentication(moduleName, currentProcessInfo.getKey(), currentProcessInfo.getValue(), subjectInfo)
-                .onSuccess(authResultKind -> {
-                    if (authResultKind == AuthResultKind.REJECT) {
-                        promise.complete(authResultKind);
-                        return;
-                    }
-                    resourceInfo.remove(currentProcessInfo.getKey());
-                    if (!resourceInfo.isEmpty()) {
-                        authentication(moduleName, resourceInfo, subjectInfo, promise);
-                        return;
-                    }
-                    promise.complete(authResultKind);
-                })
-                .onFailure(e -> {
-                    log.error("[Auth]Resource fetch error: {}", e.getMessage(), e.getCause());
-                    promise.complete(AuthResultKind.REJECT);
-                });
-    }
-
-
 }
 
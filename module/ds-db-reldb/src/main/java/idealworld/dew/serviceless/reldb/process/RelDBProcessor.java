@@ -16,16 +16,17 @@
 
 package idealworld.dew.serviceless.reldb.process;
 
-import com.ecfront.dew.common.$;
 import com.ecfront.dew.common.tuple.Tuple2;
 import idealworld.dew.framework.DewConstant;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.OptActionKind;
 import idealworld.dew.framework.exception.BadRequestException;
 import idealworld.dew.framework.exception.NotFoundException;
 import idealworld.dew.framework.exception.UnAuthorizedException;
 import idealworld.dew.framework.fun.auth.AuthenticationProcessor;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.eventbus.EventBusProcessor;
+import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.fun.eventbus.ProcessContext;
 import idealworld.dew.framework.fun.sql.FunSQLClient;
 import idealworld.dew.framework.util.URIHelper;
@@ -34,7 +35,7 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
 import lombok.extern.slf4j.Slf4j;
 
-import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -46,24 +47,38 @@ import java.util.stream.Collectors;
 public class RelDBProcessor extends EventBusProcessor {
 
     private static RelDBAuthPolicy authPolicy;
+    private static int streamFetchSize;
 
     {
         addProcessor("", eventBusContext ->
                 exec(
                         eventBusContext.req.header.get(DewConstant.REQUEST_RESOURCE_URI_FLAG),
-                        new JsonObject($.security.decodeBase64ToString(
-                                eventBusContext.req.header.get(DewConstant.REQUEST_IDENT_OPT_FLAG), StandardCharsets.UTF_8))
-                                .mapTo(IdentOptExchangeInfo.class),
+                        eventBusContext.req.header,
+                        eventBusContext.req.identOptInfo,
                         eventBusContext.req.body(String.class),
                         eventBusContext.context));
     }
 
-    public RelDBProcessor(RelDBAuthPolicy _authPolicy, String moduleName) {
+    public RelDBProcessor(RelDBAuthPolicy _authPolicy, int _streamFetchSize, String moduleName) {
         super(moduleName);
         authPolicy = _authPolicy;
+        streamFetchSize = _streamFetchSize;
     }
 
-    public static Future<Buffer> exec(String resourceUriWithoutPath, IdentOptExchangeInfo identOptCacheInfo, String strBody, ProcessContext context) {
+    /**
+     * 执行SQL.
+     * <p>
+     * 请求方接收流式响应且SQL均为查询时，以游标分批获取记录并逐块发送，每块为一个JSON数组，全部发送后回复空响应体.
+     *
+     * @param resourceUriWithoutPath 资源URI
+     * @param header                 请求头
+     * @param identOptCacheInfo      身份信息
+     * @param strBody                请求体
+     * @param context                处理上下文
+     * @return 查询结果
+     */
+    public static Future<Buffer> exec(String resourceUriWithoutPath, Map<String, String> header, IdentOptExchangeInfo identOptCacheInfo,
+                                      String strBody, ProcessContext context) {
         var resourceSubjectCode = URIHelper.newURI(resourceUriWithoutPath).getHost();
         if (!FunSQLClient.contains(resourceSubjectCode)) {
             throw context.helper.error(new NotFoundException("找不到请求的资源主体[" + resourceSubjectCode + "]"));
@@ -95,7 +110,14 @@ public class RelDBProcessor extends EventBusProcessor {
                     if (authResultKind == AuthResultKind.REJECT) {
                         context.helper.error(new UnAuthorizedException("鉴权错误，没有权限访问对应的资源"));
                     }
-                    return FunSQLClient.choose(resourceSubjectCode).rawExec(sql, sqlInfo.getJsonArray("parameters").getList())
+                    var parameters = sqlInfo.getJsonArray("parameters").getList();
+                    if (FunEventBus.isStreamRequest(header)
+                            && sqlAsts.stream().allMatch(sqlAst -> sqlAst.getActionKind() == OptActionKind.FETCH)) {
+                        return FunSQLClient.choose(resourceSubjectCode).rawStream(sql, parameters, streamFetchSize,
+                                chunk -> context.eb.sendChunk(header, chunk.toBuffer()))
+                                .compose(result -> context.helper.success(Buffer.buffer()));
+                    }
+                    return FunSQLClient.choose(resourceSubjectCode).rawExec(sql, parameters)
                             .compose(result -> context.helper.success(result.toBuffer()));
                 });
     }
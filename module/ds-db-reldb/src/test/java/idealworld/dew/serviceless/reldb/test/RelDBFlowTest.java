@@ -22,14 +22,18 @@ import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.DewConstant;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
 import idealworld.dew.framework.fun.auth.dto.*;
+import idealworld.dew.framework.fun.auth.exchange.ExchangeHelper;
 import idealworld.dew.framework.fun.cache.FunCacheClient;
 import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.fun.sql.FunSQLClient;
 import idealworld.dew.framework.fun.test.DewTest;
 import idealworld.dew.serviceless.reldb.RelDBModule;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxTestContext;
 import lombok.SneakyThrows;
@@ -93,7 +97,8 @@ public class RelDBFlowTest extends DewTest {
                 "\"parameters\":[]}", identOptCacheInfo)._1.getMessage());
 
         // 添加资源主体
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resourcesubject.reldb/subjectCodexx",
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resourcesubject.reldb"),
+                OptActionKind.CREATE, "eb://iam/resourcesubject.reldb/subjectCodexx",
                 JsonObject.mapFrom(ResourceSubjectExchange.builder()
                         .code("1.reldb.subjectCodexx")
                         .name("测试数据库")
@@ -131,21 +136,10 @@ public class RelDBFlowTest extends DewTest {
         Assertions.assertEquals("[{\"name\":\"孤岛旭日1\"}]", request("1.reldb.subjectCodexx", "{\"sql\":\"" + "select name from iam_account" + "\"," +
                 "\"parameters\":[]}", identOptCacheInfo)._0.toString("utf-8"));
 
-        await(FunCacheClient.choose(MODULE_NAME).set(DewConstant.CACHE_AUTH_POLICY + "reldb:1.reldb.subjectCodexx/iam_account/name:fetch",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.EQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.ACCOUNT.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("a02");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.reldb", JsonObject.mapFrom(ResourceExchange.builder()
+        await(FunCacheClient.choose(MODULE_NAME).hset(DewConstant.CACHE_AUTH_POLICY + "reldb:1.reldb.subjectCodexx/iam_account/name:fetch",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ACCOUNT, "a02"), ""));
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.reldb"),
+                OptActionKind.CREATE, "eb://iam/resource.reldb", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.FETCH.toString().toLowerCase())
                 .uri("reldb://1.reldb.subjectCodexx/iam_account/name")
                 .build()).toBuffer(), new HashMap<>());
@@ -155,7 +149,8 @@ public class RelDBFlowTest extends DewTest {
                 "\"parameters\":[]}", identOptCacheInfo)._1.getMessage());
 
         await(FunCacheClient.choose(MODULE_NAME).del(DewConstant.CACHE_AUTH_POLICY + "reldb:1.reldb.subjectCodexx/iam_account/name:fetch"));
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.DELETE, "eb://iam/resource.reldb", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.reldb"),
+                OptActionKind.DELETE, "eb://iam/resource.reldb", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.FETCH.toString().toLowerCase())
                 .uri("reldb://1.reldb.subjectCodexx/iam_account/name")
                 .build()).toBuffer(), new HashMap<>());
@@ -163,6 +158,23 @@ public class RelDBFlowTest extends DewTest {
 
         Assertions.assertEquals("[{\"name\":\"孤岛旭日1\"}]", request("1.reldb.subjectCodexx", "{\"sql\":\"" + "select name from iam_account" + "\"," +
                 "\"parameters\":[]}", identOptCacheInfo)._0.toString("utf-8"));
+
+        // 流式查询
+        var chunks = new JsonArray();
+        var streamResult = awaitRequest(FunEventBus.choose(MODULE_NAME)
+                .requestStream(MODULE_NAME,
+                        OptActionKind.FETCH,
+                        "reldb://1.reldb.subjectCodexx",
+                        Buffer.buffer("{\"sql\":\"select name from iam_account\",\"parameters\":[]}"),
+                        new HashMap<>(),
+                        identOptCacheInfo,
+                        null,
+                        chunk -> {
+                            chunks.addAll(chunk.toJsonArray());
+                            return Future.succeededFuture();
+                        }));
+        Assertions.assertEquals(0, streamResult._0.length());
+        Assertions.assertEquals("[{\"name\":\"孤岛旭日1\"}]", chunks.toString());
         testContext.completeNow();
     }
 
@@ -17,9 +17,11 @@
 package idealworld.dew.serviceless.http.test;
 
 import com.ecfront.dew.common.tuple.Tuple2;
+import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.dto.OptActionKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceSubjectExchange;
+import idealworld.dew.framework.fun.auth.exchange.ExchangeHelper;
 import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.fun.test.DewTest;
 import idealworld.dew.serviceless.http.HttpModule;
@@ -68,7 +70,8 @@ public class HttpFlowTest extends DewTest {
         Assertions.assertEquals("找不到请求的资源主体[1.http.httpbin]", request(OptActionKind.CREATE, "http://1.http.httpbin/post", "测试内容")._1.getMessage());
 
         // 添加资源主体
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resourcesubject.http/httpbin",
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resourcesubject.http"),
+                OptActionKind.CREATE, "eb://iam/resourcesubject.http/httpbin",
                 JsonObject.mapFrom(ResourceSubjectExchange.builder()
                         .code("1.http.httpbin")
                         .name("测试API")
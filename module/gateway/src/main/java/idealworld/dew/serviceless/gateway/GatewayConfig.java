@@ -16,11 +16,13 @@
 
 package idealworld.dew.serviceless.gateway;
 
+import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +43,8 @@ public class GatewayConfig {
     private Distribute distribute = new Distribute();
     @Builder.Default
     private Security security = new Security();
+    @Builder.Default
+    private RateLimit rateLimit = new RateLimit();
 
     @Data
     @Builder
@@ -51,7 +55,18 @@ public class GatewayConfig {
         @Builder.Default
         private String gatewayRequestPath = "/exec";
         @Builder.Default
+        private String gatewayBatchRequestPath = "/batch";
+        @Builder.Default
+        private Integer gatewayBatchMaxSize = 50;
+        // 请求头中带有此字段且值为true时以分块传输返回结果，目前仅关系型数据库查询支持
+        @Builder.Default
+        private String gatewayStreamFieldName = "Dew-Stream";
+        // 请求超时时间，流式请求时为等待每个响应块的超时时间
+        @Builder.Default
         private Long gatewayTimeoutMS = 10000L;
+        // 响应缓存的最大条数，为0时不缓存，资源的缓存时间在IAM中设置
+        @Builder.Default
+        private Integer responseCacheSize = 10000;
 
         @Builder.Default
         private String iamModuleName = "iam";
@@ -86,6 +101,9 @@ public class GatewayConfig {
         private String akSkDateFieldName = "Dew-Date";
         @Builder.Default
         private Integer tokenCacheExpireSec = 60;
+        // 本地缓存的Token会话的最大条数，Token移除后即时失效
+        @Builder.Default
+        private Integer tokenCacheSize = 10000;
         @Builder.Default
         private Integer akSkCacheExpireSec = 60;
         @Builder.Default
@@ -94,10 +112,65 @@ public class GatewayConfig {
         private Integer resourceCacheExpireSec = 60 * 60 * 24;
         @Builder.Default
         private Integer appRequestDateOffsetMs = 5000;
+        // IP黑名单，Key为IP或CIDR网段，另可在缓存中维护，见 DewAuthConstant.CACHE_GATEWAY_BLOCK_IPS
         @Builder.Default
         private Map<String, List<String>> blockIps = new LinkedHashMap<>();
+        // IP白名单，不为空时只允许名单内的IP或CIDR网段访问，另可在缓存中维护，见 DewAuthConstant.CACHE_GATEWAY_ALLOW_IPS
+        @Builder.Default
+        private List<String> allowIps = new ArrayList<>();
+        // 可信代理的IP或CIDR网段，只信任来自这些代理的请求头，并取转发链中最后一个非可信代理的IP，为空时忽略请求头中的客户端IP
+        @Builder.Default
+        private List<String> trustedProxies = new ArrayList<>();
         @Builder.Default
         private Integer groupNodeLength = 5;
+        // 鉴权结果缓存的最大条数，为0时不缓存
+        @Builder.Default
+        private Integer authDecisionCacheSize = 10000;
+        @Builder.Default
+        private Integer authDecisionCacheExpireSec = 60;
+        // 解析后的资源URI缓存的最大条数，为0时不缓存
+        @Builder.Default
+        private Integer resourceUriCacheSize = 10000;
+
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RateLimit {
+
+        // 限流规则，另可在缓存中维护，见 DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_RULES
+        @Builder.Default
+        private List<Rule> rules = new ArrayList<>();
+        // 是否启用集群限流，启用后各节点定期将请求数批量同步到缓存，按滑动窗口统计整个集群的请求数
+        @Builder.Default
+        private Boolean clusterEnabled = false;
+        @Builder.Default
+        private Integer clusterWindowSec = 10;
+        @Builder.Default
+        private Long clusterSyncIntervalMs = 500L;
+
+        @Data
+        @Builder
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class Rule {
+
+            // 规则编码，不同规则的计数相互独立
+            private String code;
+            // 限流维度，支持 TENANT、APP、ACCOUNT，未登录的请求不受 ACCOUNT 维度的规则限制
+            @Builder.Default
+            private AuthSubjectKind subjectKind = AuthSubjectKind.APP;
+            // 资源URI模式（Ant风格），为空时匹配所有请求，批量请求只受此类规则限制
+            private String resourcePattern;
+            // 每秒允许的请求数
+            private Integer permitsPerSec;
+            // 允许的突发请求数
+            @Builder.Default
+            private Integer burst = 1;
+
+        }
 
     }
 
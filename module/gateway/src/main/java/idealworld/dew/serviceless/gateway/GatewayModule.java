@@ -17,12 +17,18 @@
 package idealworld.dew.serviceless.gateway;
 
 import idealworld.dew.framework.DewModule;
+import idealworld.dew.framework.fun.auth.TokenSessionCache;
 import idealworld.dew.framework.fun.auth.exchange.ExchangeHelper;
 import idealworld.dew.framework.fun.httpserver.FunHttpServer;
 import idealworld.dew.serviceless.gateway.process.GatewayAuthHandler;
 import idealworld.dew.serviceless.gateway.process.GatewayAuthPolicy;
+import idealworld.dew.serviceless.gateway.process.GatewayBatchHandler;
 import idealworld.dew.serviceless.gateway.process.GatewayDistributeHandler;
+import idealworld.dew.serviceless.gateway.process.GatewayIPFilter;
 import idealworld.dew.serviceless.gateway.process.GatewayIdentHandler;
+import idealworld.dew.serviceless.gateway.process.GatewayRateLimitHandler;
+import idealworld.dew.serviceless.gateway.process.GatewayRateLimiter;
+import idealworld.dew.serviceless.gateway.process.GatewayResponseCache;
 import io.vertx.core.Future;
 import io.vertx.core.http.HttpMethod;
 
@@ -43,16 +49,36 @@ public class GatewayModule extends DewModule<GatewayConfig> {
     @Override
     protected Future<Void> start(GatewayConfig config) {
         var authPolicy = new GatewayAuthPolicy(getModuleName(), config.getSecurity().getResourceCacheExpireSec(),
-                config.getSecurity().getGroupNodeLength());
+                config.getSecurity().getGroupNodeLength(), config.getSecurity().getAuthDecisionCacheSize(),
+                config.getSecurity().getAuthDecisionCacheExpireSec());
+        var tokenCache = new TokenSessionCache(config.getSecurity().getTokenCacheSize(), config.getSecurity().getTokenCacheExpireSec());
+        var ipFilter = new GatewayIPFilter(config.getSecurity());
+        var rateLimiter = new GatewayRateLimiter(config.getRateLimit());
+        var responseCache = config.getDistribute().getResponseCacheSize() > 0
+                ? new GatewayResponseCache(config.getDistribute().getResponseCacheSize())
+                : null;
         return ExchangeHelper.loadAndWatchResources(getModuleName(), "")
+                .compose(resp -> tokenCache.watch(getModuleName()))
+                .compose(resp -> ipFilter.watch(getModuleName()))
+                .compose(resp -> rateLimiter.watch(getModuleName()))
+                .compose(resp -> responseCache != null ? responseCache.watch(getModuleName()) : Future.<Void>succeededFuture())
                 .compose(resp -> {
-                    var identHttpHandler = new GatewayIdentHandler(getModuleName(), config.getSecurity());
+                    var identHttpHandler = new GatewayIdentHandler(getModuleName(), config.getSecurity(), tokenCache, ipFilter);
+                    var rateLimitHandler = new GatewayRateLimitHandler(getModuleName(), rateLimiter);
                     var authHttpHandler = new GatewayAuthHandler(getModuleName(), authPolicy);
-                    var distributeHandler = new GatewayDistributeHandler(getModuleName(), config.getDistribute());
+                    var distributeHandler = new GatewayDistributeHandler(getModuleName(), config.getDistribute(), responseCache);
                     FunHttpServer.choose(getModuleName()).addRoute(FunHttpServer.Route.builder()
                             .method(HttpMethod.POST)
                             .path(config.getDistribute().getGatewayRequestPath())
-                            .handlers(Arrays.asList(identHttpHandler, authHttpHandler, distributeHandler))
+                            .handlers(Arrays.asList(identHttpHandler, rateLimitHandler, authHttpHandler, distributeHandler))
+                            .build());
+                    FunHttpServer.choose(getModuleName()).addRoute(FunHttpServer.Route.builder()
+                            .method(HttpMethod.POST)
+                            .path(config.getDistribute().getGatewayBatchRequestPath())
+                            .handlers(Arrays.asList(
+                                    new GatewayIdentHandler(getModuleName(), config.getSecurity(), tokenCache, ipFilter, false),
+                                    // 各请求项分别限流
+                                    new GatewayBatchHandler(getModuleName(), rateLimiter, authPolicy, distributeHandler, config.getDistribute())))
                             .build());
                     return Future.succeededFuture();
                 });
@@ -20,7 +20,6 @@ import com.ecfront.dew.common.StandardCode;
 import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
-import idealworld.dew.framework.fun.auth.AuthenticationProcessor;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.httpserver.AuthHttpHandler;
 import io.vertx.ext.web.RoutingContext;
@@ -48,8 +47,7 @@ public class GatewayAuthHandler extends AuthHttpHandler {
         var resourceUri = (URI) ctx.get(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG);
         var action = (OptActionKind) ctx.get(DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG);
         var identOptCacheInfo = (IdentOptExchangeInfo) ctx.get(CONTEXT_INFO);
-        var subjectInfo = AuthenticationProcessor.packageSubjectInfo(identOptCacheInfo);
-        authPolicy.authentication(getModuleName(), action.toString().toLowerCase(), resourceUri, subjectInfo)
+        authPolicy.authentication(getModuleName(), action.toString().toLowerCase(), resourceUri, identOptCacheInfo)
                 .onSuccess(authResultKind -> {
                     if (authResultKind == AuthResultKind.REJECT) {
                         error(StandardCode.UNAUTHORIZED, GatewayAuthHandler.class,
@@ -16,7 +16,10 @@
 
 package idealworld.dew.serviceless.gateway.process;
 
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.fun.auth.AuthDecisionCache;
 import idealworld.dew.framework.fun.auth.AuthenticationProcessor;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import io.vertx.core.Future;
@@ -34,8 +37,18 @@ import java.util.Map;
 @Slf4j
 public class GatewayAuthPolicy {
 
+    private final AuthDecisionCache decisionCache;
+
     public GatewayAuthPolicy(String moduleName, Integer resourceCacheExpireSec, Integer groupNodeLength) {
+        this(moduleName, resourceCacheExpireSec, groupNodeLength, 0, 0);
+    }
+
+    public GatewayAuthPolicy(String moduleName, Integer resourceCacheExpireSec, Integer groupNodeLength,
+                             Integer decisionCacheSize, Integer decisionCacheExpireSec) {
         AuthenticationProcessor.init(moduleName, resourceCacheExpireSec, groupNodeLength);
+        this.decisionCache = decisionCacheSize > 0 && decisionCacheExpireSec > 0
+                ? new AuthDecisionCache(decisionCacheSize, decisionCacheExpireSec)
+                : null;
     }
 
     public Future<AuthResultKind> authentication(
@@ -47,6 +60,33 @@ public class GatewayAuthPolicy {
         return AuthenticationProcessor.authentication(moduleName, actionKind.toLowerCase(), resourceUri, subjectInfo);
     }
 
+    /**
+     * 鉴权，优先使用缓存的鉴权结果.
+     *
+     * @param moduleName   模块名
+     * @param actionKind   资源操作类型
+     * @param resourceUri  资源URI
+     * @param identOptInfo 身份信息
+     * @return 鉴权结果
+     */
+    public Future<AuthResultKind> authentication(
+            String moduleName,
+            String actionKind,
+            URI resourceUri,
+            IdentOptExchangeInfo identOptInfo
+    ) {
+        if (decisionCache == null) {
+            return authentication(moduleName, actionKind, resourceUri, AuthenticationProcessor.packageSubjectInfo(identOptInfo));
+        }
+        var key = AuthDecisionCache.key(AuthenticationProcessor.subjectFingerprint(identOptInfo), actionKind.toLowerCase(), resourceUri.toString());
+        var cachedResult = decisionCache.get(key);
+        if (cachedResult != null) {
+            return Future.succeededFuture(cachedResult);
+        }
+        var version = LocalPolicyCache.getVersion();
+        return authentication(moduleName, actionKind, resourceUri, AuthenticationProcessor.packageSubjectInfo(identOptInfo))
+                .onSuccess(authResultKind -> decisionCache.put(key, authResultKind, version));
+    }
 
 }
 
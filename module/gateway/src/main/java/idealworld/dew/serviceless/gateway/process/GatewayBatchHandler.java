@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.serviceless.gateway.process;
+
+import com.ecfront.dew.common.StandardCode;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.exception.DewException;
+import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
+import idealworld.dew.framework.fun.httpserver.AuthHttpHandler;
+import idealworld.dew.framework.util.JsonHelper;
+import idealworld.dew.serviceless.gateway.GatewayConfig;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量请求处理器.
+ * <p>
+ * 请求体为 [{"uri":"资源URI","action":"操作类型","body":请求体}] ，认证由前置的 {@link GatewayIdentHandler} 完成一次，
+ * 各请求项按各自的资源URI限流，并行鉴权及分发，按请求顺序返回各项的结果：[{"code":"200","body":返回体}] 或 [{"code":"错误码","message":"错误信息"}]。
+ * 请求项的body为字符串时原样作为请求体，其它值按JSON编码。
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class GatewayBatchHandler extends AuthHttpHandler {
+
+    private final GatewayRateLimiter rateLimiter;
+    private final GatewayAuthPolicy authPolicy;
+    private final GatewayDistributeHandler distributeHandler;
+    private final GatewayConfig.Distribute distribute;
+
+    public GatewayBatchHandler(String moduleName, GatewayRateLimiter rateLimiter, GatewayAuthPolicy authPolicy,
+                               GatewayDistributeHandler distributeHandler, GatewayConfig.Distribute distribute) {
+        super(moduleName);
+        this.rateLimiter = rateLimiter;
+        this.authPolicy = authPolicy;
+        this.distributeHandler = distributeHandler;
+        this.distribute = distribute;
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        JsonArray items;
+        try {
+            items = ctx.getBodyAsJsonArray();
+        } catch (DecodeException | ClassCastException e) {
+            items = null;
+        }
+        if (items == null || items.isEmpty()) {
+            error(StandardCode.BAD_REQUEST, GatewayBatchHandler.class, "请求格式不合法，批量请求体必须为非空数组", ctx);
+            return;
+        }
+        if (items.size() > distribute.getGatewayBatchMaxSize()) {
+            error(StandardCode.BAD_REQUEST, GatewayBatchHandler.class,
+                    "请求格式不合法，批量请求数不能超过[" + distribute.getGatewayBatchMaxSize() + "]", ctx);
+            return;
+        }
+        var identOptInfo = (IdentOptExchangeInfo) ctx.get(CONTEXT_INFO);
+        // 批量请求体与各请求项的请求体长度不同，不能透传
+        var requestHeaders = MultiMap.caseInsensitiveMultiMap()
+                .addAll(ctx.request().headers())
+                .remove(HttpHeaders.CONTENT_LENGTH);
+        List<Future> itemFutures = new ArrayList<>(items.size());
+        for (var item : items) {
+            itemFutures.add(process(item, identOptInfo, requestHeaders));
+        }
+        CompositeFuture.all(itemFutures)
+                .onSuccess(result -> {
+                    var body = new JsonArray(new ArrayList<>(result.<JsonObject>list()));
+                    ctx.end(new JsonObject().put("code", "200").put("body", body).toBuffer());
+                })
+                .onFailure(e -> error(StandardCode.INTERNAL_SERVER_ERROR, GatewayBatchHandler.class, "批量请求处理错误", ctx, e));
+    }
+
+    private Future<JsonObject> process(Object item, IdentOptExchangeInfo identOptInfo, MultiMap requestHeaders) {
+        if (!(item instanceof JsonObject)
+                || ((JsonObject) item).getString("uri", "").isBlank()
+                || ((JsonObject) item).getString("action", "").isBlank()) {
+            return Future.succeededFuture(itemError(StandardCode.BAD_REQUEST.toString(), "请求格式不合法，缺少[uri]或[action]"));
+        }
+        var jsonItem = (JsonObject) item;
+        URI resourceUri;
+        OptActionKind actionKind;
+        try {
+            var resource = GatewayIdentHandler.parseResource(jsonItem.getString("uri"), jsonItem.getString("action"));
+            resourceUri = resource._0;
+            actionKind = resource._1;
+        } catch (DewException e) {
+            return Future.succeededFuture(itemError(e.getCode() + "", e.getMessage()));
+        } catch (Exception e) {
+            return Future.succeededFuture(itemError(StandardCode.BAD_REQUEST.toString(), "请求格式不合法，资源URI错误"));
+        }
+        if (rateLimiter.tryAcquire(identOptInfo, resourceUri) > 0) {
+            log.debug("[GatewayBatchHandler]Request item error [{}]: too many requests from app [{}] account [{}] to [{}]",
+                    GatewayRateLimitHandler.TOO_MANY_REQUESTS_CODE, identOptInfo.getUnauthorizedAppId(), identOptInfo.getAccountId(), resourceUri);
+            return Future.succeededFuture(itemError(String.valueOf(GatewayRateLimitHandler.TOO_MANY_REQUESTS_CODE), "请求过多，请稍后重试"));
+        }
+        return authPolicy.authentication(getModuleName(), actionKind.toString().toLowerCase(), resourceUri, identOptInfo)
+                .compose(authResultKind -> {
+                    if (authResultKind == AuthResultKind.REJECT) {
+                        return Future.succeededFuture(itemError(StandardCode.UNAUTHORIZED.toString(),
+                                "鉴权错误，没有权限访问对应的资源[" + actionKind + "|" + resourceUri.toString() + "]"));
+                    }
+                    return distributeHandler.distribute(identOptInfo, actionKind, resourceUri, toBody(jsonItem.getValue("body")), requestHeaders)
+                            .map(resp -> JsonHelper.appendBuffer(new JsonObject().put("code", "200"), "body", resp._0))
+                            .otherwise(e -> {
+                                var code = e instanceof ReplyException
+                                        ? ((ReplyException) e).failureCode() + ""
+                                        : StandardCode.INTERNAL_SERVER_ERROR.toString();
+                                log.warn("[GatewayBatchHandler]Request item error [{}]{}", code, e.getMessage(), e);
+                                return itemError(code, e.getMessage());
+                            });
+                }, e -> {
+                    log.warn("[GatewayBatchHandler]Request item error [{}]{}", StandardCode.INTERNAL_SERVER_ERROR.toString(), e.getMessage(), e);
+                    return Future.succeededFuture(itemError(StandardCode.INTERNAL_SERVER_ERROR.toString(), "鉴权服务错误"));
+                });
+    }
+
+    private static Buffer toBody(Object body) {
+        if (body == null) {
+            return Buffer.buffer();
+        }
+        if (body instanceof String) {
+            return Buffer.buffer((String) body);
+        }
+        return Json.encodeToBuffer(body);
+    }
+
+    private static JsonObject itemError(String code, String message) {
+        return new JsonObject().put("code", code).put("message", message);
+    }
+
+}
@@ -16,39 +16,59 @@
 
 package idealworld.dew.serviceless.gateway.process;
 
-import com.ecfront.dew.common.$;
 import com.ecfront.dew.common.StandardCode;
+import com.ecfront.dew.common.tuple.Tuple2;
 import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.DewConstant;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
+import idealworld.dew.framework.fun.auth.LocalResourceCache;
 import idealworld.dew.framework.fun.auth.dto.ResourceKind;
 import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.fun.httpserver.AuthHttpHandler;
 import idealworld.dew.framework.util.JsonHelper;
+import idealworld.dew.framework.util.URIHelper;
 import idealworld.dew.serviceless.gateway.GatewayConfig;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * 分发处理器.
+ * <p>
+ * 启用了响应缓存时，非流式的获取及是否存在操作优先使用缓存的响应，其它操作完成后使对应资源主体的响应失效，见 {@link GatewayResponseCache}。
+ * 外部HTTP资源的响应取决于透传的请求Header，不缓存。
  *
  * @author gudaoxuri
  */
 @Slf4j
 public class GatewayDistributeHandler extends AuthHttpHandler {
 
+    private static final String STREAM_START = "{\"code\":\"200\",\"body\":[";
+    private static final String STREAM_SPLIT = ",";
+    private static final String STREAM_END = "]}";
+
     private final GatewayConfig.Distribute distribute;
+    private final GatewayResponseCache responseCache;
 
-    public GatewayDistributeHandler(String moduleName, GatewayConfig.Distribute distribute) {
+    public GatewayDistributeHandler(String moduleName, GatewayConfig.Distribute distribute, GatewayResponseCache responseCache) {
         super(moduleName);
         this.distribute = distribute;
+        this.responseCache = responseCache;
     }
 
     @Override
@@ -56,10 +76,134 @@ public class GatewayDistributeHandler extends AuthHttpHandler {
         var identOptInfo = (IdentOptExchangeInfo) ctx.get(CONTEXT_INFO);
         var actionKind = (OptActionKind) ctx.get(DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG);
         var uri = (URI) ctx.get(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG);
-        Buffer body = ctx.getBody();
+        if ("true".equalsIgnoreCase(ctx.request().getHeader(distribute.getGatewayStreamFieldName()))) {
+            streamHandle(ctx, identOptInfo, actionKind, uri);
+            return;
+        }
+        distribute(identOptInfo, actionKind, uri, ctx.getBody(), ctx.request().headers())
+                .onSuccess(resp -> reply(ctx, uri, resp))
+                .onFailure(e -> error(ctx, e));
+    }
+
+    /**
+     * 以分块传输返回结果.
+     * <p>
+     * 收到第一个响应块时开始输出 {"code":"200","body":[ ，之后将各响应块（JSON数组）的元素依次写入，最后以 ]} 结束，
+     * 写入队列已满时等待排空后再确认响应块，以此将背压传递到数据源.
+     * 目标模块不支持流式响应时按普通请求返回，已开始输出后出错时只能中断连接.
+     */
+    private void streamHandle(RoutingContext ctx, IdentOptExchangeInfo identOptInfo, OptActionKind actionKind, URI uri) {
+        var response = ctx.response();
+        var started = new AtomicBoolean(false);
+        var empty = new AtomicBoolean(true);
+        distribute(identOptInfo, actionKind, uri, ctx.getBody(), ctx.request().headers(), chunk -> {
+            if (response.closed()) {
+                return Future.failedFuture("Connection closed");
+            }
+            if (!started.getAndSet(true)) {
+                response.setChunked(true);
+                response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+                response.write(STREAM_START);
+            }
+            if (chunk.length() > 2) {
+                if (!empty.getAndSet(false)) {
+                    response.write(STREAM_SPLIT);
+                }
+                // 去掉JSON数组的首尾括号
+                response.write(chunk.getBuffer(1, chunk.length() - 1));
+            }
+            if (!response.writeQueueFull()) {
+                return Future.succeededFuture();
+            }
+            Promise<Void> drainPromise = Promise.promise();
+            response.drainHandler(v -> drainPromise.tryComplete());
+            return drainPromise.future();
+        })
+                .onSuccess(resp -> {
+                    if (started.get()) {
+                        response.end(STREAM_END);
+                    } else {
+                        reply(ctx, uri, resp);
+                    }
+                })
+                .onFailure(e -> {
+                    if (!started.get()) {
+                        error(ctx, e);
+                        return;
+                    }
+                    log.warn("[GatewayDistributeHandler]Stream response error {}", e.getMessage(), e);
+                    response.reset();
+                });
+    }
+
+    private void reply(RoutingContext ctx, URI uri, Tuple2<Buffer, Map<String, String>> resp) {
+        if (ResourceKind.parse(uri.getScheme().toLowerCase()) == ResourceKind.HTTP
+                && !uri.getHost().equalsIgnoreCase(distribute.getIamModuleName())) {
+            // 外部调用带上返回的HTTP Header
+            resp._1.forEach((k, v) -> ctx.response().putHeader(k, v));
+        }
+        ctx.end(JsonHelper.appendBuffer(new JsonObject().put("code", "200"), "body", resp._0).toBuffer());
+    }
+
+    /**
+     * 将资源操作分发到对应的模块.
+     *
+     * @param identOptInfo   认证信息
+     * @param actionKind     操作类型
+     * @param uri            资源URI
+     * @param body           请求体
+     * @param requestHeaders 请求的HTTP Header，外部HTTP调用时透传
+     * @return 返回体及返回的Header，失败时为 {@link ReplyException}
+     */
+    public Future<Tuple2<Buffer, Map<String, String>>> distribute(IdentOptExchangeInfo identOptInfo, OptActionKind actionKind, URI uri,
+                                                                 Buffer body, MultiMap requestHeaders) {
+        return distribute(identOptInfo, actionKind, uri, body, requestHeaders, null);
+    }
+
+    /**
+     * 将资源操作分发到对应的模块.
+     *
+     * @param identOptInfo   认证信息
+     * @param actionKind     操作类型
+     * @param uri            资源URI
+     * @param body           请求体
+     * @param requestHeaders 请求的HTTP Header，外部HTTP调用时透传
+     * @param chunkHandler   响应块的处理函数，不为空时以流式请求分发
+     * @return 返回体及返回的Header，失败时为 {@link ReplyException}
+     */
+    public Future<Tuple2<Buffer, Map<String, String>>> distribute(IdentOptExchangeInfo identOptInfo, OptActionKind actionKind, URI uri,
+                                                                 Buffer body, MultiMap requestHeaders,
+                                                                 Function<Buffer, Future<Void>> chunkHandler) {
+        if (responseCache == null) {
+            return doDistribute(identOptInfo, actionKind, uri, body, requestHeaders, chunkHandler);
+        }
+        var subject = GatewayResponseCache.subject(uri);
+        if (actionKind != OptActionKind.FETCH && actionKind != OptActionKind.EXISTS) {
+            // 无论成功与否都使响应失效，失败的操作也可能已部分生效
+            return doDistribute(identOptInfo, actionKind, uri, body, requestHeaders, chunkHandler)
+                    .onComplete(result -> responseCache.invalidate(getModuleName(), subject));
+        }
+        var cacheExpireSec = chunkHandler == null && ResourceKind.parse(uri.getScheme().toLowerCase()) != ResourceKind.HTTP
+                ? LocalResourceCache.getCacheExpireSec(URIHelper.newURI(URIHelper.formatUri(uri)), actionKind.toString().toLowerCase())
+                : 0;
+        if (cacheExpireSec <= 0) {
+            return doDistribute(identOptInfo, actionKind, uri, body, requestHeaders, chunkHandler);
+        }
+        var key = GatewayResponseCache.key(identOptInfo, actionKind, uri, body);
+        var cachedResult = responseCache.get(key);
+        if (cachedResult != null) {
+            return Future.succeededFuture(cachedResult);
+        }
+        var version = responseCache.getVersion(subject);
+        var policyVersion = LocalPolicyCache.getVersion();
+        return doDistribute(identOptInfo, actionKind, uri, body, requestHeaders, null)
+                .onSuccess(result -> responseCache.put(key, subject, result, version, policyVersion, cacheExpireSec));
+    }
+
+    private Future<Tuple2<Buffer, Map<String, String>>> doDistribute(IdentOptExchangeInfo identOptInfo, OptActionKind actionKind, URI uri,
+                                                                     Buffer body, MultiMap requestHeaders,
+                                                                     Function<Buffer, Future<Void>> chunkHandler) {
         var header = new HashMap<String, String>();
-        header.put(DewAuthConstant.REQUEST_IDENT_OPT_FLAG,
-                $.security.encodeStringToBase64(JsonObject.mapFrom(identOptInfo).toString(), StandardCharsets.UTF_8));
         String distributeModuleName;
         switch (ResourceKind.parse(uri.getScheme().toLowerCase())) {
             case HTTP:
@@ -71,7 +215,7 @@ public class GatewayDistributeHandler extends AuthHttpHandler {
                         + distribute.getIamModuleName())) {
                     distributeModuleName = distribute.getIamModuleName();
                 } else {
-                    ctx.request().headers().forEach(h -> header.put(h.getKey(), h.getValue()));
+                    requestHeaders.forEach(h -> header.put(h.getKey(), h.getValue()));
                     distributeModuleName = distribute.getHttpModuleName();
                 }
                 break;
@@ -95,25 +239,28 @@ public class GatewayDistributeHandler extends AuthHttpHandler {
                 distributeModuleName = distribute.getTaskModuleName();
                 break;
             default:
-                error(StandardCode.NOT_FOUND, GatewayDistributeHandler.class, "资源类型不存在", ctx);
-                return;
+                return Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE,
+                        Integer.parseInt(StandardCode.NOT_FOUND.toString()), "资源类型不存在"));
         }
-        FunEventBus.choose(getModuleName()).request(
+        if (chunkHandler != null) {
+            return FunEventBus.choose(getModuleName()).requestStream(
+                    distributeModuleName,
+                    actionKind,
+                    uri.toString(),
+                    body,
+                    header,
+                    identOptInfo,
+                    distribute.getGatewayTimeoutMS(),
+                    chunkHandler);
+        }
+        return FunEventBus.choose(getModuleName()).request(
                 distributeModuleName,
                 actionKind,
                 uri.toString(),
                 body,
                 header,
-                distribute.getGatewayTimeoutMS())
-                .onSuccess(resp -> {
-                    if (ResourceKind.parse(uri.getScheme().toLowerCase()) == ResourceKind.HTTP
-                            && !uri.getHost().equalsIgnoreCase(distribute.getIamModuleName())) {
-                        // 外部调用带上返回的HTTP Header
-                        resp._1.forEach((k, v) -> ctx.response().putHeader(k, v));
-                    }
-                    ctx.end(JsonHelper.appendBuffer(new JsonObject().put("code", "200"), "body", resp._0).toBuffer());
-                })
-                .onFailure(e -> error(ctx, e));
+                identOptInfo,
+                distribute.getGatewayTimeoutMS());
     }
 
 }
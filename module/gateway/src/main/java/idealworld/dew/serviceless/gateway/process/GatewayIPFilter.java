@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.serviceless.gateway.process;
+
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.fun.cache.FunCacheClient;
+import idealworld.dew.framework.fun.eventbus.FunEventBus;
+import idealworld.dew.framework.util.CIDRTrie;
+import idealworld.dew.serviceless.gateway.GatewayConfig;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.http.HttpServerRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * IP过滤器.
+ * <p>
+ * 黑白名单由配置及缓存（见 {@link DewAuthConstant#CACHE_GATEWAY_BLOCK_IPS}、{@link DewAuthConstant#CACHE_GATEWAY_ALLOW_IPS}）合并而成，
+ * 编译为 {@link CIDRTrie}，缓存中的名单变更后发布 {@link DewAuthConstant#CACHE_GATEWAY_IPS_CHANGED_TOPIC} 通知即可重新加载，无需重启。
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class GatewayIPFilter {
+
+    private static final long WATCH_RETRY_INTERVAL_MS = 1000L;
+    private static final String HEADER_FORWARDED_FOR = "X-Forwarded-For";
+    private static final String HEADER_PROXY_CLIENT_IP = "WL-Proxy-Client-IP";
+
+    private final GatewayConfig.Security security;
+    private final CIDRTrie trustedProxies;
+    private volatile CIDRTrie blockIps;
+    private volatile CIDRTrie allowIps;
+
+    public GatewayIPFilter(GatewayConfig.Security security) {
+        this.security = security;
+        this.trustedProxies = build(security.getTrustedProxies(), List.of());
+        this.blockIps = build(security.getBlockIps().keySet(), List.of());
+        this.allowIps = build(security.getAllowIps(), List.of());
+    }
+
+    /**
+     * 加载缓存中的名单并订阅变更通知.
+     *
+     * @param moduleName 模块名
+     * @return 加载结果
+     */
+    public Future<Void> watch(String moduleName) {
+        Promise<Void> promise = Promise.promise();
+        doWatch(moduleName, promise);
+        return promise.future().compose(resp -> reload(moduleName));
+    }
+
+    private void doWatch(String moduleName, Promise<Void> promise) {
+        FunCacheClient.choose(moduleName).subscribe(DewAuthConstant.CACHE_GATEWAY_IPS_CHANGED_TOPIC, message ->
+                reload(moduleName)
+                        .onFailure(e -> log.error("[Gateway]Reload ip list error: {}", e.getMessage(), e)))
+                .onSuccess(resp -> promise.complete())
+                .onFailure(e -> {
+                    // 订阅连接可能尚未建立
+                    log.warn("[Gateway]Subscribe ip list changed topic error, retrying: {}", e.getMessage());
+                    FunEventBus.choose(moduleName).getVertx().setTimer(WATCH_RETRY_INTERVAL_MS, id -> doWatch(moduleName, promise));
+                });
+    }
+
+    /**
+     * 重新加载名单.
+     *
+     * @param moduleName 模块名
+     * @return 加载结果
+     */
+    public Future<Void> reload(String moduleName) {
+        var cacheClient = FunCacheClient.choose(moduleName);
+        return CompositeFuture.all(
+                cacheClient.hgetall(DewAuthConstant.CACHE_GATEWAY_BLOCK_IPS),
+                cacheClient.hgetall(DewAuthConstant.CACHE_GATEWAY_ALLOW_IPS))
+                .compose(resp -> {
+                    Map<String, String> cachedBlockIps = resp.resultAt(0);
+                    Map<String, String> cachedAllowIps = resp.resultAt(1);
+                    blockIps = build(security.getBlockIps().keySet(), cachedBlockIps.keySet());
+                    allowIps = build(security.getAllowIps(), cachedAllowIps.keySet());
+                    log.info("[Gateway]Loaded ip list, block {} and allow {} from cache", cachedBlockIps.size(), cachedAllowIps.size());
+                    return Future.succeededFuture();
+                });
+    }
+
+    /**
+     * IP是否允许访问.
+     *
+     * @param ip 客户端IP
+     * @return 是否允许
+     */
+    public boolean allowed(String ip) {
+        var currentAllowIps = allowIps;
+        if (!currentAllowIps.isEmpty() && !currentAllowIps.contains(ip)) {
+            return false;
+        }
+        return !blockIps.contains(ip);
+    }
+
+    /**
+     * 获取客户端IP.
+     * <p>
+     * 只在请求来自可信代理时才使用请求头，并从右向左取第一个非可信代理的IP，未配置可信代理时请求头可被客户端伪造，直接取连接的IP。
+     *
+     * @param request 请求
+     * @return 客户端IP
+     */
+    public String getClientIP(HttpServerRequest request) {
+        var remoteIP = request.remoteAddress().host();
+        if (!trustedProxies.contains(remoteIP)) {
+            return remoteIP;
+        }
+        var forwardedFor = request.getHeader(HEADER_FORWARDED_FOR);
+        if (forwardedFor != null && !forwardedFor.isBlank()) {
+            return lastUntrustedForwardedIP(forwardedFor);
+        }
+        var proxyClientIP = request.getHeader(HEADER_PROXY_CLIENT_IP);
+        if (proxyClientIP != null && !proxyClientIP.isBlank()) {
+            return stripPort(proxyClientIP.trim());
+        }
+        return remoteIP;
+    }
+
+    private String lastUntrustedForwardedIP(String forwardedFor) {
+        var end = forwardedFor.length();
+        String ip = null;
+        while (end > 0) {
+            var splitIdx = forwardedFor.lastIndexOf(',', end - 1);
+            ip = stripPort(forwardedFor.substring(splitIdx + 1, end).trim());
+            if (!ip.isEmpty() && !trustedProxies.contains(ip)) {
+                return ip;
+            }
+            end = splitIdx;
+        }
+        // 都是可信代理时取最左侧的IP
+        return ip;
+    }
+
+    /**
+     * 去掉IP中的端口，如 1.2.3.4:80、[::1]:80.
+     */
+    private static String stripPort(String ip) {
+        if (ip.startsWith("[")) {
+            var bracketEndIdx = ip.indexOf(']');
+            return bracketEndIdx == -1 ? ip : ip.substring(1, bracketEndIdx);
+        }
+        var portSplitIdx = ip.indexOf(':');
+        if (portSplitIdx != -1 && ip.indexOf(':', portSplitIdx + 1) == -1) {
+            return ip.substring(0, portSplitIdx);
+        }
+        return ip;
+    }
+
+    private static CIDRTrie build(Collection<String> configIps, Collection<String> cachedIps) {
+        var trie = new CIDRTrie();
+        configIps.forEach(ip -> add(trie, ip));
+        cachedIps.forEach(ip -> add(trie, ip));
+        return trie;
+    }
+
+    private static void add(CIDRTrie trie, String ip) {
+        try {
+            trie.add(ip);
+        } catch (IllegalArgumentException e) {
+            log.warn("[Gateway]Ignore illegal ip [{}]: {}", ip, e.getMessage());
+        }
+    }
+
+}
@@ -16,33 +16,39 @@
 
 package idealworld.dew.serviceless.gateway.process;
 
-import com.ecfront.dew.common.$;
 import com.ecfront.dew.common.StandardCode;
 import com.ecfront.dew.common.exception.RTException;
+import com.ecfront.dew.common.tuple.Tuple2;
 import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.DewConstant;
 import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.exception.BadRequestException;
+import idealworld.dew.framework.exception.UnAuthorizedException;
+import idealworld.dew.framework.fun.auth.TokenSessionCache;
+import idealworld.dew.framework.fun.auth.TokenSessionSerializer;
 import idealworld.dew.framework.fun.auth.dto.ResourceKind;
 import idealworld.dew.framework.fun.cache.FunCacheClient;
 import idealworld.dew.framework.fun.httpserver.AuthHttpHandler;
 import idealworld.dew.framework.util.URIHelper;
 import idealworld.dew.serviceless.gateway.GatewayConfig;
-import io.vertx.core.http.HttpServerRequest;
-import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
-import java.util.stream.Collectors;
 
 /**
  * 认证处理器.
@@ -52,63 +58,67 @@ import java.util.stream.Collectors;
 @Slf4j
 public class GatewayIdentHandler extends AuthHttpHandler {
 
+    private static final DateTimeFormatter AK_SK_DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+    private static final String AK_SK_SIGNATURE_ALGORITHM = "HmacSHA1";
+    // 每个线程缓存的签名实例数
+    private static final int AK_SK_MAC_CACHE_SIZE = 64;
+    private static final ThreadLocal<Map<String, Mac>> AK_SK_MACS = ThreadLocal.withInitial(() ->
+            new LinkedHashMap<>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+                    return size() > AK_SK_MAC_CACHE_SIZE;
+                }
+            });
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
     private final GatewayConfig.Security security;
+    private final TokenSessionCache tokenCache;
+    private final GatewayIPFilter ipFilter;
+    private final boolean resourceRequired;
+    private final Map<String, URI> resourceUris;
+
+    public GatewayIdentHandler(String moduleName, GatewayConfig.Security security, TokenSessionCache tokenCache, GatewayIPFilter ipFilter) {
+        this(moduleName, security, tokenCache, ipFilter, true);
+    }
 
-    public GatewayIdentHandler(String moduleName, GatewayConfig.Security security) {
+    /**
+     * @param tokenCache       Token会话本地缓存
+     * @param ipFilter         IP过滤器
+     * @param resourceRequired 是否要求在query中指定资源，批量请求的资源在请求体中，此时只做认证
+     */
+    public GatewayIdentHandler(String moduleName, GatewayConfig.Security security, TokenSessionCache tokenCache, GatewayIPFilter ipFilter,
+                               boolean resourceRequired) {
         super(moduleName);
         this.security = security;
+        this.tokenCache = tokenCache;
+        this.ipFilter = ipFilter;
+        this.resourceRequired = resourceRequired;
+        var resourceUriCacheSize = security.getResourceUriCacheSize();
+        this.resourceUris = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, URI> eldest) {
+                return size() > resourceUriCacheSize;
+            }
+        };
     }
 
-    @SneakyThrows
     @Override
     public void handle(RoutingContext ctx) {
-        var remoteIP = getIP(ctx.request());
-        log.trace("[Process]Received {}:{}{} from {}",
-                ctx.request().method(),
-                ctx.request().path(),
-                ctx.request().query() == null ? "" : "?" + URLDecoder.decode(ctx.request().query(), StandardCharsets.UTF_8), remoteIP);
-        if (security.getBlockIps().containsKey(remoteIP)) {
+        var remoteIP = ipFilter.getClientIP(ctx.request());
+        if (log.isTraceEnabled()) {
+            log.trace("[Process]Received {}:{}{} from {}",
+                    ctx.request().method(),
+                    ctx.request().path(),
+                    ctx.request().query() == null ? "" : "?" + URLDecoder.decode(ctx.request().query(), StandardCharsets.UTF_8), remoteIP);
+        }
+        if (!ipFilter.allowed(remoteIP)) {
             error(StandardCode.UNAUTHORIZED, GatewayIdentHandler.class, "请求IP不合法", ctx);
             return;
         }
         // checker
-        if (ctx.request().query() == null || ctx.request().query().trim().isBlank()) {
-            error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class, "请求格式不合法，缺少query", ctx);
-            return;
-        }
-        var queryMap = Arrays.stream(ctx.request().query().trim().split("&"))
-                .map(item -> item.split("="))
-                .collect(Collectors.toMap(item -> item[0], item -> item.length > 1 ? item[1] : ""));
-        if (!queryMap.containsKey(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG)
-                || queryMap.get(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG).isBlank()
-                || !queryMap.containsKey(DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG)
-                || queryMap.get(DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG).isBlank()
-        ) {
-            error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class,
-                    "请求格式不合法，缺少[" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG + "]或[" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "]",
-                    ctx);
+        if (resourceRequired && !checkResource(ctx)) {
             return;
         }
-        URI resourceUri;
-        OptActionKind actionKind;
-        try {
-            resourceUri = URIHelper.newURI(URLDecoder.decode(queryMap.get(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG), StandardCharsets.UTF_8));
-            if (resourceUri.getPath().toLowerCase().startsWith(DewConstant.REQUEST_INNER_PATH_PREFIX)) {
-                error(StandardCode.UNAUTHORIZED, GatewayIdentHandler.class, "请求资源不合法", ctx);
-                return;
-            }
-            if (resourceUri.getScheme() == null) {
-                error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class, "请求格式不合法，资源URI错误", ctx);
-                return;
-            }
-            ResourceKind.parse(resourceUri.getScheme().toLowerCase());
-            actionKind = OptActionKind.parse(queryMap.get(DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG).toLowerCase());
-        } catch (RTException e) {
-            error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class, "请求格式不合法，资源类型或操作类型不存在", ctx);
-            return;
-        }
-        ctx.put(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG, resourceUri);
-        ctx.put(DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG, actionKind);
 
         var token = ctx.request().headers().contains(security.getTokenFieldName())
                 && !ctx.request().getHeader(security.getTokenFieldName()).trim().isBlank()
@@ -151,19 +161,26 @@ public class GatewayIdentHandler extends AuthHttpHandler {
 
         // fetch token
         if (token != null) {
-            FunCacheClient.choose(getModuleName()).get(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + token, security.getTokenCacheExpireSec())
+            var cachedOptInfo = tokenCache.get(token);
+            if (cachedOptInfo != null) {
+                ctx.put(CONTEXT_INFO, cachedOptInfo);
+                ctx.next();
+                return;
+            }
+            // 由本地缓存保证Token移除后即时失效，这里不能再使用带本地缓存的获取方法
+            var tokenCacheVersion = tokenCache.getVersion();
+            FunCacheClient.choose(getModuleName()).get(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + token)
                     .onSuccess(optInfo -> {
-                        var identOptInfo = optInfo != null
-                                ? new JsonObject(optInfo).mapTo(IdentOptExchangeInfo.class)
-                                : null;
                         if (optInfo == null) {
                             error(StandardCode.UNAUTHORIZED, GatewayIdentHandler.class, "认证错误，Token不合法", ctx);
                             return;
                         }
+                        var identOptInfo = TokenSessionSerializer.decode(optInfo);
                         identOptInfo.setUnauthorizedAppCode(identOptInfo.getAppCode());
                         identOptInfo.setUnauthorizedAppId(identOptInfo.getAppId());
                         identOptInfo.setUnauthorizedTenantId(identOptInfo.getTenantId());
                         identOptInfo.setToken(token);
+                        tokenCache.put(token, identOptInfo, tokenCacheVersion);
                         ctx.put(CONTEXT_INFO, identOptInfo);
                         ctx.next();
                     })
@@ -177,25 +194,35 @@ public class GatewayIdentHandler extends AuthHttpHandler {
                     "请求格式不合法，HTTP Header[" + security.getAkSkDateFieldName() + "]不存在", ctx);
             return;
         }
-        if (!authorization.contains(":")
-                || authorization.split(":").length != 2) {
+        var akSplitIdx = authorization.indexOf(':');
+        if (akSplitIdx == -1
+                || akSplitIdx == authorization.length() - 1
+                || authorization.indexOf(':', akSplitIdx + 1) != -1) {
             error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class,
                     "请求格式不合法，HTTP Header[" + security.getAkSkFieldName() + "]格式错误", ctx);
             return;
         }
-        var ak = authorization.split(":")[0];
-        var reqSignature = authorization.split(":")[1];
+        var ak = authorization.substring(0, akSplitIdx);
+        var reqSignature = authorization.substring(akSplitIdx + 1);
         var reqMethod = ctx.request().method();
         var reqDate = ctx.request().getHeader(security.getAkSkDateFieldName());
-        var sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
-        if (sdf.parse(reqDate).getTime() + security.getAppRequestDateOffsetMs() < System.currentTimeMillis()) {
+        long reqTime;
+        try {
+            reqTime = ZonedDateTime.parse(reqDate, AK_SK_DATE_FORMATTER).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class,
+                    "请求格式不合法，HTTP Header[" + security.getAkSkDateFieldName() + "]格式错误", ctx);
+            return;
+        }
+        if (reqTime + security.getAppRequestDateOffsetMs() < System.currentTimeMillis()) {
             error(StandardCode.UNAUTHORIZED, GatewayIdentHandler.class, "认证错误，请求时间已过期", ctx);
             return;
         }
         var reqPath = ctx.request().path();
         var reqQuery = ctx.request().query() != null ? ctx.request().query() : "";
-        var sortedReqQuery = Arrays.stream(reqQuery.split("&")).sorted(String::compareTo).collect(Collectors.joining("&"));
+        var reqQueryItems = reqQuery.split("&");
+        Arrays.sort(reqQueryItems);
+        var sortedReqQuery = String.join("&", reqQueryItems);
         FunCacheClient.choose(getModuleName()).get(DewAuthConstant.CACHE_APP_AK + ak, security.getTokenCacheExpireSec())
                 .onSuccess(legalSkAndAppId -> {
                     if (legalSkAndAppId == null) {
@@ -207,10 +234,7 @@ public class GatewayIdentHandler extends AuthHttpHandler {
                     var tenantId = Long.parseLong(skAndAppIdSplit[1]);
                     var appId = Long.parseLong(skAndAppIdSplit[2]);
                     var appCode = skAndAppIdSplit[3];
-                    var calcSignature = $.security.encodeStringToBase64(
-                            $.security.digest.digest((reqMethod + "\n" + reqDate + "\n" + reqPath + "\n" + sortedReqQuery).toLowerCase(),
-                                    sk, "HmacSHA1"),
-                            StandardCharsets.UTF_8);
+                    var calcSignature = signature((reqMethod + "\n" + reqDate + "\n" + reqPath + "\n" + sortedReqQuery).toLowerCase(), sk);
                     if (!reqSignature.equalsIgnoreCase(calcSignature)) {
                         error(StandardCode.UNAUTHORIZED, GatewayIdentHandler.class, "认证错误，签名不合法", ctx);
                         return;
@@ -229,19 +253,146 @@ public class GatewayIdentHandler extends AuthHttpHandler {
                 .onFailure(e -> error(StandardCode.INTERNAL_SERVER_ERROR, GatewayIdentHandler.class, "缓存服务错误", ctx, e));
     }
 
-    private String getIP(HttpServerRequest request) {
-        for (Map.Entry<String, String> header : request.headers()) {
-            switch (header.getKey().toLowerCase()) {
-                case "x-forwarded-for":
-                case "wl-proxy-client-ip":
-                case "x-forwarded-host":
-                    if (header.getValue() != null && !header.getValue().isBlank()) {
-                        return header.getValue();
-                    }
-                    break;
-                default:
+    private boolean checkResource(RoutingContext ctx) {
+        if (ctx.request().query() == null || ctx.request().query().trim().isBlank()) {
+            error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class, "请求格式不合法，缺少query", ctx);
+            return false;
+        }
+        // 逐项扫描query，只取出资源URI及操作类型
+        var query = ctx.request().query().trim();
+        String strResourceUri = null;
+        String strActionKind = null;
+        var itemStartIdx = 0;
+        while (itemStartIdx <= query.length()) {
+            var itemEndIdx = query.indexOf('&', itemStartIdx);
+            if (itemEndIdx == -1) {
+                itemEndIdx = query.length();
             }
+            if (strResourceUri == null && isQueryItem(query, itemStartIdx, itemEndIdx, DewAuthConstant.REQUEST_RESOURCE_URI_FLAG)) {
+                strResourceUri = query.substring(itemStartIdx + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG.length() + 1, itemEndIdx);
+            } else if (strActionKind == null && isQueryItem(query, itemStartIdx, itemEndIdx, DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG)) {
+                strActionKind = query.substring(itemStartIdx + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG.length() + 1, itemEndIdx);
+            }
+            itemStartIdx = itemEndIdx + 1;
         }
-        return request.remoteAddress().host();
+        if (strResourceUri == null
+                || strResourceUri.isBlank()
+                || strActionKind == null
+                || strActionKind.isBlank()
+        ) {
+            error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class,
+                    "请求格式不合法，缺少[" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG + "]或[" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "]",
+                    ctx);
+            return false;
+        }
+        URI resourceUri;
+        OptActionKind actionKind;
+        try {
+            resourceUri = getResourceUri(strResourceUri);
+            actionKind = parseActionKind(strActionKind);
+        } catch (UnAuthorizedException e) {
+            error(StandardCode.UNAUTHORIZED, GatewayIdentHandler.class, e.getMessage(), ctx);
+            return false;
+        } catch (BadRequestException e) {
+            error(StandardCode.BAD_REQUEST, GatewayIdentHandler.class, e.getMessage(), ctx);
+            return false;
+        }
+        ctx.put(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG, resourceUri);
+        ctx.put(DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG, actionKind);
+        return true;
+    }
+
+    private static boolean isQueryItem(String query, int itemStartIdx, int itemEndIdx, String name) {
+        return itemEndIdx - itemStartIdx > name.length()
+                && query.charAt(itemStartIdx + name.length()) == '='
+                && query.startsWith(name, itemStartIdx);
+    }
+
+    /**
+     * 获取query中的资源URI，解码及校验后的结果按原始值缓存.
+     *
+     * @param strEncodedResourceUri 编码后的资源URI
+     * @return 资源URI
+     */
+    private URI getResourceUri(String strEncodedResourceUri) {
+        if (security.getResourceUriCacheSize() <= 0) {
+            return parseResourceUri(URLDecoder.decode(strEncodedResourceUri, StandardCharsets.UTF_8));
+        }
+        synchronized (resourceUris) {
+            var resourceUri = resourceUris.get(strEncodedResourceUri);
+            if (resourceUri != null) {
+                return resourceUri;
+            }
+        }
+        // 不合法的URI会抛出异常，不会被缓存
+        var resourceUri = parseResourceUri(URLDecoder.decode(strEncodedResourceUri, StandardCharsets.UTF_8));
+        synchronized (resourceUris) {
+            resourceUris.put(strEncodedResourceUri, resourceUri);
+        }
+        return resourceUri;
+    }
+
+    /**
+     * 解析并校验请求的资源.
+     *
+     * @param strResourceUri 资源URI
+     * @param strActionKind  操作类型
+     * @return 资源URI及操作类型
+     * @throws UnAuthorizedException 请求了内部资源
+     * @throws BadRequestException   资源URI、资源类型或操作类型不合法
+     */
+    static Tuple2<URI, OptActionKind> parseResource(String strResourceUri, String strActionKind) {
+        return new Tuple2<>(parseResourceUri(strResourceUri), parseActionKind(strActionKind));
+    }
+
+    private static URI parseResourceUri(String strResourceUri) {
+        var resourceUri = URIHelper.newURI(strResourceUri);
+        if (resourceUri.getPath().regionMatches(true, 0, DewConstant.REQUEST_INNER_PATH_PREFIX, 0, DewConstant.REQUEST_INNER_PATH_PREFIX.length())) {
+            throw new UnAuthorizedException("请求资源不合法");
+        }
+        if (resourceUri.getScheme() == null) {
+            throw new BadRequestException("请求格式不合法，资源URI错误");
+        }
+        try {
+            ResourceKind.parse(resourceUri.getScheme());
+        } catch (RTException e) {
+            throw new BadRequestException("请求格式不合法，资源类型或操作类型不存在");
+        }
+        return resourceUri;
     }
+
+    private static OptActionKind parseActionKind(String strActionKind) {
+        try {
+            return OptActionKind.parse(strActionKind);
+        } catch (RTException e) {
+            throw new BadRequestException("请求格式不合法，资源类型或操作类型不存在");
+        }
+    }
+
+    /**
+     * 计算AK/SK签名，即 Base64(Hex(HmacSHA1(text, sk))).
+     * <p>
+     * 签名实例按SK缓存在当前线程中复用。
+     *
+     * @param text 待签名内容
+     * @param sk   SK
+     * @return 签名
+     */
+    @SneakyThrows
+    private static String signature(String text, String sk) {
+        var mac = AK_SK_MACS.get().get(sk);
+        if (mac == null) {
+            mac = Mac.getInstance(AK_SK_SIGNATURE_ALGORITHM);
+            mac.init(new SecretKeySpec(sk.getBytes(StandardCharsets.UTF_8), AK_SK_SIGNATURE_ALGORITHM));
+            AK_SK_MACS.get().put(sk, mac);
+        }
+        var digest = mac.doFinal(text.getBytes(StandardCharsets.UTF_8));
+        var hex = new byte[digest.length * 2];
+        for (var i = 0; i < digest.length; i++) {
+            hex[i * 2] = (byte) HEX_CHARS[(digest[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = (byte) HEX_CHARS[digest[i] & 0x0F];
+        }
+        return Base64.getEncoder().encodeToString(hex);
+    }
+
 }
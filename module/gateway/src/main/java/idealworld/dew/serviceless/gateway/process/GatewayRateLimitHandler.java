@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.serviceless.gateway.process;
+
+import com.ecfront.dew.common.Resp;
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.fun.httpserver.AuthHttpHandler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+
+/**
+ * 限流处理器.
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class GatewayRateLimitHandler extends AuthHttpHandler {
+
+    static final int TOO_MANY_REQUESTS_CODE = 429;
+
+    private final GatewayRateLimiter rateLimiter;
+
+    public GatewayRateLimitHandler(String moduleName, GatewayRateLimiter rateLimiter) {
+        super(moduleName);
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        var identOptInfo = (IdentOptExchangeInfo) ctx.get(CONTEXT_INFO);
+        var resourceUri = (URI) ctx.get(DewAuthConstant.REQUEST_RESOURCE_URI_FLAG);
+        var waitMs = rateLimiter.tryAcquire(identOptInfo, resourceUri);
+        if (waitMs > 0) {
+            // 拒绝可能非常频繁，避免日志放大负载
+            log.debug("[GatewayRateLimitHandler]Request error [{}]: too many requests from app [{}] account [{}]",
+                    TOO_MANY_REQUESTS_CODE, identOptInfo.getUnauthorizedAppId(), identOptInfo.getAccountId());
+            ctx.response()
+                    .setStatusCode(TOO_MANY_REQUESTS_CODE)
+                    .putHeader("Retry-After", String.valueOf((waitMs + 999) / 1000))
+                    .end(JsonObject.mapFrom(new Resp<Void>(String.valueOf(TOO_MANY_REQUESTS_CODE), "请求过多，请稍后重试", null)).toBuffer());
+            return;
+        }
+        ctx.next();
+    }
+
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.serviceless.gateway.process;
+
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.fun.cache.FunCacheClient;
+import idealworld.dew.framework.fun.eventbus.FunEventBus;
+import idealworld.dew.framework.util.AntPathMatcher;
+import idealworld.dew.serviceless.gateway.GatewayConfig;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 网关限流器.
+ * <p>
+ * 按 规则 + 限流维度的值（租户Id、应用Id或账号Id）使用本地令牌桶限流，令牌桶以GCRA算法实现，只需对一个时间戳做CAS，无锁。
+ * 启用集群限流时，各节点按同步周期将放行的请求数批量写入缓存，由脚本按秒分片统计滑动窗口内整个集群的请求数，
+ * 超出限制的维度在下个同步周期前直接拒绝。
+ * <p>
+ * 规则由配置及缓存（见 {@link DewAuthConstant#CACHE_GATEWAY_RATE_LIMIT_RULES}）合并而成，
+ * 缓存中的规则变更后发布 {@link DewAuthConstant#CACHE_GATEWAY_RATE_LIMIT_CHANGED_TOPIC} 通知即可重新加载。
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class GatewayRateLimiter {
+
+    // 逐个更新计数Hash，清理滑动窗口外的分片并返回窗口内的总数
+    // KEYS: 计数Key列表，ARGV[1]: 当前秒，ARGV[2]: 窗口秒数，ARGV[3..]: 与Key对应的新增请求数
+    private static final String SYNC_COUNTER_SCRIPT = ""
+            + "local now = tonumber(ARGV[1])\n"
+            + "local window = tonumber(ARGV[2])\n"
+            + "local totals = {}\n"
+            + "for i = 1, #KEYS do\n"
+            + "  redis.call('HINCRBY', KEYS[i], ARGV[1], ARGV[i + 2])\n"
+            + "  redis.call('EXPIRE', KEYS[i], window + 1)\n"
+            + "  local entries = redis.call('HGETALL', KEYS[i])\n"
+            + "  local total = 0\n"
+            + "  for j = 1, #entries, 2 do\n"
+            + "    if tonumber(entries[j]) <= now - window then\n"
+            + "      redis.call('HDEL', KEYS[i], entries[j])\n"
+            + "    else\n"
+            + "      total = total + tonumber(entries[j + 1])\n"
+            + "    end\n"
+            + "  end\n"
+            + "  totals[i] = total\n"
+            + "end\n"
+            + "return table.concat(totals, ',')";
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+    private static final long WATCH_RETRY_INTERVAL_MS = 1000L;
+    private static final long CLEAN_INTERVAL_MS = 60000L;
+
+    private final GatewayConfig.RateLimit config;
+    private volatile List<CompiledRule> rules;
+    private boolean syncing = false;
+
+    public GatewayRateLimiter(GatewayConfig.RateLimit config) {
+        this.config = config;
+        this.rules = compile(config.getRules(), List.of());
+    }
+
+    /**
+     * 加载缓存中的规则，订阅变更通知并启动定时任务.
+     *
+     * @param moduleName 模块名
+     * @return 加载结果
+     */
+    public Future<Void> watch(String moduleName) {
+        Promise<Void> promise = Promise.promise();
+        doWatch(moduleName, promise);
+        return promise.future()
+                .compose(resp -> reload(moduleName))
+                .onSuccess(resp -> {
+                    var vertx = FunEventBus.choose(moduleName).getVertx();
+                    vertx.setPeriodic(CLEAN_INTERVAL_MS, id -> clean());
+                    if (config.getClusterEnabled()) {
+                        vertx.setPeriodic(config.getClusterSyncIntervalMs(), id -> sync(moduleName));
+                    }
+                });
+    }
+
+    private void doWatch(String moduleName, Promise<Void> promise) {
+        FunCacheClient.choose(moduleName).subscribe(DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_CHANGED_TOPIC, message ->
+                reload(moduleName)
+                        .onFailure(e -> log.error("[Gateway]Reload rate limit rules error: {}", e.getMessage(), e)))
+                .onSuccess(resp -> promise.complete())
+                .onFailure(e -> {
+                    // 订阅连接可能尚未建立
+                    log.warn("[Gateway]Subscribe rate limit rules changed topic error, retrying: {}", e.getMessage());
+                    FunEventBus.choose(moduleName).getVertx().setTimer(WATCH_RETRY_INTERVAL_MS, id -> doWatch(moduleName, promise));
+                });
+    }
+
+    /**
+     * 重新加载规则，已有的计数随之清空.
+     *
+     * @param moduleName 模块名
+     * @return 加载结果
+     */
+    public Future<Void> reload(String moduleName) {
+        return FunCacheClient.choose(moduleName).hgetall(DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_RULES)
+                .compose(cachedRules -> {
+                    var rules = new ArrayList<GatewayConfig.RateLimit.Rule>();
+                    cachedRules.forEach((code, strRule) -> {
+                        try {
+                            var rule = new JsonObject(strRule).mapTo(GatewayConfig.RateLimit.Rule.class);
+                            rule.setCode(code);
+                            rules.add(rule);
+                        } catch (Exception e) {
+                            log.warn("[Gateway]Ignore illegal rate limit rule [{}]: {}", code, e.getMessage());
+                        }
+                    });
+                    // 令牌桶随规则替换
+                    this.rules = compile(config.getRules(), rules);
+                    log.info("[Gateway]Loaded {} rate limit rules from cache", rules.size());
+                    return Future.succeededFuture();
+                });
+    }
+
+    /**
+     * 获取请求许可.
+     *
+     * @param identOptInfo 身份信息
+     * @param resourceUri  资源URI
+     * @return 需等待的毫秒数，为0时表示放行
+     */
+    public long tryAcquire(IdentOptExchangeInfo identOptInfo, URI resourceUri) {
+        var currentRules = rules;
+        if (currentRules.isEmpty()) {
+            return 0;
+        }
+        var now = System.nanoTime();
+        for (var i = 0; i < currentRules.size(); i++) {
+            var bucket = currentRules.get(i).bucket(identOptInfo, resourceUri, now);
+            if (bucket == null) {
+                continue;
+            }
+            long waitNanos;
+            var rejectUntil = bucket.clusterRejectUntil;
+            if (rejectUntil != null && rejectUntil - now > 0) {
+                waitNanos = rejectUntil - now;
+            } else {
+                waitNanos = bucket.tryAcquire(now);
+            }
+            if (waitNanos > 0) {
+                release(currentRules, i, identOptInfo, resourceUri);
+                return Math.max(1, waitNanos / 1_000_000);
+            }
+            if (config.getClusterEnabled()) {
+                bucket.count.increment();
+            }
+        }
+        return 0;
+    }
+
+    // 归还前end条规则已获取的令牌，重新匹配规则以免每个请求都记录已获取的令牌桶
+    private void release(List<CompiledRule> currentRules, int end, IdentOptExchangeInfo identOptInfo, URI resourceUri) {
+        for (var i = 0; i < end; i++) {
+            var rule = currentRules.get(i);
+            if (!rule.matches(resourceUri)) {
+                continue;
+            }
+            var subject = rule.subject(identOptInfo);
+            var bucket = subject == null ? null : rule.buckets.get(subject);
+            if (bucket == null) {
+                continue;
+            }
+            bucket.release();
+            if (config.getClusterEnabled()) {
+                bucket.count.decrement();
+            }
+        }
+    }
+
+    private synchronized void sync(String moduleName) {
+        if (syncing) {
+            return;
+        }
+        var keys = new ArrayList<String>();
+        var syncBuckets = new ArrayList<Bucket>();
+        var args = new ArrayList<String>();
+        var nowSec = System.currentTimeMillis() / 1000;
+        args.add(String.valueOf(nowSec));
+        args.add(String.valueOf(config.getClusterWindowSec()));
+        for (var rule : rules) {
+            for (var bucket : rule.buckets.values()) {
+                var count = bucket.count.sumThenReset();
+                if (count <= 0) {
+                    continue;
+                }
+                keys.add(bucket.counterKey);
+                syncBuckets.add(bucket);
+                args.add(String.valueOf(count));
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        syncing = true;
+        FunCacheClient.choose(moduleName).eval(SYNC_COUNTER_SCRIPT, keys, args)
+                .onComplete(result -> {
+                    synchronized (this) {
+                        syncing = false;
+                    }
+                    if (result.failed()) {
+                        log.warn("[Gateway]Sync rate limit counters error: {}", result.cause().getMessage());
+                        return;
+                    }
+                    var totals = result.result().split(",");
+                    var rejectUntil = System.nanoTime() + config.getClusterSyncIntervalMs() * 2 * 1_000_000;
+                    for (var i = 0; i < totals.length && i < syncBuckets.size(); i++) {
+                        var bucket = syncBuckets.get(i);
+                        var limit = (long) bucket.rule.rule.getPermitsPerSec() * config.getClusterWindowSec() + bucket.rule.burst;
+                        if (Long.parseLong(totals[i]) > limit) {
+                            bucket.clusterRejectUntil = rejectUntil;
+                        } else {
+                            bucket.clusterRejectUntil = null;
+                        }
+                    }
+                });
+    }
+
+    private void clean() {
+        var now = System.nanoTime();
+        for (var rule : rules) {
+            rule.buckets.values().removeIf(bucket -> bucket.idle(now));
+        }
+    }
+
+    private static List<CompiledRule> compile(List<GatewayConfig.RateLimit.Rule> configRules, List<GatewayConfig.RateLimit.Rule> cachedRules) {
+        var compiledRules = new ArrayList<CompiledRule>();
+        for (var rules : List.of(configRules, cachedRules)) {
+            for (var rule : rules) {
+                if (rule.getCode() == null
+                        || rule.getSubjectKind() == null
+                        || rule.getPermitsPerSec() == null
+                        || rule.getPermitsPerSec() <= 0) {
+                    log.warn("[Gateway]Ignore illegal rate limit rule [{}]", rule.getCode());
+                    continue;
+                }
+                compiledRules.add(new CompiledRule(rule));
+            }
+        }
+        return compiledRules;
+    }
+
+    private static class CompiledRule {
+
+        private final GatewayConfig.RateLimit.Rule rule;
+        // 每个令牌的间隔
+        private final long intervalNanos;
+        private final int burst;
+        // 限流维度的值 -> 令牌桶
+        private final Map<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+        CompiledRule(GatewayConfig.RateLimit.Rule rule) {
+            this.rule = rule;
+            this.intervalNanos = 1_000_000_000L / rule.getPermitsPerSec();
+            this.burst = rule.getBurst() == null || rule.getBurst() < 1 ? 1 : rule.getBurst();
+        }
+
+        Bucket bucket(IdentOptExchangeInfo identOptInfo, URI resourceUri, long now) {
+            if (!matches(resourceUri)) {
+                return null;
+            }
+            var subject = subject(identOptInfo);
+            if (subject == null) {
+                return null;
+            }
+            var bucket = buckets.get(subject);
+            if (bucket != null) {
+                return bucket;
+            }
+            return buckets.computeIfAbsent(subject, s -> new Bucket(this, s, now));
+        }
+
+        boolean matches(URI resourceUri) {
+            if (rule.getResourcePattern() == null || rule.getResourcePattern().isBlank()) {
+                return true;
+            }
+            return resourceUri != null && PATH_MATCHER.match(rule.getResourcePattern(), resourceUri.toString());
+        }
+
+        Long subject(IdentOptExchangeInfo identOptInfo) {
+            switch (rule.getSubjectKind()) {
+                case TENANT:
+                    return identOptInfo.getUnauthorizedTenantId();
+                case APP:
+                    return identOptInfo.getUnauthorizedAppId();
+                case ACCOUNT:
+                    return identOptInfo.getAccountId();
+                default:
+                    return null;
+            }
+        }
+
+    }
+
+    /**
+     * 令牌桶，以GCRA算法实现.
+     * <p>
+     * 只记录下一个请求的理论到达时间（TAT），每个请求将其推后一个令牌间隔，推后的时间超出突发容量时拒绝。
+     * 集群限流的计数及拒绝状态也记录在桶上，计数Key在创建时生成一次。
+     */
+    private static class Bucket {
+
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong tat;
+        // 集群计数的缓存Key
+        private final String counterKey;
+        private final CompiledRule rule;
+        // 待同步到集群的请求数
+        private final LongAdder count = new LongAdder();
+        // 集群请求数超限时拒绝到的时间
+        private volatile Long clusterRejectUntil;
+
+        Bucket(CompiledRule rule, Long subject, long now) {
+            this.intervalNanos = rule.intervalNanos;
+            this.toleranceNanos = rule.intervalNanos * rule.burst;
+            this.tat = new AtomicLong(now);
+            this.counterKey = DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_COUNTER + rule.rule.getCode() + ":" + subject;
+            this.rule = rule;
+        }
+
+        long tryAcquire(long now) {
+            while (true) {
+                var currentTat = tat.get();
+                var newTat = Math.max(currentTat, now) + intervalNanos;
+                var waitNanos = newTat - now - toleranceNanos;
+                if (waitNanos > 0) {
+                    return waitNanos;
+                }
+                if (tat.compareAndSet(currentTat, newTat)) {
+                    return 0;
+                }
+            }
+        }
+
+        void release() {
+            tat.addAndGet(-intervalNanos);
+        }
+
+        boolean idle(long now) {
+            var rejectUntil = clusterRejectUntil;
+            return tat.get() - now <= 0
+                    && count.sum() == 0
+                    && (rejectUntil == null || rejectUntil - now <= 0);
+        }
+
+    }
+
+}
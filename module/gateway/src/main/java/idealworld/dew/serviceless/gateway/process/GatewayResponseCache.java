@@ -0,0 +1,233 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.serviceless.gateway.process;
+
+import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.tuple.Tuple2;
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.AuthenticationProcessor;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
+import idealworld.dew.framework.fun.auth.LocalResourceCache;
+import idealworld.dew.framework.fun.cache.FunCacheClient;
+import idealworld.dew.framework.fun.eventbus.FunEventBus;
+import idealworld.dew.framework.util.URIHelper;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 网关响应缓存.
+ * <p>
+ * 缓存获取及是否存在操作的响应，缓存时间由IAM中资源的 cacheExpireSec 指定（见 {@link LocalResourceCache#getCacheExpireSec(URI, String)}），
+ * 按 权限主体指纹 + 操作类型 + 格式化后的资源URI + 请求体摘要 缓存，容量有限（最近最少使用淘汰）。
+ * <p>
+ * 每个资源主体（资源类型://资源主体编码）维护一个版本，经网关对该资源主体的创建、更新及删除操作会使其版本递增，旧的响应随即失效，
+ * 并发布 {@link DewAuthConstant#CACHE_GATEWAY_RESPONSE_INVALIDATED_TOPIC} 通知其它网关实例。
+ * 响应同时记录策略版本 {@link LocalPolicyCache#getVersion()}，策略或资源变更后旧的响应同样失效。
+ *
+ * @author gudaoxuri
+ */
+@Slf4j
+public class GatewayResponseCache {
+
+    private static final long WATCH_RETRY_INTERVAL_MS = 1000L;
+
+    private final Map<String, Response> responses;
+    // 资源主体 -> 版本，版本取自全局递增的序号，容量与响应相同
+    private final Map<String, Long> subjectVersions;
+    // 最近一次生成的版本
+    private long lastVersion = 0;
+    // 未记录版本的资源主体的版本，即被淘汰的最大版本，保证淘汰后版本不会回退
+    private long evictedVersion = 0;
+
+    public GatewayResponseCache(int maxSize) {
+        this.responses = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.subjectVersions = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                // 未记录版本的资源主体随之变更，其缓存的响应全部失效
+                evictedVersion = Math.max(evictedVersion, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 订阅响应缓存失效通知.
+     *
+     * @param moduleName 模块名
+     * @return 订阅结果
+     */
+    public Future<Void> watch(String moduleName) {
+        Promise<Void> promise = Promise.promise();
+        doWatch(moduleName, promise);
+        return promise.future();
+    }
+
+    private void doWatch(String moduleName, Promise<Void> promise) {
+        FunCacheClient.choose(moduleName).subscribe(DewAuthConstant.CACHE_GATEWAY_RESPONSE_INVALIDATED_TOPIC, this::invalidate)
+                .onSuccess(resp -> promise.complete())
+                .onFailure(e -> {
+                    // 订阅连接可能尚未建立
+                    log.warn("[Gateway]Subscribe response invalidated topic error, retrying: {}", e.getMessage());
+                    FunEventBus.choose(moduleName).getVertx().setTimer(WATCH_RETRY_INTERVAL_MS, id -> doWatch(moduleName, promise));
+                });
+    }
+
+    /**
+     * 获取资源所属的资源主体.
+     *
+     * @param resourceUri 资源URI
+     * @return 资源主体，即 资源类型://资源主体编码
+     */
+    public static String subject(URI resourceUri) {
+        return (resourceUri.getScheme() + "://" + resourceUri.getHost()).toLowerCase();
+    }
+
+    /**
+     * 生成缓存Key.
+     * <p>
+     * 以权限主体指纹（见 {@link AuthenticationProcessor#subjectFingerprint(IdentOptExchangeInfo)}）区分调用方，
+     * 只有鉴权结果相同的调用方才共享响应。
+     * 同一资源的获取及是否存在操作返回不同的响应，Key中须包含操作类型。
+     *
+     * @param identOptInfo 认证信息
+     * @param actionKind   操作类型
+     * @param resourceUri  资源URI
+     * @param body         请求体
+     * @return 缓存Key
+     */
+    public static String key(IdentOptExchangeInfo identOptInfo, OptActionKind actionKind, URI resourceUri, Buffer body) {
+        var bodyDigest = body == null || body.length() == 0
+                ? ""
+                : $.security.digest.digest(body.toString(StandardCharsets.UTF_8), "SHA1");
+        return AuthenticationProcessor.subjectFingerprint(identOptInfo)
+                + "|" + actionKind.toString()
+                + "|" + URIHelper.formatUri(resourceUri)
+                + "|" + bodyDigest;
+    }
+
+    /**
+     * 获取响应.
+     *
+     * @param key 缓存Key，见 {@link #key(IdentOptExchangeInfo, OptActionKind, URI, Buffer)}
+     * @return 返回体及返回的Header，不存在、已过期、资源主体或策略已变更时返回null
+     */
+    public synchronized Tuple2<Buffer, Map<String, String>> get(String key) {
+        var response = responses.get(key);
+        if (response == null) {
+            return null;
+        }
+        if (response.version != currentVersion(response.subject)
+                || response.policyVersion != LocalPolicyCache.getVersion()
+                || response.expireTime < System.currentTimeMillis()) {
+            responses.remove(key);
+            return null;
+        }
+        return response.result;
+    }
+
+    /**
+     * 获取资源主体的当前版本.
+     *
+     * @param subject 资源主体，见 {@link #subject(URI)}
+     * @return 版本
+     */
+    public synchronized long getVersion(String subject) {
+        return currentVersion(subject);
+    }
+
+    private long currentVersion(String subject) {
+        return subjectVersions.getOrDefault(subject, evictedVersion);
+    }
+
+    /**
+     * 添加响应.
+     *
+     * @param key           缓存Key
+     * @param subject       资源主体
+     * @param result        返回体及返回的Header
+     * @param version       分发请求前获取的资源主体版本
+     * @param policyVersion 分发请求前获取的策略版本
+     * @param expireSec     缓存时间（秒）
+     */
+    public synchronized void put(String key, String subject, Tuple2<Buffer, Map<String, String>> result,
+                                 long version, long policyVersion, int expireSec) {
+        if (version != currentVersion(subject) || policyVersion != LocalPolicyCache.getVersion()) {
+            // 请求期间资源主体或策略发生了变更，响应可能已过时
+            return;
+        }
+        responses.put(key, new Response(result, subject, version, policyVersion, System.currentTimeMillis() + expireSec * 1000L));
+    }
+
+    /**
+     * 使资源主体的响应失效.
+     *
+     * @param subject 资源主体
+     */
+    public synchronized void invalidate(String subject) {
+        log.trace("[Gateway]Response of [{}] invalidated", subject);
+        subjectVersions.put(subject, ++lastVersion);
+    }
+
+    /**
+     * 使资源主体的响应失效并通知其它网关实例.
+     *
+     * @param moduleName 模块名
+     * @param subject    资源主体
+     */
+    public void invalidate(String moduleName, String subject) {
+        invalidate(subject);
+        FunCacheClient.choose(moduleName).publish(DewAuthConstant.CACHE_GATEWAY_RESPONSE_INVALIDATED_TOPIC, subject)
+                .onFailure(e -> log.warn("[Gateway]Publish response invalidated [{}] error: {}", subject, e.getMessage()));
+    }
+
+    private static class Response {
+
+        private final Tuple2<Buffer, Map<String, String>> result;
+        private final String subject;
+        private final long version;
+        private final long policyVersion;
+        private final long expireTime;
+
+        Response(Tuple2<Buffer, Map<String, String>> result, String subject, long version, long policyVersion, long expireTime) {
+            this.result = result;
+            this.subject = subject;
+            this.version = version;
+            this.policyVersion = policyVersion;
+            this.expireTime = expireTime;
+        }
+
+    }
+
+}
@@ -18,7 +18,10 @@ package idealworld.dew.serviceless.gateway.test;
 
 import idealworld.dew.framework.DewAuthConstant;
 import idealworld.dew.framework.DewConfig;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.IdentOptInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectOperatorKind;
@@ -40,6 +43,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -72,89 +76,38 @@ public class GatewayAuthPolicyTest extends DewTest {
     @SneakyThrows
     @Test
     public void testBasic(Vertx vertx, VertxTestContext testContext) {
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.CREATE.toString().toLowerCase())
                 .uri("http://iam.service/console/tenant/account")
                 .build()).toBuffer(), new HashMap<>());
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.DELETE.toString().toLowerCase())
                 .uri("http://iam.service/console/tenant/account/*")
                 .build()).toBuffer(), new HashMap<>());
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.DELETE.toString().toLowerCase())
                 .uri("http://iam.service/console/tenant/account/ident/*")
                 .build()).toBuffer(), new HashMap<>());
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.DELETE.toString().toLowerCase())
                 .uri("http://iam.service/console/tenant/account/ident/1")
                 .build()).toBuffer(), new HashMap<>());
         Thread.sleep(1000);
         // 先向redis中添加一些资源
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account:create",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.EQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.ROLE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("r01");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account/*:delete",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.EQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.ROLE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("r01");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account/ident/*:delete",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.NEQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.ROLE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("r01");
-                                    }
-                                });
-                            }
-                        });
-                        put(AuthSubjectOperatorKind.EQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.ACCOUNT.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("a01");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account/ident/1:delete",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.NEQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.ACCOUNT.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("a01");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account:create",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ROLE, "r01"), ""));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account/*:delete",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ROLE, "r01"), ""));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account/ident/*:delete",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.NEQ, AuthSubjectKind.ROLE, "r01"), ""));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account/ident/*:delete",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ACCOUNT, "a01"), ""));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account/ident/1:delete",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.NEQ, AuthSubjectKind.ACCOUNT, "a01"), ""));
         var authPolicy = new GatewayAuthPolicy(MODULE_NAME, 60, 5);
         Thread.sleep(1000);
         Map<AuthSubjectKind, List<String>> subjectInfo = new HashMap<>() {
@@ -198,85 +151,55 @@ public class GatewayAuthPolicyTest extends DewTest {
         // 资源需要认证，且匹配到权限主体：账号a01
         result = await(authPolicy.authentication(MODULE_NAME, "delete", URIHelper.newURI("http://iam.service/console/tenant/account/ident/2"), subjectInfo));
         Assertions.assertEquals(AuthResultKind.ACCEPT, result._0);
+        // 策略变更，通知后删除本地的策略缓存
+        await(cacheClient.del(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account:create"));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/tenant/account:create",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ROLE, "r02"), ""));
+        result = await(authPolicy.authentication(MODULE_NAME, "create", URIHelper.newURI("http://iam.service/console/tenant/account"), subjectInfo));
+        Assertions.assertEquals(AuthResultKind.ACCEPT, result._0);
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "policy"),
+                OptActionKind.MODIFY, "eb://iam/policy/create", JsonObject.mapFrom(ResourceExchange.builder()
+                .actionKind(OptActionKind.CREATE.toString().toLowerCase())
+                .uri("http://iam.service/console/tenant/account")
+                .build()).toBuffer(), new HashMap<>());
+        Thread.sleep(1000);
+        result = await(authPolicy.authentication(MODULE_NAME, "create", URIHelper.newURI("http://iam.service/console/tenant/account"), subjectInfo));
+        Assertions.assertEquals(AuthResultKind.REJECT, result._0);
         testContext.completeNow();
     }
 
     @SneakyThrows
     @Test
     public void testGroup(Vertx vertx, VertxTestContext testContext) {
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.CREATE.toString().toLowerCase())
                 .uri("http://iam.service/console/app/group/**")
                 .build()).toBuffer(), new HashMap<>());
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.DELETE.toString().toLowerCase())
                 .uri("http://iam.service/console/app/group/**")
                 .build()).toBuffer(), new HashMap<>());
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.MODIFY.toString().toLowerCase())
                 .uri("http://iam.service/console/app/group/**")
                 .build()).toBuffer(), new HashMap<>());
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
                 .actionKind(OptActionKind.PATCH.toString().toLowerCase())
                 .uri("http://iam.service/console/app/group/**")
                 .build()).toBuffer(), new HashMap<>());
         // 先向redis中添加一些资源
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:create",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.EQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.GROUP_NODE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("1000010000");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:delete",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.INCLUDE.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.GROUP_NODE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("1000010000");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:modify",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.LIKE.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.GROUP_NODE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("1000010000");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:patch",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.NEQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.GROUP_NODE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("1000010000");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:create",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.GROUP_NODE, "1000010000"), ""));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:delete",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.INCLUDE, AuthSubjectKind.GROUP_NODE, "1000010000"), ""));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:modify",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.LIKE, AuthSubjectKind.GROUP_NODE, "1000010000"), ""));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/group/**:patch",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.NEQ, AuthSubjectKind.GROUP_NODE, "1000010000"), ""));
         var authPolicy = new GatewayAuthPolicy(MODULE_NAME, 60, 5);
         Thread.sleep(1000);
         Map<AuthSubjectKind, List<String>> subjectInfo = new HashMap<>() {
@@ -352,22 +275,11 @@ public class GatewayAuthPolicyTest extends DewTest {
         var result = await(authPolicy.authentication(MODULE_NAME, "create", URIHelper.newURI("http://iam.service/console/app/ident"), subjectInfo));
         Assertions.assertEquals(AuthResultKind.ACCEPT, result._0);
         // 添加资源
-        await(cacheClient.set(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/ident/**:create",
-                JsonObject.mapFrom(new HashMap<String, Map<String, List<String>>>() {
-                    {
-                        put(AuthSubjectOperatorKind.EQ.toString().toLowerCase(), new HashMap<>() {
-                            {
-                                put(AuthSubjectKind.ROLE.toString().toLowerCase(), new ArrayList<>() {
-                                    {
-                                        add("r01");
-                                    }
-                                });
-                            }
-                        });
-                    }
-                }).toString()));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/ident/**:create",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ROLE, "r01"), ""));
         // 通知资源变更
-        eventBus.publish("", OptActionKind.CREATE, "eb://iam/resource.http/xxxx",
+        eventBus.publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http/xxxx",
                 JsonObject.mapFrom(ResourceExchange.builder()
                         .uri("http://iam.service/console/app/ident/**")
                         .actionKind(OptActionKind.CREATE.toString().toLowerCase())
@@ -379,7 +291,8 @@ public class GatewayAuthPolicyTest extends DewTest {
         // 删除资源
         await(cacheClient.del(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/ident/**:create"));
         // 通知资源变更
-        eventBus.publish("", OptActionKind.DELETE, "eb://iam/resource.http/xxxx",
+        eventBus.publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.DELETE, "eb://iam/resource.http/xxxx",
                 JsonObject.mapFrom(ResourceExchange.builder()
                         .uri("http://iam.service/console/app/ident/**")
                         .actionKind(OptActionKind.CREATE.toString().toLowerCase())
@@ -391,4 +304,42 @@ public class GatewayAuthPolicyTest extends DewTest {
         testContext.completeNow();
     }
 
+    @Test
+    public void testDecisionCache(Vertx vertx, VertxTestContext testContext) throws InterruptedException {
+        eventBus.publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resource.http"),
+                OptActionKind.CREATE, "eb://iam/resource.http", JsonObject.mapFrom(ResourceExchange.builder()
+                .actionKind(OptActionKind.CREATE.toString().toLowerCase())
+                .uri("http://iam.service/console/app/role")
+                .build()).toBuffer(), new HashMap<>());
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/role:create",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ROLE, "1"), ""));
+        var authPolicy = new GatewayAuthPolicy(MODULE_NAME, 60, 5, 100, 60);
+        Thread.sleep(1000);
+        var identOptInfo = IdentOptExchangeInfo.builder()
+                .roleInfo(new HashSet<>() {
+                    {
+                        add(IdentOptInfo.RoleInfo.builder().id(1L).build());
+                    }
+                })
+                .build();
+        var result = await(authPolicy.authentication(MODULE_NAME, "create", URIHelper.newURI("http://iam.service/console/app/role"), identOptInfo));
+        Assertions.assertEquals(AuthResultKind.ACCEPT, result._0);
+        // 策略变更但未通知，使用缓存的鉴权结果
+        await(cacheClient.del(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/role:create"));
+        await(cacheClient.hset(DewAuthConstant.CACHE_AUTH_POLICY + "http:iam.service/console/app/role:create",
+                LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ROLE, "2"), ""));
+        result = await(authPolicy.authentication(MODULE_NAME, "create", URIHelper.newURI("http://iam.service/console/app/role"), identOptInfo));
+        Assertions.assertEquals(AuthResultKind.ACCEPT, result._0);
+        // 通知策略变更，缓存的鉴权结果失效
+        eventBus.publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "policy"),
+                OptActionKind.MODIFY, "eb://iam/policy/create", JsonObject.mapFrom(ResourceExchange.builder()
+                .actionKind(OptActionKind.CREATE.toString().toLowerCase())
+                .uri("http://iam.service/console/app/role")
+                .build()).toBuffer(), new HashMap<>());
+        Thread.sleep(1000);
+        result = await(authPolicy.authentication(MODULE_NAME, "create", URIHelper.newURI("http://iam.service/console/app/role"), identOptInfo));
+        Assertions.assertEquals(AuthResultKind.REJECT, result._0);
+        testContext.completeNow();
+    }
+
 }
@@ -19,16 +19,21 @@ package idealworld.dew.serviceless.gateway.test;
 import com.ecfront.dew.common.$;
 import com.ecfront.dew.common.Resp;
 import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceSubjectExchange;
+import idealworld.dew.framework.fun.auth.exchange.ExchangeHelper;
 import idealworld.dew.framework.fun.cache.FunCacheClient;
 import idealworld.dew.framework.fun.eventbus.FunEventBus;
 import idealworld.dew.framework.fun.test.DewTest;
 import idealworld.dew.framework.util.URIHelper;
 import idealworld.dew.serviceless.gateway.GatewayConfig;
 import idealworld.dew.serviceless.gateway.GatewayModule;
+import idealworld.dew.serviceless.gateway.process.GatewayRateLimiter;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxTestContext;
 import lombok.SneakyThrows;
@@ -41,8 +46,11 @@ import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * 网关流程测试.
@@ -93,7 +101,8 @@ public class GatewayFlowTest extends DewTest {
     @Test
     public void testPublic(Vertx vertx, VertxTestContext testContext) {
         // 添加资源主体
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resourcesubject.http/httpbin",
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resourcesubject.http"),
+                OptActionKind.CREATE, "eb://iam/resourcesubject.http/httpbin",
                 JsonObject.mapFrom(ResourceSubjectExchange.builder()
                         .code("1.http.httpbin")
                         .name("测试API")
@@ -116,11 +125,55 @@ public class GatewayFlowTest extends DewTest {
         testContext.completeNow();
     }
 
+    @SneakyThrows
+    @Test
+    public void testBatch(Vertx vertx, VertxTestContext testContext) {
+        // 添加资源主体
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resourcesubject.http"),
+                OptActionKind.CREATE, "eb://iam/resourcesubject.http/httpbin",
+                JsonObject.mapFrom(ResourceSubjectExchange.builder()
+                        .code("1.http.httpbin")
+                        .name("测试API")
+                        .kind(ResourceKind.HTTP)
+                        .uri("https://httpbin.org")
+                        .ak("")
+                        .sk("")
+                        .platformAccount("")
+                        .platformProjectId("")
+                        .timeoutMs(10000L)
+                        .build()).toBuffer(), new HashMap<>());
+        Thread.sleep(1000);
+
+        var errorResult = Resp.generic($.http.post("http://127.0.0.1:9000/batch", "{}"), Void.class);
+        Assertions.assertEquals("请求格式不合法，批量请求体必须为非空数组", errorResult.getMessage());
+
+        var result = $.http.postWrap("http://127.0.0.1:9000/batch", new JsonArray()
+                .add(new JsonObject().put("uri", "http://1.http.httpbin/post").put("action", "create").put("body", "测试内容1"))
+                .add(new JsonObject().put("uri", "http://1.http.httpbin/post").put("action", "createx"))
+                .add(new JsonObject().put("uri", "http://1.http.httpbin/post").put("action", "create").put("body", new JsonObject().put("a", 1)))
+                .add(new JsonObject().put("action", "create"))
+                .toString());
+        Assertions.assertEquals(200, result.statusCode);
+        var data = new JsonObject(result.result);
+        Assertions.assertEquals("200", data.getString("code"));
+        var items = data.getJsonArray("body");
+        Assertions.assertEquals(4, items.size());
+        Assertions.assertEquals("200", items.getJsonObject(0).getString("code"));
+        Assertions.assertEquals("测试内容1", items.getJsonObject(0).getJsonObject("body").getString("data"));
+        Assertions.assertEquals("400", items.getJsonObject(1).getString("code"));
+        Assertions.assertEquals("请求格式不合法，资源类型或操作类型不存在", items.getJsonObject(1).getString("message"));
+        Assertions.assertEquals("200", items.getJsonObject(2).getString("code"));
+        Assertions.assertEquals(1, items.getJsonObject(2).getJsonObject("body").getJsonObject("json").getInteger("a"));
+        Assertions.assertEquals("400", items.getJsonObject(3).getString("code"));
+        testContext.completeNow();
+    }
+
     @SneakyThrows
     @Test
     public void testToken(Vertx vertx, VertxTestContext testContext) {
         // 添加资源主体
-        FunEventBus.choose(MODULE_NAME).publish("", OptActionKind.CREATE, "eb://iam/resourcesubject.http/httpbin",
+        FunEventBus.choose(MODULE_NAME).publish(ExchangeHelper.topic(DewAuthConstant.MODULE_IAM_NAME, "resourcesubject.http"),
+                OptActionKind.CREATE, "eb://iam/resourcesubject.http/httpbin",
                 JsonObject.mapFrom(ResourceSubjectExchange.builder()
                         .code("1.http.httpbin")
                         .name("测试API")
@@ -143,20 +196,103 @@ public class GatewayFlowTest extends DewTest {
                 });
         Assertions.assertEquals("认证错误，Token不合法", Resp.generic(errorResult.result, Void.class).getMessage());
 
-        FunCacheClient.choose(MODULE_NAME).set(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + "tokenxxx", "{\"accountCode\":\"testCode\"}");
-        vertx.setTimer(1000, h -> {
-            var result = $.http.postWrap("http://127.0.0.1:9000/exec?" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
-                            "=" + URLEncoder.encode("http://1.http.httpbin/post", StandardCharsets.UTF_8) + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create",
+        await(FunCacheClient.choose(MODULE_NAME).set(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + "tokenxxx", "{\"accountCode\":\"testCode\"}"));
+        var result = $.http.postWrap("http://127.0.0.1:9000/exec?" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
+                        "=" + URLEncoder.encode("http://1.http.httpbin/post", StandardCharsets.UTF_8) + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create",
+                "测试内容", new HashMap<>() {
+                    {
+                        put(DEW_SECURITY_CONFIG.getTokenFieldName(), "tokenxxx");
+                    }
+                });
+        Assertions.assertEquals(200, result.statusCode);
+        var data = new JsonObject(result.result);
+        Assertions.assertEquals("测试内容", data.getJsonObject("body").getString("data"));
+        // 移除Token后本地缓存即时失效
+        await(FunCacheClient.choose(MODULE_NAME).del(DewAuthConstant.CACHE_TOKEN_INFO_FLAG + "tokenxxx")
+                .compose(resp -> FunCacheClient.choose(MODULE_NAME).publish(DewAuthConstant.CACHE_TOKEN_REMOVED_TOPIC, "tokenxxx")));
+        // 通知为异步送达，轮询直至失效
+        var removedMessage = pollUntil(() -> {
+            var removedResult = $.http.postWrap("http://127.0.0.1:9000/exec?" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
+                            "=" + URLEncoder.encode("http://1.http.httpbin/post", StandardCharsets.UTF_8) + "&"
+                            + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create",
                     "测试内容", new HashMap<>() {
                         {
                             put(DEW_SECURITY_CONFIG.getTokenFieldName(), "tokenxxx");
                         }
                     });
-            Assertions.assertEquals(200, result.statusCode);
-            var data = new JsonObject(result.result);
-            Assertions.assertEquals("测试内容", data.getJsonObject("body").getString("data"));
-            testContext.completeNow();
-        });
+            return Resp.generic(removedResult.result, Void.class).getMessage();
+        }, "认证错误，Token不合法"::equals);
+        Assertions.assertEquals("认证错误，Token不合法", removedMessage);
+        testContext.completeNow();
+    }
+
+    @SneakyThrows
+    @Test
+    public void testBlockIp(Vertx vertx, VertxTestContext testContext) {
+        var url = "http://127.0.0.1:9000/exec?" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
+                "=" + URLEncoder.encode("http://1.http.httpbin/post", StandardCharsets.UTF_8) + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create";
+        var header = new HashMap<String, String>() {
+            {
+                put("X-Forwarded-For", "10.10.1.1, 127.0.0.1");
+            }
+        };
+        Assertions.assertNotEquals("请求IP不合法", Resp.generic($.http.postWrap(url, "", header).result, Void.class).getMessage());
+        // 更新缓存中的黑名单后通知重新加载
+        FunCacheClient.choose(MODULE_NAME).hset(DewAuthConstant.CACHE_GATEWAY_BLOCK_IPS, "10.10.0.0/16", "测试")
+                .compose(resp -> FunCacheClient.choose(MODULE_NAME).publish(DewAuthConstant.CACHE_GATEWAY_IPS_CHANGED_TOPIC, ""));
+        Thread.sleep(1000);
+        Assertions.assertEquals("请求IP不合法", Resp.generic($.http.postWrap(url, "", header).result, Void.class).getMessage());
+        FunCacheClient.choose(MODULE_NAME).hdel(DewAuthConstant.CACHE_GATEWAY_BLOCK_IPS, "10.10.0.0/16")
+                .compose(resp -> FunCacheClient.choose(MODULE_NAME).publish(DewAuthConstant.CACHE_GATEWAY_IPS_CHANGED_TOPIC, ""));
+        Thread.sleep(1000);
+        Assertions.assertNotEquals("请求IP不合法", Resp.generic($.http.postWrap(url, "", header).result, Void.class).getMessage());
+        testContext.completeNow();
+    }
+
+    @SneakyThrows
+    @Test
+    public void testRateLimit(Vertx vertx, VertxTestContext testContext) {
+        // 本地令牌桶
+        var rateLimiter = new GatewayRateLimiter(GatewayConfig.RateLimit.builder()
+                .rules(List.of(GatewayConfig.RateLimit.Rule.builder()
+                        .code("app")
+                        .subjectKind(AuthSubjectKind.APP)
+                        .permitsPerSec(1)
+                        .burst(2)
+                        .build()))
+                .build());
+        var identOptInfo = new IdentOptExchangeInfo();
+        identOptInfo.setUnauthorizedAppId(1L);
+        Assertions.assertEquals(0, rateLimiter.tryAcquire(identOptInfo, null));
+        Assertions.assertEquals(0, rateLimiter.tryAcquire(identOptInfo, null));
+        Assertions.assertTrue(rateLimiter.tryAcquire(identOptInfo, null) > 0);
+        identOptInfo.setUnauthorizedAppId(2L);
+        Assertions.assertEquals(0, rateLimiter.tryAcquire(identOptInfo, null));
+
+        // 缓存中的规则
+        var url = "http://127.0.0.1:9000/exec?" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
+                "=" + URLEncoder.encode("http://1.http.ratelimit/post", StandardCharsets.UTF_8)
+                + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create";
+        FunCacheClient.choose(MODULE_NAME).hset(DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_RULES, "test-ratelimit",
+                "{\"subjectKind\":\"APP\",\"resourcePattern\":\"http://1.http.ratelimit/**\",\"permitsPerSec\":1,\"burst\":1}")
+                .compose(resp -> FunCacheClient.choose(MODULE_NAME).publish(DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_CHANGED_TOPIC, ""));
+        Thread.sleep(1000);
+        Assertions.assertNotEquals(429, $.http.postWrap(url, "").statusCode);
+        var result = $.http.postWrap(url, "");
+        Assertions.assertEquals(429, result.statusCode);
+        Assertions.assertEquals("429", Resp.generic(result.result, Void.class).getCode());
+        // 批量请求按各请求项的资源URI限流
+        var batchResult = $.http.postWrap("http://127.0.0.1:9000/batch", new JsonArray()
+                .add(new JsonObject().put("uri", "http://1.http.ratelimit/post").put("action", "create"))
+                .add(new JsonObject().put("uri", "http://1.http.ratelimit/post").put("action", "create"))
+                .toString());
+        Assertions.assertEquals(200, batchResult.statusCode);
+        Assertions.assertEquals("429", new JsonObject(batchResult.result).getJsonArray("body").getJsonObject(1).getString("code"));
+        FunCacheClient.choose(MODULE_NAME).hdel(DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_RULES, "test-ratelimit")
+                .compose(resp -> FunCacheClient.choose(MODULE_NAME).publish(DewAuthConstant.CACHE_GATEWAY_RATE_LIMIT_CHANGED_TOPIC, ""));
+        Thread.sleep(1000);
+        Assertions.assertNotEquals(429, $.http.postWrap(url, "").statusCode);
+        testContext.completeNow();
     }
 
     @Test
@@ -203,37 +339,45 @@ public class GatewayFlowTest extends DewTest {
                 });
         Assertions.assertEquals("认证错误，AK不存在", Resp.generic(errorResult.result, Void.class).getMessage());
 
-        FunCacheClient.choose(MODULE_NAME).set(DewAuthConstant.CACHE_APP_AK + "xx", "skxx:1123456:789:acxxxx");
-        vertx.setTimer(1000, h -> {
-            var result = $.http.postWrap("http://127.0.0.1:9000/exec?" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
-                            "=" + URLEncoder.encode("http://httpbin.org/post", StandardCharsets.UTF_8) + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create",
-                    "测试内容", new HashMap<>() {
-                        {
-                            put(DEW_SECURITY_CONFIG.getAkSkFieldName(), "xx:xxx");
-                            put(DEW_SECURITY_CONFIG.getAkSkDateFieldName(), sdf.format(new Date()));
-                        }
-                    });
-            Assertions.assertEquals("认证错误，签名不合法", Resp.generic(result.result, Void.class).getMessage());
-
-            var d = sdf.format(new Date());
-            var query = DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
-                    "=" + URLEncoder.encode("http://httpbin.org/post", StandardCharsets.UTF_8) + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create";
-            query = URIHelper.sortQuery(query);
-            var signature = $.security.encodeStringToBase64(
-                    $.security.digest.digest(("POST\n" + d + "\n/exec\n" + query).toLowerCase(),
-                            "skxx", "HmacSHA1"), StandardCharsets.UTF_8);
-            result = $.http.postWrap("http://127.0.0.1:9000/exec?" + query,
-                    "测试内容", new HashMap<>() {
-                        {
-                            put(DEW_SECURITY_CONFIG.getAkSkFieldName(), "xx:" + signature);
-                            put(DEW_SECURITY_CONFIG.getAkSkDateFieldName(), d);
-                        }
-                    });
-            Assertions.assertEquals(200, result.statusCode);
-            Assertions.assertEquals("找不到请求的资源主体[httpbin.org]", Resp.generic(result.result, Object.class).getMessage());
-            testContext.completeNow();
-        });
+        await(FunCacheClient.choose(MODULE_NAME).set(DewAuthConstant.CACHE_APP_AK + "xx", "skxx:1123456:789:acxxxx"));
+        var result = $.http.postWrap("http://127.0.0.1:9000/exec?" + DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
+                        "=" + URLEncoder.encode("http://httpbin.org/post", StandardCharsets.UTF_8) + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create",
+                "测试内容", new HashMap<>() {
+                    {
+                        put(DEW_SECURITY_CONFIG.getAkSkFieldName(), "xx:xxx");
+                        put(DEW_SECURITY_CONFIG.getAkSkDateFieldName(), sdf.format(new Date()));
+                    }
+                });
+        Assertions.assertEquals("认证错误，签名不合法", Resp.generic(result.result, Void.class).getMessage());
 
+        var d = sdf.format(new Date());
+        var query = DewAuthConstant.REQUEST_RESOURCE_URI_FLAG +
+                "=" + URLEncoder.encode("http://httpbin.org/post", StandardCharsets.UTF_8) + "&" + DewAuthConstant.REQUEST_RESOURCE_ACTION_FLAG + "=create";
+        query = URIHelper.sortQuery(query);
+        var signature = $.security.encodeStringToBase64(
+                $.security.digest.digest(("POST\n" + d + "\n/exec\n" + query).toLowerCase(),
+                        "skxx", "HmacSHA1"), StandardCharsets.UTF_8);
+        result = $.http.postWrap("http://127.0.0.1:9000/exec?" + query,
+                "测试内容", new HashMap<>() {
+                    {
+                        put(DEW_SECURITY_CONFIG.getAkSkFieldName(), "xx:" + signature);
+                        put(DEW_SECURITY_CONFIG.getAkSkDateFieldName(), d);
+                    }
+                });
+        Assertions.assertEquals(200, result.statusCode);
+        Assertions.assertEquals("找不到请求的资源主体[httpbin.org]", Resp.generic(result.result, Object.class).getMessage());
+        testContext.completeNow();
+    }
+
+    @SneakyThrows
+    private static String pollUntil(Supplier<String> fun, Predicate<String> condition) {
+        var deadline = System.currentTimeMillis() + 5000;
+        var result = fun.get();
+        while (!condition.test(result) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            result = fun.get();
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021. gudaoxuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package idealworld.dew.serviceless.gateway.test;
+
+import com.ecfront.dew.common.tuple.Tuple2;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
+import idealworld.dew.framework.dto.IdentOptInfo;
+import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
+import idealworld.dew.framework.fun.auth.LocalResourceCache;
+import idealworld.dew.framework.fun.test.DewTest;
+import idealworld.dew.framework.util.URIHelper;
+import idealworld.dew.serviceless.gateway.process.GatewayResponseCache;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 网关响应缓存测试.
+ *
+ * @author gudaoxuri
+ */
+public class GatewayResponseCacheTest extends DewTest {
+
+    @Test
+    public void testCacheExpireSec(Vertx vertx, VertxTestContext testContext) {
+        LocalResourceCache.addLocalResource(URIHelper.newURI("reldb://1.reldb.cachetest/user"), "fetch", 60);
+        LocalResourceCache.addLocalResource(URIHelper.newURI("reldb://1.reldb.cachetest/user/**"), "fetch", 10);
+        LocalResourceCache.addLocalResource(URIHelper.newURI("reldb://1.reldb.cachetest/user/fields/**"), "fetch", 0);
+        Assertions.assertEquals(60, LocalResourceCache.getCacheExpireSec(URIHelper.newURI("reldb://1.reldb.cachetest/user"), "fetch"));
+        Assertions.assertEquals(10, LocalResourceCache.getCacheExpireSec(URIHelper.newURI("reldb://1.reldb.cachetest/user/rows/1"), "fetch"));
+        // 以最具体的匹配资源为准
+        Assertions.assertEquals(0, LocalResourceCache.getCacheExpireSec(URIHelper.newURI("reldb://1.reldb.cachetest/user/fields/name"), "fetch"));
+        Assertions.assertEquals(0, LocalResourceCache.getCacheExpireSec(URIHelper.newURI("reldb://1.reldb.cachetest/user"), "create"));
+        LocalResourceCache.removeLocalResource(URIHelper.newURI("reldb://1.reldb.cachetest/user"), "fetch");
+        Assertions.assertEquals(0, LocalResourceCache.getCacheExpireSec(URIHelper.newURI("reldb://1.reldb.cachetest/user"), "fetch"));
+        testContext.completeNow();
+    }
+
+    @Test
+    public void testResponseCache(Vertx vertx, VertxTestContext testContext) {
+        var responseCache = new GatewayResponseCache(2);
+        var uri = URIHelper.newURI("reldb://1.reldb.cachetest/user?b=2&a=1");
+        var subject = GatewayResponseCache.subject(uri);
+        Assertions.assertEquals("reldb://1.reldb.cachetest", subject);
+        var identOptInfo = IdentOptExchangeInfo.builder()
+                .unauthorizedTenantId(1L)
+                .unauthorizedAppId(1L)
+                .accountId(1L)
+                .build();
+        var key = GatewayResponseCache.key(identOptInfo, OptActionKind.FETCH, uri, Buffer.buffer("{}"));
+        // 权限主体、查询参数顺序及请求体
+        Assertions.assertEquals(key, GatewayResponseCache.key(identOptInfo, OptActionKind.FETCH,
+                URIHelper.newURI("reldb://1.reldb.cachetest/user?a=1&b=2"), Buffer.buffer("{}")));
+        Assertions.assertNotEquals(key, GatewayResponseCache.key(identOptInfo, OptActionKind.FETCH, uri, Buffer.buffer("{\"a\":1}")));
+        Assertions.assertNotEquals(key, GatewayResponseCache.key(IdentOptExchangeInfo.builder()
+                .unauthorizedTenantId(1L)
+                .unauthorizedAppId(1L)
+                .build(), OptActionKind.FETCH, uri, Buffer.buffer("{}")));
+        // 同一账号的角色不同时鉴权结果可能不同
+        Assertions.assertNotEquals(key, GatewayResponseCache.key(IdentOptExchangeInfo.builder()
+                .unauthorizedTenantId(1L)
+                .unauthorizedAppId(1L)
+                .accountId(1L)
+                .roleInfo(Set.of(IdentOptInfo.RoleInfo.builder().id(1L).build()))
+                .build(), OptActionKind.FETCH, uri, Buffer.buffer("{}")));
+        // 操作类型
+        Assertions.assertNotEquals(key, GatewayResponseCache.key(identOptInfo, OptActionKind.EXISTS, uri, Buffer.buffer("{}")));
+
+        var result = new Tuple2<Buffer, Map<String, String>>(Buffer.buffer("[]"), Map.of());
+        responseCache.put(key, subject, result, responseCache.getVersion(subject), LocalPolicyCache.getVersion(), 60);
+        Assertions.assertEquals(result, responseCache.get(key));
+        // 资源主体变更
+        var version = responseCache.getVersion(subject);
+        responseCache.invalidate(subject);
+        Assertions.assertNull(responseCache.get(key));
+        // 请求期间资源主体变更
+        responseCache.put(key, subject, result, version, LocalPolicyCache.getVersion(), 60);
+        Assertions.assertNull(responseCache.get(key));
+        responseCache.put(key, subject, result, responseCache.getVersion(subject), LocalPolicyCache.getVersion(), 60);
+        Assertions.assertEquals(result, responseCache.get(key));
+        // 其它资源主体不受影响
+        responseCache.invalidate("reldb://1.reldb.other");
+        Assertions.assertEquals(result, responseCache.get(key));
+        // 策略变更
+        var policyVersion = LocalPolicyCache.getVersion();
+        LocalPolicyCache.clear();
+        Assertions.assertNull(responseCache.get(key));
+        // 请求期间策略变更
+        responseCache.put(key, subject, result, responseCache.getVersion(subject), policyVersion, 60);
+        Assertions.assertNull(responseCache.get(key));
+        responseCache.put(key, subject, result, responseCache.getVersion(subject), LocalPolicyCache.getVersion(), 60);
+        Assertions.assertEquals(result, responseCache.get(key));
+        // 资源主体的版本被淘汰后旧的响应不会重新生效
+        version = responseCache.getVersion(subject);
+        responseCache.put("k0", subject, result, version, LocalPolicyCache.getVersion(), 60);
+        responseCache.invalidate(subject);
+        responseCache.invalidate("reldb://1.reldb.other1");
+        responseCache.invalidate("reldb://1.reldb.other2");
+        Assertions.assertNotEquals(version, responseCache.getVersion(subject));
+        responseCache.put("k0", subject, result, version, LocalPolicyCache.getVersion(), 60);
+        Assertions.assertNull(responseCache.get("k0"));
+        responseCache.put(key, subject, result, responseCache.getVersion(subject), LocalPolicyCache.getVersion(), 60);
+        Assertions.assertEquals(result, responseCache.get(key));
+        // 容量
+        responseCache.put("k1", subject, result, responseCache.getVersion(subject), LocalPolicyCache.getVersion(), 60);
+        responseCache.put("k2", subject, result, responseCache.getVersion(subject), LocalPolicyCache.getVersion(), 60);
+        Assertions.assertNull(responseCache.get(key));
+        testContext.completeNow();
+    }
+
+}
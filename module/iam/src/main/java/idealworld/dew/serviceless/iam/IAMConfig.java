@@ -22,6 +22,9 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.HashMap;
+import java.util.Map;
+
 
 /**
  * IAM配置.
@@ -78,6 +81,15 @@ public class IAMConfig {
         private Long authPolicyExpireCleanIntervalSec = 60 * 60 * 24L;
         @Builder.Default
         private Integer authPolicyMaxFetchCount = 1000;
+        // 资源及资源主体变更日志保留的变更数，订阅方落后更多时需要全量重新加载
+        @Builder.Default
+        private Integer exchangeChangeLogMaxSize = 10000;
+        // 同一账号同一Token类型保留的历史Token数，0表示只保留最新的Token
+        @Builder.Default
+        private Integer tokenRevisionHistoryLimit = 0;
+        // Token类型 -> 保留的历史Token数，未配置的类型使用 tokenRevisionHistoryLimit
+        @Builder.Default
+        private Map<String, Integer> tokenKindRevisionHistoryLimits = new HashMap<>();
 
     }
 
@@ -21,6 +21,7 @@ import idealworld.dew.framework.DewConstant;
 import idealworld.dew.framework.DewModule;
 import idealworld.dew.framework.dto.IdentOptCacheInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.AuthCacheProcessor;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectOperatorKind;
@@ -71,6 +72,8 @@ public class IAMModule extends DewModule<IAMConfig> {
 
     @Override
     protected Future<Void> start(IAMConfig config) {
+        AuthCacheProcessor.setRevisionHistoryLimit(config.getSecurity().getTokenRevisionHistoryLimit(),
+                config.getSecurity().getTokenKindRevisionHistoryLimits());
         new CommonProcessor(getModuleName());
         new SCTenantProcessor(getModuleName());
         new TCTenantProcessor(getModuleName());
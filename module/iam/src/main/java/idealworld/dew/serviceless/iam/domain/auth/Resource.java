@@ -121,6 +121,9 @@ public class Resource extends AppBasedEntity {
     // 资源显示排序，asc
     @NotNull
     private Integer sort;
+    // 响应缓存时间（秒），0表示不缓存，只对获取及是否存在操作有效
+    @NotNull
+    private Integer cacheExpireSec;
     // 触发后的操作，多用于菜单链接
     @NotNull
     @NotBlank
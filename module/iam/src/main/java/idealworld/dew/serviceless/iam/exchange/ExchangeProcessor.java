@@ -20,11 +20,15 @@ import idealworld.dew.framework.DewConstant;
 import idealworld.dew.framework.dto.CommonStatus;
 import idealworld.dew.framework.dto.OptActionKind;
 import idealworld.dew.framework.exception.BadRequestException;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
 import idealworld.dew.framework.fun.auth.dto.*;
+import idealworld.dew.framework.fun.auth.exchange.ExchangeHelper;
 import idealworld.dew.framework.fun.eventbus.EventBusProcessor;
 import idealworld.dew.framework.fun.eventbus.ProcessContext;
 import idealworld.dew.framework.util.URIHelper;
+import idealworld.dew.serviceless.iam.IAMConfig;
 import idealworld.dew.serviceless.iam.IAMConstant;
+import idealworld.dew.serviceless.iam.domain.auth.AuthPolicy;
 import idealworld.dew.serviceless.iam.domain.auth.Resource;
 import idealworld.dew.serviceless.iam.domain.auth.ResourceSubject;
 import idealworld.dew.serviceless.iam.domain.ident.App;
@@ -33,7 +37,6 @@ import idealworld.dew.serviceless.iam.domain.ident.Tenant;
 import idealworld.dew.serviceless.iam.process.IAMBasicProcessor;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -42,8 +45,12 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -54,7 +61,53 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ExchangeProcessor extends EventBusProcessor {
 
+    // 记录到变更日志的主题前缀，即资源及资源主体
+    private static final String CHANGE_LOG_CATEGORY_PREFIX = Resource.class.getSimpleName().toLowerCase();
+    // 生成序号并追加变更，只保留最近的变更
+    // KEYS[1]: 序号Key，KEYS[2]: 变更日志Key，ARGV[1]: 变更，ARGV[2]: 保留的变更数
+    private static final String APPEND_CHANGE_LOG_SCRIPT = ""
+            + "local seq = redis.call('INCR', KEYS[1])\n"
+            + "redis.call('ZADD', KEYS[2], seq, seq .. ':' .. ARGV[1])\n"
+            + "redis.call('ZREMRANGEBYRANK', KEYS[2], 0, -(tonumber(ARGV[2]) + 1))\n"
+            + "return seq";
+    // 获取当前序号、日志中最早的序号及指定序号之后的变更
+    // KEYS[1]: 序号Key，KEYS[2]: 变更日志Key，ARGV[1]: 起始序号（不包含）
+    private static final String FETCH_CHANGE_LOG_SCRIPT = ""
+            + "local seq = tonumber(redis.call('GET', KEYS[1]) or '0')\n"
+            + "local first = redis.call('ZRANGE', KEYS[2], 0, 0, 'WITHSCORES')\n"
+            + "local firstSeq = seq + 1\n"
+            + "if first[2] then\n"
+            + "  firstSeq = tonumber(first[2])\n"
+            + "end\n"
+            + "local changes = {}\n"
+            + "for _, member in ipairs(redis.call('ZRANGEBYSCORE', KEYS[2], '(' .. ARGV[1], '+inf')) do\n"
+            + "  local sep = string.find(member, ':', 1, true)\n"
+            + "  changes[#changes + 1] = '{\"seq\":' .. string.sub(member, 1, sep - 1) .. ',' .. string.sub(member, sep + 2)\n"
+            + "end\n"
+            + "return '{\"seq\":' .. seq .. ',\"firstSeq\":' .. firstSeq .. ',\"changes\":[' .. table.concat(changes, ',') .. ']}'";
+    // 鉴权策略的存储格式版本，Hash字段的值为引用该权限主体的权限策略数
+    private static final String POLICY_FORMAT = "2";
+    // 减少权限主体的引用数，减为0时删除该字段
+    // KEYS[1]: 策略Key，ARGV[1]: 字段
+    private static final String RELEASE_POLICY_FIELD_SCRIPT = ""
+            + "local count = redis.call('HINCRBY', KEYS[1], ARGV[1], -1)\n"
+            + "if count <= 0 then\n"
+            + "  redis.call('HDEL', KEYS[1], ARGV[1])\n"
+            + "end\n"
+            + "return count";
+    // 替换整个策略
+    // KEYS[1]: 策略Key，ARGV: 字段1, 引用数1, 字段2, 引用数2 ...
+    private static final String REPLACE_POLICY_SCRIPT = ""
+            + "redis.call('DEL', KEYS[1])\n"
+            + "for i = 1, #ARGV, 2 do\n"
+            + "  redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n"
+            + "end\n"
+            + "return #ARGV";
+
     {
+        addProcessor(OptActionKind.FETCH, DewConstant.REQUEST_INNER_PATH_PREFIX + "changelog", eventBusContext ->
+                findChangeLog(eventBusContext.req.params.getOrDefault("category", ""),
+                        Long.parseLong(eventBusContext.req.params.getOrDefault("since", "0")), eventBusContext.context));
         addProcessor(OptActionKind.FETCH, DewConstant.REQUEST_INNER_PATH_PREFIX + "resource/subject", eventBusContext ->
                 findResourceSubjects(eventBusContext.req.params.getOrDefault("kind", null), eventBusContext.context));
         addProcessor(OptActionKind.FETCH, DewConstant.REQUEST_INNER_PATH_PREFIX + "resource", eventBusContext ->
@@ -94,7 +147,7 @@ public class ExchangeProcessor extends EventBusProcessor {
     }
 
     private static Future<List<ResourceExchange>> findResources(String kind, ProcessContext context) {
-        var sql = "SELECT resource.uri, resource.action FROM %s resource";
+        var sql = "SELECT resource.uri, resource.action, resource.cache_expire_sec FROM %s resource";
         var whereParameters = new HashMap<String, Object>();
         if (kind != null && !kind.isBlank()) {
             sql += " INNER JOIN %s subject ON subject.id = resource.rel_resource_subject_id" +
@@ -114,16 +167,56 @@ public class ExchangeProcessor extends EventBusProcessor {
                                                 ResourceExchange.builder()
                                                         .uri(resource.getString("uri"))
                                                         .actionKind(resource.getString("action"))
+                                                        .cacheExpireSec(resource.getInteger("cache_expire_sec"))
                                                         .build())
                                         .collect(Collectors.toList())));
     }
 
+    private static Future<JsonObject> findChangeLog(String category, Long sinceSeq, ProcessContext context) {
+        if (!category.toLowerCase().startsWith(CHANGE_LOG_CATEGORY_PREFIX)) {
+            throw context.helper.error(new BadRequestException("变更主题不合法"));
+        }
+        return context.cache.eval(FETCH_CHANGE_LOG_SCRIPT,
+                changeLogKeys(category),
+                List.of(String.valueOf(sinceSeq)))
+                .compose(changeLog -> context.helper.success(new JsonObject(changeLog)));
+    }
+
+    private static List<String> changeLogKeys(String subjectCategory) {
+        return List.of(IAMConstant.CACHE_EXCHANGE_CHANGE_SEQ + subjectCategory.toLowerCase(),
+                IAMConstant.CACHE_EXCHANGE_CHANGE_LOG + subjectCategory.toLowerCase());
+    }
+
+    /**
+     * 发布变更.
+     * <p>
+     * 发布到主题对应的地址，只有监听了该主题的模块才会收到，见 {@link ExchangeHelper#topic(String, String)}。
+     */
     public static void publish(OptActionKind actionKind, String subjectCategory, Object subjectId, Object detailData, ProcessContext context) {
-        context.eb.publish("",
-                actionKind,
-                "eb://" + context.moduleName + "/" + subjectCategory + "/" + subjectId,
-                JsonObject.mapFrom(detailData).toBuffer(),
-                new HashMap<>());
+        var topic = ExchangeHelper.topic(context.moduleName, subjectCategory);
+        var uri = "eb://" + context.moduleName + "/" + subjectCategory + "/" + subjectId;
+        var body = JsonObject.mapFrom(detailData);
+        if (!subjectCategory.toLowerCase().startsWith(CHANGE_LOG_CATEGORY_PREFIX)) {
+            context.eb.publish(topic, actionKind, uri, body.toBuffer(), new HashMap<>());
+            return;
+        }
+        // 先记录到变更日志，订阅方据变更序号发现并补齐遗漏的变更
+        var change = new JsonObject()
+                .put("actionKind", actionKind.toString())
+                .put("uri", uri)
+                .put("body", body);
+        context.cache.eval(APPEND_CHANGE_LOG_SCRIPT,
+                changeLogKeys(subjectCategory),
+                List.of(change.toString(), String.valueOf(((IAMConfig) context.conf).getSecurity().getExchangeChangeLogMaxSize())))
+                .onSuccess(seq -> context.eb.publish(topic, actionKind, uri, body.toBuffer(), new HashMap<>() {
+                    {
+                        put(IAMConstant.REQUEST_EXCHANGE_SEQ_FLAG, seq);
+                    }
+                }))
+                .onFailure(e -> {
+                    log.error("[Exchange]Append change log [{}] error: {}", uri, e.getMessage(), e);
+                    context.eb.publish(topic, actionKind, uri, body.toBuffer(), new HashMap<>());
+                });
     }
 
     public static Future<Void> enableTenant(Long tenantId, ProcessContext context) {
@@ -252,58 +345,106 @@ public class ExchangeProcessor extends EventBusProcessor {
             context.helper.error(new BadRequestException("权限主体运算类型为INCLUDE/LIKE时权限主体只能为GROUP_NODE"));
         }
         policyInfo.setResourceUri(URIHelper.formatUri(policyInfo.getResourceUri()));
-        var key = IAMConstant.CACHE_AUTH_POLICY
-                + policyInfo.getResourceUri().replace("//", "") + ":"
-                + policyInfo.getActionKind().toString().toLowerCase();
-        return context.cache.get(key)
-                .compose(strPolicyValue -> {
-                    var policyValue = strPolicyValue != null ? new JsonObject(strPolicyValue) : new JsonObject();
-                    if (!policyValue.containsKey(policyInfo.subjectOperator.toString().toLowerCase())) {
-                        policyValue.put(policyInfo.subjectOperator.toString().toLowerCase(), new JsonObject());
-                    }
-                    if (!policyValue.getJsonObject(policyInfo.subjectOperator.toString().toLowerCase())
-                            .containsKey(policyInfo.subjectKind.toString().toLowerCase())) {
-                        policyValue.getJsonObject(policyInfo.subjectOperator.toString().toLowerCase())
-                                .put(policyInfo.subjectKind.toString().toLowerCase(), new JsonArray());
-                    }
-                    policyValue.getJsonObject(policyInfo.subjectOperator.toString().toLowerCase())
-                            .getJsonArray(policyInfo.subjectKind.toString().toLowerCase()).add(policyInfo.getSubjectId());
-                    return context.cache.set(key, policyValue.toString());
-                });
+        // 每个权限主体为Hash中的一个字段，值为引用数，同一权限主体可能由多个权限策略授予
+        return context.cache.hincrby(policyKey(policyInfo.getResourceUri(), policyInfo.getActionKind()),
+                LocalPolicyCache.policyField(policyInfo.getSubjectOperator(), policyInfo.getSubjectKind(), policyInfo.getSubjectId()), 1)
+                .<Void>mapEmpty()
+                .onSuccess(resp -> publishPolicy(policyInfo.getResourceUri(), policyInfo.getActionKind(), context));
     }
 
     public static Future<Void> removePolicy(AuthPolicyInfo policyInfo, ProcessContext context) {
         policyInfo.setResourceUri(URIHelper.formatUri(policyInfo.getResourceUri()));
-        var key = IAMConstant.CACHE_AUTH_POLICY
-                + policyInfo.getResourceUri().replace("//", "") + ":"
-                + policyInfo.getActionKind().toString().toLowerCase();
-        return context.cache.get(key)
-                .compose(strPolicyValue -> {
-                    if (strPolicyValue == null) {
-                        return context.helper.success();
-                    }
-                    var policyValue = new JsonObject(strPolicyValue);
-                    if (!policyValue.containsKey(policyInfo.subjectOperator.toString().toLowerCase())
-                            || !policyValue.getJsonObject(policyInfo.subjectOperator.toString().toLowerCase())
-                            .containsKey(policyInfo.subjectKind.toString().toLowerCase())) {
-                        return context.helper.success();
-                    }
-                    policyValue.getJsonObject(policyInfo.subjectOperator.toString().toLowerCase())
-                            .getJsonArray(policyInfo.subjectKind.toString().toLowerCase()).remove(policyInfo.getSubjectId());
-                    return context.cache.set(key, policyValue.toString());
-                });
+        // 其它权限策略仍授予该权限主体时保留
+        return context.cache.eval(RELEASE_POLICY_FIELD_SCRIPT,
+                List.of(policyKey(policyInfo.getResourceUri(), policyInfo.getActionKind())),
+                List.of(LocalPolicyCache.policyField(policyInfo.getSubjectOperator(), policyInfo.getSubjectKind(), policyInfo.getSubjectId())))
+                .<Void>mapEmpty()
+                .onSuccess(resp -> publishPolicy(policyInfo.getResourceUri(), policyInfo.getActionKind(), context));
     }
 
     public static Future<Void> removePolicy(String resourceUri, OptActionKind actionKind, ProcessContext context) {
-        resourceUri = URIHelper.formatUri(resourceUri);
-        var key = IAMConstant.CACHE_AUTH_POLICY
-                + resourceUri.replace("//", "") + ":"
-                + actionKind.toString().toLowerCase();
-        return context.cache.del(key);
+        var formattedResourceUri = URIHelper.formatUri(resourceUri);
+        return context.cache.del(policyKey(formattedResourceUri, actionKind))
+                .onSuccess(resp -> publishPolicy(formattedResourceUri, actionKind, context));
+    }
+
+    private static String policyKey(String formattedResourceUri, OptActionKind actionKind) {
+        return IAMConstant.CACHE_AUTH_POLICY + LocalPolicyCache.policyKey(formattedResourceUri, actionKind.toString());
+    }
+
+    /**
+     * 通知各模块鉴权策略已变更，以删除本地的策略缓存.
+     */
+    private static void publishPolicy(String resourceUri, OptActionKind actionKind, ProcessContext context) {
+        publish(OptActionKind.MODIFY, "policy", actionKind.toString().toLowerCase(), ResourceExchange.builder()
+                .uri(resourceUri)
+                .actionKind(actionKind.toString().toLowerCase())
+                .build(), context);
     }
 
     public Future<Void> init(ProcessContext context) {
-        return cacheAppIdents(context);
+        return cacheAppIdents(context)
+                .compose(resp -> rebuildPolicies(context));
+    }
+
+    /**
+     * 存储格式不一致时（旧版本的JSON字符串或未记录引用数的Hash）以权限策略表重建Redis中的所有鉴权策略.
+     * <p>
+     * 逐个原子地替换策略，权限策略表中已不存在的策略Key直接删除.
+     */
+    private Future<Void> rebuildPolicies(ProcessContext context) {
+        if (!context.cache.isLeader()) {
+            return context.helper.success();
+        }
+        return context.cache.get(IAMConstant.CACHE_AUTH_POLICY_FORMAT)
+                .compose(format -> {
+                    if (POLICY_FORMAT.equals(format)) {
+                        return context.helper.success();
+                    }
+                    log.info("[Startup]Rebuilding auth policies of format [{}]", format);
+                    var staleKeys = ConcurrentHashMap.<String>newKeySet();
+                    return context.cache.scan(IAMConstant.CACHE_AUTH_POLICY, staleKeys::add)
+                            .compose(resp -> findPolicyFields(context))
+                            .compose(policies -> {
+                                staleKeys.removeAll(policies.keySet());
+                                var rebuildFs = new ArrayList<Future>();
+                                policies.forEach((key, fields) -> {
+                                    var args = new ArrayList<String>();
+                                    fields.forEach((field, count) -> {
+                                        args.add(field);
+                                        args.add(String.valueOf(count));
+                                    });
+                                    rebuildFs.add(context.cache.eval(REPLACE_POLICY_SCRIPT, List.of(key), args));
+                                });
+                                // 逐个删除以兼容Redis集群
+                                staleKeys.forEach(key -> rebuildFs.add(context.cache.del(key)));
+                                return CompositeFuture.all(rebuildFs);
+                            })
+                            .compose(resp -> context.cache.set(IAMConstant.CACHE_AUTH_POLICY_FORMAT, POLICY_FORMAT));
+                });
+    }
+
+    private static Future<Map<String, Map<String, Integer>>> findPolicyFields(ProcessContext context) {
+        return context.sql.list(
+                String.format("SELECT policy.rel_subject_kind, policy.rel_subject_ids, policy.subject_operator, policy.action_kind, resource.uri" +
+                                " FROM %s AS policy" +
+                                " INNER JOIN %s AS resource ON resource.id = policy.rel_resource_id",
+                        new AuthPolicy().tableName(), new Resource().tableName()),
+                new HashMap<>())
+                .compose(authPolicies -> {
+                    // 策略Key -> 字段 -> 引用数
+                    Map<String, Map<String, Integer>> policies = new HashMap<>();
+                    authPolicies.forEach(authPolicy -> {
+                        var key = policyKey(URIHelper.formatUri(authPolicy.getString("uri")), OptActionKind.parse(authPolicy.getString("action_kind")));
+                        var subjectOperator = AuthSubjectOperatorKind.parse(authPolicy.getString("subject_operator"));
+                        var subjectKind = AuthSubjectKind.parse(authPolicy.getString("rel_subject_kind"));
+                        Arrays.stream(authPolicy.getString("rel_subject_ids").split(","))
+                                .filter(id -> !id.trim().isBlank())
+                                .forEach(id -> policies.computeIfAbsent(key, k -> new HashMap<>())
+                                        .merge(LocalPolicyCache.policyField(subjectOperator, subjectKind, Long.parseLong(id.trim()) + ""), 1, Integer::sum));
+                    });
+                    return context.helper.success(policies);
+                });
     }
 
     private Future<Void> cacheAppIdents(ProcessContext context) {
@@ -402,6 +402,7 @@ public class ACResourceProcessor extends EventBusProcessor {
                                         ResourceExchange.builder()
                                                 .actionKind(storedResource.getAction())
                                                 .uri(storedResource.getUri())
+                                                .cacheExpireSec(storedResource.getCacheExpireSec())
                                                 .build(),
                                         context);
                                 return context.helper.success(storedResource.getId());
@@ -491,6 +492,7 @@ public class ACResourceProcessor extends EventBusProcessor {
                                             ResourceExchange.builder()
                                                     .actionKind(storedResource.getAction())
                                                     .uri(storedResource.getUri())
+                                                    .cacheExpireSec(storedResource.getCacheExpireSec())
                                                     .build(),
                                             context);
                                     return context.helper.success();
@@ -656,6 +658,7 @@ public class ACResourceProcessor extends EventBusProcessor {
                                                             ResourceExchange.builder()
                                                                     .actionKind(storedResource.getAction())
                                                                     .uri(storedResource.getUri())
+                                                                    .cacheExpireSec(storedResource.getCacheExpireSec())
                                                                     .build(),
                                                             context);
                                                     return context.helper.success();
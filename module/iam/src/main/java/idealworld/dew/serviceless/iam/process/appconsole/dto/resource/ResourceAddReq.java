@@ -60,6 +60,9 @@ public class ResourceAddReq implements Serializable {
     // 资源显示排序，asc
     @Builder.Default
     private Integer sort = 0;
+    // 响应缓存时间（秒），0表示不缓存，只对获取及是否存在操作有效
+    @Builder.Default
+    private Integer cacheExpireSec = 0;
     // 是否是资源组
     @Builder.Default
     private Boolean resGroup = false;
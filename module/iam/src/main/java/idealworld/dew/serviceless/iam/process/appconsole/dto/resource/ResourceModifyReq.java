@@ -50,6 +50,8 @@ public class ResourceModifyReq implements Serializable {
     private String action;
     // 资源显示排序，asc
     private Integer sort;
+    // 响应缓存时间（秒），0表示不缓存，只对获取及是否存在操作有效
+    private Integer cacheExpireSec;
     // 是否是资源组
     private Boolean resGroup;
     // 资源所属组Id
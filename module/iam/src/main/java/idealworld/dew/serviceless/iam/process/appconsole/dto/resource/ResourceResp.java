@@ -59,6 +59,9 @@ public class ResourceResp extends AppBasedResp {
     // 资源显示排序，asc
     private Integer sort;
     @NotNull
+    // 响应缓存时间（秒），0表示不缓存
+    private Integer cacheExpireSec;
+    @NotNull
     // 是否是资源组
     private Boolean resGroup;
     @NotNull
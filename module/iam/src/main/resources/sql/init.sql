@@ -298,6 +298,7 @@ create table if not exists iam_resource
     res_group               tinyint(1)                          not null comment '是否是资源组',
     action                  varchar(1000)                       not null comment '触发后的操作，多用于菜单链接',
     sort                    int                                 not null comment '资源显示排序，asc',
+    cache_expire_sec        int                                 not null comment '响应缓存时间（秒），0表示不缓存',
     rel_resource_subject_id bigint                              not null comment '关联资源主体Id',
     rel_app_id              bigint                              not null comment '关联应用Id',
     rel_tenant_id           bigint                              not null comment '关联租户Id',
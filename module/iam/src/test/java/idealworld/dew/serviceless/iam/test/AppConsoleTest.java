@@ -16,12 +16,19 @@
 
 package idealworld.dew.serviceless.iam.test;
 
+import idealworld.dew.framework.DewAuthConstant;
+import idealworld.dew.framework.dto.IdentOptExchangeInfo;
 import idealworld.dew.framework.dto.OptActionKind;
+import idealworld.dew.framework.fun.auth.LocalPolicyCache;
 import idealworld.dew.framework.fun.auth.dto.AuthResultKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectKind;
 import idealworld.dew.framework.fun.auth.dto.AuthSubjectOperatorKind;
 import idealworld.dew.framework.fun.auth.dto.ResourceKind;
+import idealworld.dew.framework.fun.eventbus.ProcessContext;
+import idealworld.dew.framework.util.URIHelper;
+import idealworld.dew.serviceless.iam.IAMConfig;
 import idealworld.dew.serviceless.iam.dto.GroupKind;
+import idealworld.dew.serviceless.iam.exchange.ExchangeProcessor;
 import idealworld.dew.serviceless.iam.process.appconsole.dto.app.AppIdentAddReq;
 import idealworld.dew.serviceless.iam.process.appconsole.dto.app.AppIdentModifyReq;
 import idealworld.dew.serviceless.iam.process.appconsole.dto.app.AppIdentResp;
@@ -430,4 +437,37 @@ public class AppConsoleTest extends IAMBasicTest {
         testContext.completeNow();
     }
 
+    @Test
+    public void testPolicyReferenceCount(Vertx vertx, VertxTestContext testContext) {
+        var context = ProcessContext.builder()
+                .conf(IAMConfig.builder().build())
+                .moduleName(MODULE_NAME)
+                .build()
+                .init(IdentOptExchangeInfo.builder().build());
+        var policyInfo = ExchangeProcessor.AuthPolicyInfo.builder()
+                .resourceUri("http://iam.http.iam/policy/count")
+                .actionKind(OptActionKind.FETCH)
+                .subjectKind(AuthSubjectKind.ROLE)
+                .subjectOperator(AuthSubjectOperatorKind.EQ)
+                .subjectId("1")
+                .build();
+        var key = DewAuthConstant.CACHE_AUTH_POLICY + LocalPolicyCache.policyKey(URIHelper.formatUri("http://iam.http.iam/policy/count"), "fetch");
+        var field = LocalPolicyCache.policyField(AuthSubjectOperatorKind.EQ, AuthSubjectKind.ROLE, "1");
+        // 两个权限策略授予同一权限主体，删除其中一个时仍保留授权
+        ExchangeProcessor.addPolicy(policyInfo, context)
+                .compose(resp -> ExchangeProcessor.addPolicy(policyInfo, context))
+                .compose(resp -> ExchangeProcessor.removePolicy(policyInfo, context))
+                .compose(resp -> context.cache.hget(key, field))
+                .compose(count -> {
+                    Assertions.assertEquals("1", count);
+                    return ExchangeProcessor.removePolicy(policyInfo, context);
+                })
+                .compose(resp -> context.cache.hexists(key, field))
+                .onSuccess(exists -> testContext.verify(() -> {
+                    Assertions.assertFalse(exists);
+                    testContext.completeNow();
+                }))
+                .onFailure(testContext::failNow);
+    }
+
 }
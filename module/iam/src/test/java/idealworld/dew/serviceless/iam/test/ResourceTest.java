@@ -21,7 +21,10 @@ import idealworld.dew.framework.fun.auth.dto.ResourceKind;
 import idealworld.dew.serviceless.iam.process.appconsole.dto.resource.ResourceAddReq;
 import idealworld.dew.serviceless.iam.process.appconsole.dto.resource.ResourceSubjectAddReq;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxTestContext;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -31,6 +34,7 @@ import org.junit.jupiter.api.Test;
  */
 public class ResourceTest extends IAMBasicTest {
 
+    @SneakyThrows
     @Test
     public void testResource(Vertx vertx, VertxTestContext testContext) {
         loginBySystemAdmin();
@@ -72,6 +76,23 @@ public class ResourceTest extends IAMBasicTest {
                 .relResourceSubjectId(resourceSubjectRestId)
                 .build(), Long.class);
 
+        // 资源及资源主体的变更记录到变更日志
+        Thread.sleep(1000);
+        var changeLog = req(OptActionKind.FETCH, "/eb/inner/changelog?category=resource.http&since=0", null, JsonObject.class)._0;
+        var seq = changeLog.getLong("seq");
+        Assertions.assertTrue(seq >= 1);
+        var changes = changeLog.getJsonArray("changes");
+        Assertions.assertEquals(seq, changes.getJsonObject(changes.size() - 1).getLong("seq"));
+        Assertions.assertEquals("CREATE", changes.getJsonObject(changes.size() - 1).getString("actionKind"));
+        Assertions.assertTrue(changes.getJsonObject(changes.size() - 1).getString("uri").toLowerCase().startsWith("eb://iam/resource.http/"));
+        Assertions.assertNotNull(changes.getJsonObject(changes.size() - 1).getJsonObject("body").getString("uri"));
+        // 增量获取
+        changeLog = req(OptActionKind.FETCH, "/eb/inner/changelog?category=resource.http&since=" + (seq - 1), null, JsonObject.class)._0;
+        Assertions.assertEquals(1, changeLog.getJsonArray("changes").size());
+        Assertions.assertEquals(seq, changeLog.getJsonArray("changes").getJsonObject(0).getLong("seq"));
+        changeLog = req(OptActionKind.FETCH, "/eb/inner/changelog?category=resource.http&since=" + seq, null, JsonObject.class)._0;
+        Assertions.assertTrue(changeLog.getJsonArray("changes").isEmpty());
+
         testContext.completeNow();
     }
 